@@ -0,0 +1,84 @@
+package ua.com.juja.microservices.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ua.com.juja.microservices.teams.slackbot.command.impl.AbstractCommandExecutor;
+import ua.com.juja.microservices.teams.slackbot.command.impl.ThreadPoolCommandExecutor;
+import ua.com.juja.microservices.teams.slackbot.command.impl.VirtualThreadCommandExecutor;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ExceptionsHandler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Burst of slash commands whose delayed part is blocking I/O (simulated by sleep of downstreamLatencyMs).
+ * Time of the burst shows how many commands one instance holds in flight: the pool of 16 platform threads
+ * needs about commands / 16 * latency, virtual threads about one latency.
+ * <p>
+ * 'virtual' mode needs Java 21+: gradle jmh -PjmhArgs="CommandExecutorBenchmark -jvmArgs
+ * --add-opens=java.base/java.lang=ALL-UNNAMED"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CommandExecutorBenchmark {
+
+    private static final int POOL_SIZE = 16;
+
+    @Param({"pool", "virtual"})
+    private String mode;
+    @Param({"100", "1000", "5000"})
+    private int commands;
+    @Param({"50"})
+    private int downstreamLatencyMs;
+
+    private AbstractCommandExecutor commandExecutor;
+
+    @Setup
+    public void setup() {
+        ExceptionsHandler exceptionsHandler = new ExceptionsHandler(null, null);
+        // double capacity, so permits of the previous burst which are released after countDown() don't matter
+        if ("virtual".equals(mode)) {
+            commandExecutor = new VirtualThreadCommandExecutor(exceptionsHandler, 2 * commands);
+        } else {
+            commandExecutor = new ThreadPoolCommandExecutor(exceptionsHandler, POOL_SIZE, 2 * commands, 60);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        commandExecutor.destroy();
+    }
+
+    @Benchmark
+    public void burst() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(commands);
+        for (int i = 0; i < commands; i++) {
+            boolean accepted = commandExecutor.execute("", () -> {
+                try {
+                    Thread.sleep(downstreamLatencyMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            });
+            if (!accepted) {
+                throw new IllegalStateException("Command rejected, executor is sized for the whole burst");
+            }
+        }
+        done.await();
+    }
+}
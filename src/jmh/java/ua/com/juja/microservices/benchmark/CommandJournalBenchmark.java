@@ -0,0 +1,61 @@
+package ua.com.juja.microservices.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+import ua.com.juja.microservices.teams.slackbot.command.AcceptedCommand;
+import ua.com.juja.microservices.teams.slackbot.command.impl.MappedCommandJournal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost added by the journal to the instant response of a slash command: append of the accepted command
+ * and its completion after the delayed response, including segment rotations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CommandJournalBenchmark {
+
+    private final AtomicLong sequence = new AtomicLong();
+    private Path directory;
+    private MappedCommandJournal commandJournal;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("command-journal-benchmark");
+        commandJournal = new MappedCommandJournal(directory.toString(), 1024 * 1024, 1800);
+    }
+
+    @TearDown
+    public void tearDown() {
+        commandJournal.destroy();
+        FileSystemUtils.deleteRecursively(directory.toFile());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void appendAndComplete() {
+        String responseUrl = "https://hooks.slack.com/commands/T0001/" + sequence.incrementAndGet() + "/token";
+        commandJournal.append(new AcceptedCommand("activateTeam", "@slack-from", "@slack1 @slack2 @slack3 @slack4",
+                responseUrl, System.currentTimeMillis()));
+        commandJournal.complete(responseUrl);
+    }
+}
@@ -0,0 +1,101 @@
+package ua.com.juja.microservices.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+import ua.com.juja.microservices.teams.slackbot.repository.impl.Http2ClientHttpRequestFactory;
+import ua.com.juja.microservices.utils.HttpStubServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Burst of concurrent reads of a team from a local stub which answers after downstreamLatencyMs.
+ * 'http1' is the pooled HTTP/1.1 client, which needs a connection per concurrent request, 'http2' multiplexes
+ * the burst over at most two h2c connections. Connections accepted by the stub are printed after each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class Http2TransportBenchmark {
+
+    private static final String TEAM = "{\"members\":[\"uuid1\",\"uuid2\",\"uuid3\",\"uuid4\"]," +
+            "\"id\":\"team-id\",\"activateDate\":\"2017-09-01\",\"deactivateDate\":\"2017-09-29\"}";
+
+    @Param({"http1", "http2"})
+    private String transport;
+    @Param({"50"})
+    private int burst;
+    @Param({"5"})
+    private int downstreamLatencyMs;
+
+    private HttpStubServer server;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private Http2ClientHttpRequestFactory http2RequestFactory;
+    private RestTemplate restTemplate;
+    private ExecutorService executor;
+    private String url;
+
+    @Setup
+    public void setup() {
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        server = new HttpStubServer("http2".equals(transport), TEAM, downstreamLatencyMs);
+        url = server.url() + "/v1/teams/users/uuid";
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(burst);
+        connectionManager.setDefaultMaxPerRoute(burst);
+        ClientHttpRequestFactory http1RequestFactory = new HttpComponentsClientHttpRequestFactory(
+                HttpClients.custom().setConnectionManager(connectionManager).build());
+        http2RequestFactory = new Http2ClientHttpRequestFactory("http2".equals(transport), 2, 2, 100, 2000, 10000,
+                300, http1RequestFactory);
+        restTemplate = new RestTemplate(http2RequestFactory);
+        executor = Executors.newFixedThreadPool(burst);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println();
+        System.out.println("Connections accepted by the stub: " + server.connections());
+        executor.shutdownNow();
+        http2RequestFactory.destroy();
+        connectionManager.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    public int burst() throws Exception {
+        List<Future<String>> responses = new ArrayList<>(burst);
+        for (int i = 0; i < burst; i++) {
+            responses.add(executor.submit(() -> restTemplate.getForObject(url, String.class)));
+        }
+        int length = 0;
+        for (Future<String> response : responses) {
+            length += response.get().length();
+        }
+        return length;
+    }
+}
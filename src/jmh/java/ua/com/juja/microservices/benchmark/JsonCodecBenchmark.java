@@ -0,0 +1,126 @@
+package ua.com.juja.microservices.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.web.client.HttpClientErrorException;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ApiError;
+import ua.com.juja.microservices.teams.slackbot.model.teams.ActivateTeamRequest;
+import ua.com.juja.microservices.teams.slackbot.model.teams.Team;
+import ua.com.juja.microservices.teams.slackbot.util.JsonCodec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading of a team and of an api error, and writing of an activation request, by 4 threads.
+ * 'jackson' is the former path: a MappingJackson2HttpMessageConverter with its own mapper, a team with
+ * {@link JsonFormat} dates and a new ObjectMapper per api error. 'codec' and 'afterburner' are the shared
+ * {@link JsonCodec} without and with Afterburner.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(4)
+public class JsonCodecBenchmark {
+
+    private static final byte[] TEAM = ("{\"members\":[\"uuid1\",\"uuid2\",\"uuid3\",\"uuid4\"],\"from\":\"uuid1\"," +
+            "\"id\":\"team-id\",\"activateDate\":\"2017-09-01T10:15:30+0000\"," +
+            "\"deactivateDate\":\"2017-09-29T10:15:30+0000\"}").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] API_ERROR = ("{\"httpStatus\":400,\"internalErrorCode\":\"TMF-F2-D3\"," +
+            "\"clientMessage\":\"Sorry, but the user already exists in team\",\"developerMessage\":\"The reason\"," +
+            "\"exceptionMessage\":\"User(s) '#uuid1,uuid2#' exist(s) in another teams\"," +
+            "\"detailErrors\":[]}").getBytes(StandardCharsets.UTF_8);
+
+    @Param({"jackson", "codec", "afterburner"})
+    private String codec;
+
+    private HttpMessageConverter<Object> converter;
+    private JsonCodec jsonCodec;
+    private Class<?> teamType;
+    private HttpClientErrorException apiError;
+    private ActivateTeamRequest activateTeamRequest;
+
+    @Setup
+    public void setup() {
+        if ("jackson".equals(codec)) {
+            converter = new MappingJackson2HttpMessageConverter();
+            teamType = FormattedTeam.class;
+        } else {
+            jsonCodec = new JsonCodec("afterburner".equals(codec));
+            converter = jsonCodec.httpMessageConverter();
+            teamType = Team.class;
+        }
+        apiError = new HttpClientErrorException(HttpStatus.BAD_REQUEST, "Bad Request", new HttpHeaders(), API_ERROR,
+                StandardCharsets.UTF_8);
+        activateTeamRequest = new ActivateTeamRequest("uuid-from",
+                new LinkedHashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+    }
+
+    @Benchmark
+    public Object readTeam() throws IOException {
+        MockHttpInputMessage message = new MockHttpInputMessage(TEAM);
+        message.getHeaders().setContentType(MediaType.APPLICATION_JSON_UTF8);
+        return converter.read(teamType, message);
+    }
+
+    @Benchmark
+    public ApiError readApiError() throws IOException {
+        if (jsonCodec == null) {
+            return new ObjectMapper().readValue(apiError.getResponseBodyAsString(), ApiError.class);
+        }
+        return jsonCodec.convertToApiError(apiError);
+    }
+
+    @Benchmark
+    public int writeActivateTeamRequest() throws IOException {
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+        converter.write(activateTeamRequest, MediaType.APPLICATION_JSON_UTF8, message);
+        return message.getBodyAsBytes().length;
+    }
+
+    /**
+     * Team as it was mapped before the codec, with dates formatted by a pattern of {@link JsonFormat}
+     */
+    public static class FormattedTeam {
+        @JsonProperty("members")
+        private Set<String> members;
+        @JsonProperty("from")
+        private String from;
+        @JsonProperty("id")
+        private String id;
+        @JsonProperty("activateDate")
+        @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ssZ")
+        private Date activateDate;
+        @JsonProperty("deactivateDate")
+        @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ssZ")
+        private Date deactivateDate;
+    }
+}
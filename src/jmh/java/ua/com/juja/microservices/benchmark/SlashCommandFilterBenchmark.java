@@ -0,0 +1,128 @@
+package ua.com.juja.microservices.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.test.web.servlet.setup.StandaloneMockMvcBuilder;
+import ua.com.juja.microservices.teams.slackbot.command.AcceptedCommand;
+import ua.com.juja.microservices.teams.slackbot.command.CommandDefinition;
+import ua.com.juja.microservices.teams.slackbot.command.CommandPipeline;
+import ua.com.juja.microservices.teams.slackbot.command.CommandRegistry;
+import ua.com.juja.microservices.teams.slackbot.command.impl.HistogramStageRecorder;
+import ua.com.juja.microservices.teams.slackbot.controller.TeamSlackbotController;
+import ua.com.juja.microservices.teams.slackbot.filter.SlashCommandFilter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a slash command with a wrong token. 'dispatcher' is how it was rejected before the filter:
+ * after handler lookup and binding of request params, by the pipeline behind the controller.
+ * 'filter' rejects it in front of the dispatcher servlet. Logging is off, so only the framework cost
+ * is measured; the debug logging aspect made the 'dispatcher' path even more expensive.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SlashCommandFilterBenchmark {
+
+    private static final String ENDPOINT = "/v1/commands/teams";
+    private static final String SORRY_MESSAGE = "Sorry! Parameters of your slack command isn't correct!";
+
+    @Param({"dispatcher", "filter"})
+    private String rejectedBy;
+
+    private MockMvc mvc;
+    private MockHttpServletRequestBuilder request;
+
+    @Setup
+    public void setup() {
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        CommandDefinition<String> definition = new CommandDefinition<>("getTeam", ENDPOINT, true, 10000,
+                command -> "", command -> "", (command, result) -> result);
+        TeamSlackbotController controller = new TeamSlackbotController(new SingleCommandRegistry(definition),
+                new RejectingPipeline(), null);
+        StandaloneMockMvcBuilder builder = MockMvcBuilders.standaloneSetup(controller)
+                .addPlaceholderValue("teams.slackbot.rest.api.version", "v1")
+                .addPlaceholderValue("teams.slackbot.commandsUrl", "/commands");
+        if ("filter".equals(rejectedBy)) {
+            builder.addFilter(new SlashCommandFilter(new HistogramStageRecorder(), "slashCommandToken",
+                    SORRY_MESSAGE), "/v1/commands/*");
+        }
+        mvc = builder.build();
+        request = MockMvcRequestBuilders.post(ENDPOINT)
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .param("token", "wrongToken")
+                .param("team_id", "T0001")
+                .param("team_domain", "juja")
+                .param("channel_id", "C2147483705")
+                .param("channel_name", "test")
+                .param("user_id", "U2147483697")
+                .param("user_name", "@slack-from")
+                .param("command", "/teams")
+                .param("text", "@slack1")
+                .param("response_url", "https://hooks.slack.com/commands/1234/5678");
+    }
+
+    @Benchmark
+    public String rejectWrongToken() throws Exception {
+        return mvc.perform(request).andReturn().getResponse().getContentAsString();
+    }
+
+    private static final class SingleCommandRegistry implements CommandRegistry {
+        private final CommandDefinition<?> definition;
+
+        private SingleCommandRegistry(CommandDefinition<?> definition) {
+            this.definition = definition;
+        }
+
+        @Override
+        public CommandDefinition<?> findByEndpoint(String endpoint) {
+            return definition.getEndpoint().equals(endpoint) ? definition : null;
+        }
+
+        @Override
+        public CommandDefinition<?> findByName(String name) {
+            return definition.getName().equals(name) ? definition : null;
+        }
+
+        @Override
+        public Collection<CommandDefinition<?>> definitions() {
+            return Collections.singletonList(definition);
+        }
+    }
+
+    /**
+     * Stands for the token check which used to run behind the controller
+     */
+    private static final class RejectingPipeline implements CommandPipeline {
+        @Override
+        public String accept(CommandDefinition<?> definition, String fromUser, String text, String responseUrl) {
+            return SORRY_MESSAGE;
+        }
+
+        @Override
+        public void replay(AcceptedCommand command) {
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ua.com.juja.microservices.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.http.MockHttpInputMessage;
+import ua.com.juja.microservices.teams.slackbot.model.users.User;
+import ua.com.juja.microservices.teams.slackbot.model.users.UuidsBySlackNames;
+import ua.com.juja.microservices.teams.slackbot.repository.impl.UserLookupHttpMessageConverter;
+import ua.com.juja.microservices.teams.slackbot.util.JsonCodec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Reading of a Users service response into the slack name to uuid map needed by team commands.
+ * 'databind' is the former path: User[] by the Jackson converter, Arrays.asList, a HashSet and a stream into
+ * a LinkedHashMap. 'streaming' reads the tokens straight into the map. Run with -prof gc for allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UsersDecodingBenchmark {
+
+    @Param({"4", "100", "10000"})
+    private int users;
+
+    private final MappingJackson2HttpMessageConverter jacksonConverter = new MappingJackson2HttpMessageConverter();
+    private final UserLookupHttpMessageConverter lookupConverter =
+            new UserLookupHttpMessageConverter(new JsonCodec(false));
+    private byte[] response;
+
+    @Setup
+    public void setup() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < users; i++) {
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"uuid\":\"").append(UUID.randomUUID())
+                    .append("\",\"slack\":\"@slack").append(i).append("\"}");
+        }
+        response = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Map<String, String> databind() throws IOException {
+        User[] body = (User[]) jacksonConverter.read(User[].class, inputMessage());
+        List<User> found = Arrays.asList(body);
+        return new HashSet<>(found).stream()
+                .collect(Collectors.toMap(User::getSlack, User::getUuid, (e1, e2) -> e1, LinkedHashMap::new));
+    }
+
+    @Benchmark
+    public Map<String, String> streaming() throws IOException {
+        return lookupConverter.read(UuidsBySlackNames.class, inputMessage());
+    }
+
+    private MockHttpInputMessage inputMessage() {
+        MockHttpInputMessage message = new MockHttpInputMessage(response);
+        message.getHeaders().setContentType(MediaType.APPLICATION_JSON_UTF8);
+        return message;
+    }
+}
@@ -0,0 +1,118 @@
+package ua.com.juja.microservices.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.apache.http.impl.client.HttpClients;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.web.client.RestTemplate;
+import ua.com.juja.microservices.teams.slackbot.model.users.SlackNamesByUuids;
+import ua.com.juja.microservices.teams.slackbot.model.users.User;
+import ua.com.juja.microservices.teams.slackbot.model.users.UserUuidRequest;
+import ua.com.juja.microservices.teams.slackbot.repository.impl.UserLookupHttpMessageConverter;
+import ua.com.juja.microservices.teams.slackbot.repository.impl.WireFormatNegotiator;
+import ua.com.juja.microservices.teams.slackbot.util.JsonCodec;
+import ua.com.juja.microservices.teams.slackbot.util.Utils;
+import ua.com.juja.microservices.utils.HttpStubServer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup of slack names by uuids from a local stub of Users service, which answers in JSON or in Smile.
+ * 'exchange' is the whole call, 'encodeRequest' and 'decodeResponse' are the CPU spent on the format alone.
+ * Sizes of the request and of the response are printed after each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    @Param({"json", "smile"})
+    private String format;
+    @Param({"4", "100", "1000"})
+    private int users;
+
+    private JsonCodec codec;
+    private UserLookupHttpMessageConverter lookupConverter;
+    private WireFormatNegotiator negotiator;
+    private HttpStubServer server;
+    private RestTemplate restTemplate;
+    private HttpEntity<UserUuidRequest> request;
+    private byte[] response;
+    private String url;
+
+    @Setup
+    public void setup() throws IOException {
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        JsonCodec jsonCodec = new JsonCodec(false);
+        codec = "smile".equals(format) ? jsonCodec.smile() : jsonCodec;
+        List<String> uuids = new ArrayList<>();
+        List<User> found = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            String uuid = UUID.randomUUID().toString();
+            uuids.add(uuid);
+            found.add(new User(uuid, "@slack" + i));
+        }
+        request = new HttpEntity<>(new UserUuidRequest(uuids), Utils.setupJsonHttpHeaders());
+        response = codec.writerFor(User[].class).writeValueAsBytes(found.toArray(new User[0]));
+        lookupConverter = new UserLookupHttpMessageConverter(codec);
+        server = new HttpStubServer(false, response, codec.getMediaTypes()[0].toString(), 0);
+        url = server.url() + "/v1/users/usersByUuids";
+        List<HttpMessageConverter<?>> converters = Arrays.asList(new UserLookupHttpMessageConverter(jsonCodec),
+                jsonCodec.httpMessageConverter(), new UserLookupHttpMessageConverter(jsonCodec.smile()),
+                jsonCodec.smile().httpMessageConverter());
+        restTemplate = new RestTemplate(converters);
+        restTemplate.setRequestFactory(new HttpComponentsClientHttpRequestFactory(HttpClients.createDefault()));
+        negotiator = new WireFormatNegotiator("users", true);
+        exchange();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        System.out.println();
+        System.out.println(format + " request bytes: " + encodeRequest().length + ", response bytes: "
+                + response.length);
+        server.close();
+    }
+
+    @Benchmark
+    public Map<String, String> exchange() {
+        return negotiator.exchange(url, request, entity ->
+                restTemplate.exchange(url, HttpMethod.POST, entity, SlackNamesByUuids.class)).getBody();
+    }
+
+    @Benchmark
+    public byte[] encodeRequest() throws IOException {
+        return codec.writerFor(UserUuidRequest.class).writeValueAsBytes(request.getBody());
+    }
+
+    @Benchmark
+    public Map<String, String> decodeResponse() throws IOException {
+        return lookupConverter.read(SlackNamesByUuids.class, new MockHttpInputMessage(response));
+    }
+}
@@ -1,44 +1,258 @@
 package ua.com.juja.microservices.teams.slackbot;
 
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.Netty4ClientHttpRequestFactory;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.StringHttpMessageConverter;
-import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.RestTemplate;
+import ua.com.juja.microservices.teams.slackbot.filter.SlashCommandFilter;
+import ua.com.juja.microservices.teams.slackbot.repository.impl.CompressionInterceptor;
+import ua.com.juja.microservices.teams.slackbot.repository.impl.Http2ClientHttpRequestFactory;
+import ua.com.juja.microservices.teams.slackbot.repository.impl.UserLookupHttpMessageConverter;
+import ua.com.juja.microservices.teams.slackbot.util.Deadline;
+import ua.com.juja.microservices.teams.slackbot.util.Hedger;
+import ua.com.juja.microservices.teams.slackbot.util.JsonCodec;
+import ua.com.juja.microservices.teams.slackbot.util.Utils;
 
+import javax.inject.Named;
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @SpringBootApplication
 @EnableAspectJAutoProxy
+@Slf4j
 @PropertySource(value = {"classpath:application.properties", "classpath:messages/message.properties"})
 public class TeamSlackBotApplication {
 
+    @Value("${teams.slackbot.httpClient.connectTimeout}")
+    private int connectTimeout;
+    @Value("${teams.slackbot.httpClient.connectionRequestTimeout}")
+    private int connectionRequestTimeout;
+    @Value("${teams.slackbot.httpClient.socketTimeout}")
+    private int socketTimeout;
+    @Value("${teams.slackbot.httpClient.keepAliveSeconds}")
+    private long keepAliveSeconds;
+    @Value("${teams.slackbot.httpClient.idleEvictionSeconds}")
+    private long idleEvictionSeconds;
+    @Value("${teams.slackbot.httpClient.validateAfterInactivity}")
+    private int validateAfterInactivity;
+    @Value("${teams.slackbot.httpClient.timeToLiveSeconds}")
+    private long timeToLiveSeconds;
+    @Value("${teams.slackbot.wireFormat.smile}")
+    private boolean smileWireFormat;
+
     public static void main(String[] args) {
         SpringApplication.run(TeamSlackBotApplication.class);
     }
 
     @Bean
-    public RestTemplate restTemplate() {
-        RestTemplate restTemplate = new RestTemplate(httpRequestFactory());
-        restTemplate.setMessageConverters(getHttpMessageConverters());
+    @Primary
+    public RestTemplate restTemplate(@Named("servicesRequestFactory") ClientHttpRequestFactory requestFactory,
+                                     @Named("compressionInterceptor") ClientHttpRequestInterceptor compression,
+                                     JsonCodec jsonCodec) {
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
+        restTemplate.setMessageConverters(getHttpMessageConverters(jsonCodec, smileWireFormat));
+        restTemplate.setInterceptors(Collections.singletonList(compression));
+        return restTemplate;
+    }
+
+    @Bean
+    public JsonCodec jsonCodec(@Value("${teams.slackbot.json.afterburner}") boolean afterburner) {
+        return new JsonCodec(afterburner);
+    }
+
+    @Bean
+    public CompressionInterceptor compressionInterceptor(
+            @Value("${teams.slackbot.compression.requestThreshold}") int requestThreshold,
+            @Value("${users.baseURL}") String usersBaseUrl) {
+        return new CompressionInterceptor(requestThreshold, usersBaseUrl);
+    }
+
+    /**
+     * Teams and Users services are called over HTTP/2 when it is enabled and the service speaks it,
+     * otherwise over the HTTP/1.1 connection pool
+     */
+    @Bean
+    public Http2ClientHttpRequestFactory servicesRequestFactory(
+            @Named("servicesConnectionManager") HttpClientConnectionManager connectionManager,
+            @Value("${teams.slackbot.http2.enabled}") boolean enabled,
+            @Value("${teams.slackbot.http2.eventLoopThreads}") int eventLoopThreads,
+            @Value("${teams.slackbot.http2.maxConnections}") int maxConnections,
+            @Value("${teams.slackbot.http2.maxStreams}") int maxStreams,
+            @Value("${teams.slackbot.http2.retrySeconds}") long retrySeconds) {
+        return new Http2ClientHttpRequestFactory(enabled, eventLoopThreads, maxConnections, maxStreams, connectTimeout,
+                socketTimeout, retrySeconds, httpRequestFactory(connectionManager, false));
+    }
+
+    /**
+     * Connections to Teams and Users services are capped per service and the total is the sum of the caps,
+     * so a hung service can't take the connections of the other one
+     */
+    @Bean
+    public PoolingHttpClientConnectionManager servicesConnectionManager(
+            @Value("${teams.baseURL}") String teamsBaseUrl,
+            @Value("${users.baseURL}") String usersBaseUrl,
+            @Value("${teams.slackbot.bulkhead.teams.maxConnections}") int teamsMaxConnections,
+            @Value("${teams.slackbot.bulkhead.users.maxConnections}") int usersMaxConnections) {
+        PoolingHttpClientConnectionManager connectionManager = connectionManager();
+        connectionManager.setMaxTotal(teamsMaxConnections + usersMaxConnections);
+        connectionManager.setMaxPerRoute(Utils.routeOf(teamsBaseUrl), teamsMaxConnections);
+        connectionManager.setMaxPerRoute(Utils.routeOf(usersBaseUrl), usersMaxConnections);
+        return connectionManager;
+    }
+
+    @Bean
+    public RestTemplate slackRestTemplate(
+            @Named("slackConnectionManager") HttpClientConnectionManager connectionManager, JsonCodec jsonCodec) {
+        RestTemplate restTemplate = new RestTemplate(httpRequestFactory(connectionManager, true));
+        restTemplate.setMessageConverters(getHttpMessageConverters(jsonCodec, false));
         return restTemplate;
     }
 
-    private ClientHttpRequestFactory httpRequestFactory() {
-        return new HttpComponentsClientHttpRequestFactory(HttpClients.createDefault());
+    @Bean
+    public PoolingHttpClientConnectionManager slackConnectionManager(
+            @Value("${teams.slackbot.delivery.maxConnections}") int maxConnections) {
+        PoolingHttpClientConnectionManager connectionManager = connectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        return connectionManager;
+    }
+
+    @Bean
+    public FilterRegistrationBean slashCommandFilterRegistration(SlashCommandFilter slashCommandFilter,
+            @Value("/${teams.slackbot.rest.api.version}${teams.slackbot.commandsUrl}/*") String commandsUrlPattern) {
+        FilterRegistrationBean registration = new FilterRegistrationBean(slashCommandFilter);
+        registration.addUrlPatterns(commandsUrlPattern);
+        return registration;
+    }
+
+    @Bean(destroyMethod = "shutdownGracefully")
+    @Profile("netty")
+    public EventLoopGroup nettyEventLoopGroup(@Value("${teams.slackbot.netty.eventLoopThreads}") int threads) {
+        return new NioEventLoopGroup(threads, new DefaultThreadFactory("netty-client"));
+    }
+
+    @Bean
+    @Profile("netty")
+    public AsyncRestTemplate asyncRestTemplate(EventLoopGroup nettyEventLoopGroup,
+                                               @Value("${teams.slackbot.netty.connectTimeout}") int connectTimeout,
+                                               @Value("${teams.slackbot.netty.readTimeout}") int readTimeout,
+                                               JsonCodec jsonCodec,
+                                               @Value("${teams.slackbot.executor.mode:pool}") String executorMode) {
+        if (!"virtual".equals(executorMode)) {
+            log.warn("Netty client with '{}' executor mode does not free command threads while waiting for "
+                    + "responses, use teams.slackbot.executor.mode=virtual", executorMode);
+        }
+        Netty4ClientHttpRequestFactory requestFactory = new Netty4ClientHttpRequestFactory(nettyEventLoopGroup);
+        requestFactory.setConnectTimeout(connectTimeout);
+        requestFactory.setReadTimeout(readTimeout);
+        AsyncRestTemplate asyncRestTemplate = new AsyncRestTemplate(requestFactory);
+        asyncRestTemplate.setMessageConverters(getHttpMessageConverters(jsonCodec, smileWireFormat));
+        return asyncRestTemplate;
+    }
+
+    private PoolingHttpClientConnectionManager connectionManager() {
+        PoolingHttpClientConnectionManager connectionManager =
+                new PoolingHttpClientConnectionManager(timeToLiveSeconds, TimeUnit.SECONDS);
+        connectionManager.setValidateAfterInactivity(validateAfterInactivity);
+        return connectionManager;
+    }
+
+    /**
+     * Idle and expired connections are closed by a background evictor, a connection is kept alive for as long as
+     * the server allows but not longer than keepAliveSeconds. A command deadline shortens the timeouts of a request.
+     * Without content compression responses are decompressed by {@link CompressionInterceptor} instead
+     */
+    private ClientHttpRequestFactory httpRequestFactory(HttpClientConnectionManager connectionManager,
+                                                        boolean contentCompression) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(connectionRequestTimeout)
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .build();
+        HttpClientBuilder httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy(TimeUnit.SECONDS.toMillis(keepAliveSeconds)))
+                .evictExpiredConnections()
+                .evictIdleConnections(idleEvictionSeconds, TimeUnit.SECONDS);
+        if (!contentCompression) {
+            httpClient.disableContentCompression();
+        }
+        return new HttpComponentsClientHttpRequestFactory(httpClient.build()) {
+            @Override
+            protected HttpUriRequest createHttpUriRequest(HttpMethod httpMethod, URI uri) {
+                HttpUriRequest request = super.createHttpUriRequest(httpMethod, uri);
+                Hedger.onCancel(request::abort);
+                return request;
+            }
+
+            @Override
+            protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
+                Deadline deadline = Deadline.current();
+                if (deadline == null) {
+                    return null;
+                }
+                int remaining = (int) Math.max(1, Math.min(Integer.MAX_VALUE, deadline.remainingMillis()));
+                HttpClientContext context = HttpClientContext.create();
+                context.setRequestConfig(RequestConfig.copy(requestConfig)
+                        .setConnectionRequestTimeout(Math.min(remaining, connectionRequestTimeout))
+                        .setConnectTimeout(Math.min(remaining, connectTimeout))
+                        .setSocketTimeout(Math.min(remaining, socketTimeout))
+                        .build());
+                return context;
+            }
+        };
+    }
+
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(long maxKeepAliveMillis) {
+        return (response, context) -> {
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return keepAlive > 0 ? Math.min(keepAlive, maxKeepAliveMillis) : maxKeepAliveMillis;
+        };
     }
 
-    private List<HttpMessageConverter<?>> getHttpMessageConverters() {
+    /**
+     * Smile converters are registered only when Smile is negotiated, otherwise services are never offered Smile
+     */
+    private List<HttpMessageConverter<?>> getHttpMessageConverters(JsonCodec jsonCodec, boolean smile) {
         List<HttpMessageConverter<?>> converters = new ArrayList<>();
-        converters.add(new MappingJackson2HttpMessageConverter());
+        converters.add(new UserLookupHttpMessageConverter(jsonCodec));
+        converters.add(jsonCodec.httpMessageConverter());
+        if (smile) {
+            converters.add(new UserLookupHttpMessageConverter(jsonCodec.smile()));
+            converters.add(jsonCodec.smile().httpMessageConverter());
+        }
         converters.add(new StringHttpMessageConverter());
         return converters;
     }
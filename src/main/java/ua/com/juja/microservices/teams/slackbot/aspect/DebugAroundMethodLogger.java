@@ -15,7 +15,8 @@ import java.util.Arrays;
 public class DebugAroundMethodLogger {
 
     @Around("execution(* ua.com.juja.microservices.teams.slackbot..*.*(..))" +
-            "&& !execution(* ua.com.juja.microservices.teams.slackbot.exceptions..*.*(..))")
+            "&& !execution(* ua.com.juja.microservices.teams.slackbot.exceptions..*.*(..))" +
+            "&& !execution(* ua.com.juja.microservices.teams.slackbot.filter..*.*(..))")
     public Object logBusinessMethods(ProceedingJoinPoint call) throws Throwable {
         if (!log.isDebugEnabled()) {
             return call.proceed();
@@ -0,0 +1,21 @@
+package ua.com.juja.microservices.teams.slackbot.command;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Slash command which got an instant response and waits for its delayed part
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class AcceptedCommand {
+    private String command;
+    private String fromUser;
+    private String text;
+    private String responseUrl;
+    private long acceptedAt;
+}
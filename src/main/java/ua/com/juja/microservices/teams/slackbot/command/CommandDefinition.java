@@ -0,0 +1,31 @@
+package ua.com.juja.microservices.teams.slackbot.command;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Everything which differs between slash commands: where slack posts them, what is answered instantly,
+ * which service call makes the delayed part and how its result is rendered to slack.
+ *
+ * @param <T> result of the service call
+ */
+@Getter
+@AllArgsConstructor
+public class CommandDefinition<T> {
+    private final String name;
+    private final String endpoint;
+    /**
+     * false if the command ignores the text typed after it, e.g. /myteam
+     */
+    private final boolean usesText;
+    /**
+     * time budget of the command from its acceptance, calls to services get the rest of it as their timeouts
+     */
+    private final long deadlineMillis;
+    private final Function<AcceptedCommand, String> instantMessage;
+    private final Function<AcceptedCommand, T> call;
+    private final BiFunction<AcceptedCommand, T, String> render;
+}
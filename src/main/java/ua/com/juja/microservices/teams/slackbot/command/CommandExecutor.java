@@ -0,0 +1,23 @@
+package ua.com.juja.microservices.teams.slackbot.command;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the delayed part of slash commands outside of servlet request threads.
+ */
+public interface CommandExecutor {
+
+    /**
+     * @param responseUrl slack response_url of the command, used to report errors of the delayed part
+     * @param command     delayed part of the command
+     * @return false if the command was rejected because the executor is saturated
+     */
+    boolean execute(String responseUrl, Runnable command);
+
+    /**
+     * Waits until every accepted command has completed, commands accepted while waiting included
+     *
+     * @return false if the timeout passed first
+     */
+    boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException;
+}
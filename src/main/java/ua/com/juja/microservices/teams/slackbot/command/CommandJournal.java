@@ -0,0 +1,25 @@
+package ua.com.juja.microservices.teams.slackbot.command;
+
+import java.util.List;
+
+/**
+ * Durable log of accepted slash commands, which lets the bot finish them after restart
+ */
+public interface CommandJournal {
+
+    /**
+     * Records the command before the instant response is sent to slack
+     */
+    void append(AcceptedCommand command);
+
+    /**
+     * Marks the command with given slack response_url as finished, it will not be replayed
+     */
+    void complete(String responseUrl);
+
+    /**
+     * @return commands which were not finished before restart and whose response_url is still valid.
+     * Each of them is returned only once
+     */
+    List<AcceptedCommand> takeUnfinished();
+}
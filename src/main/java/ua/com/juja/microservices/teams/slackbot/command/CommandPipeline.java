@@ -0,0 +1,20 @@
+package ua.com.juja.microservices.teams.slackbot.command;
+
+/**
+ * Runs every slash command through the same {@link CommandStage}s: validate and acknowledge in the servlet
+ * thread, then call the services, render and deliver the result in the command executor
+ */
+public interface CommandPipeline {
+
+    /**
+     * Token and common parameters of the request are already checked by the filter in front of the controller
+     *
+     * @return instant response for slack: the acknowledgement of the command, or the reason why it was not accepted
+     */
+    String accept(CommandDefinition<?> definition, String fromUser, String text, String responseUrl);
+
+    /**
+     * Runs again the delayed part of a command which was accepted before restart of the bot
+     */
+    void replay(AcceptedCommand command);
+}
@@ -0,0 +1,22 @@
+package ua.com.juja.microservices.teams.slackbot.command;
+
+import java.util.Collection;
+
+/**
+ * Definitions of all slash commands of the bot
+ */
+public interface CommandRegistry {
+
+    /**
+     * @param endpoint path of the request within the application
+     * @return null if no command is posted to the endpoint
+     */
+    CommandDefinition<?> findByEndpoint(String endpoint);
+
+    /**
+     * @return null if there is no command with the name, e.g. it was journaled by an older version of the bot
+     */
+    CommandDefinition<?> findByName(String name);
+
+    Collection<CommandDefinition<?>> definitions();
+}
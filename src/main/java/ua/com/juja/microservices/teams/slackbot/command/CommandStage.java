@@ -0,0 +1,25 @@
+package ua.com.juja.microservices.teams.slackbot.command;
+
+/**
+ * Stages every slash command goes through. Validation and acknowledgement run in the servlet thread,
+ * the rest in the command executor and the slack delivery service.
+ */
+public enum CommandStage {
+    VALIDATE("validate"),
+    ACK("ack"),
+    RESOLVE_USERS("resolveUsers"),
+    CALL_TEAMS("callTeams"),
+    RESOLVE_NAMES("resolveNames"),
+    RENDER("render"),
+    DELIVER("deliver");
+
+    private final String metricName;
+
+    CommandStage(String metricName) {
+        this.metricName = metricName;
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+}
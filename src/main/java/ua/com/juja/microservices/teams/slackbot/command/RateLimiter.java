@@ -0,0 +1,14 @@
+package ua.com.juja.microservices.teams.slackbot.command;
+
+/**
+ * Limits how often slash commands are accepted
+ */
+public interface RateLimiter {
+
+    /**
+     * @param command  name of the command
+     * @param fromUser slack user_name of the sender
+     * @return false if the command must be rejected without running it
+     */
+    boolean tryAcquire(String command, String fromUser);
+}
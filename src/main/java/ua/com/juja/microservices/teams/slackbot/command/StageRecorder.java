@@ -0,0 +1,23 @@
+package ua.com.juja.microservices.teams.slackbot.command;
+
+import java.util.function.Supplier;
+
+/**
+ * Collects latencies of {@link CommandStage}s of all slash commands
+ */
+public interface StageRecorder {
+
+    void record(CommandStage stage, long nanos);
+
+    /**
+     * Runs the action and records its latency as the stage, also when it fails
+     */
+    default <T> T time(CommandStage stage, Supplier<T> action) {
+        long startedAt = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            record(stage, System.nanoTime() - startedAt);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ua.com.juja.microservices.teams.slackbot.command.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import ua.com.juja.microservices.teams.slackbot.command.CommandExecutor;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ExceptionsHandler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Common part of command executors: error routing to {@link ExceptionsHandler}, metrics and the count of
+ * unfinished commands which {@link #awaitDrained} waits for. Subclasses decide on which threads commands run
+ * and when they are rejected.
+ */
+@Slf4j
+public abstract class AbstractCommandExecutor implements CommandExecutor, PublicMetrics, DisposableBean {
+
+    protected static final String METRIC_PREFIX = "teams.slackbot.executor.";
+
+    private final ExceptionsHandler exceptionsHandler;
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong unfinished = new AtomicLong();
+    private final Object drained = new Object();
+
+    protected AbstractCommandExecutor(ExceptionsHandler exceptionsHandler) {
+        this.exceptionsHandler = exceptionsHandler;
+    }
+
+    @Override
+    public boolean execute(String responseUrl, Runnable command) {
+        long enqueuedAt = System.nanoTime();
+        unfinished.incrementAndGet();
+        try {
+            submit(() -> runCommand(responseUrl, command, enqueuedAt));
+        } catch (RejectedExecutionException ex) {
+            finished();
+            rejected.increment();
+            log.warn("Command for response_url '{}' rejected: '{}'", responseUrl, ex.getMessage());
+            return false;
+        }
+        accepted.increment();
+        return true;
+    }
+
+    @Override
+    public boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException {
+        long until = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (drained) {
+            while (unfinished.get() > 0) {
+                long remaining = until - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(drained, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @throws RejectedExecutionException if there is no capacity for the task
+     */
+    protected abstract void submit(Runnable task);
+
+    protected abstract void addExecutorMetrics(List<Metric<?>> metrics);
+
+    @Override
+    public abstract void destroy() throws InterruptedException;
+
+    private void runCommand(String responseUrl, Runnable command, long enqueuedAt) {
+        recordWaitTime(System.nanoTime() - enqueuedAt);
+        exceptionsHandler.setResponseUrl(responseUrl);
+        try {
+            command.run();
+        } catch (Exception ex) {
+            exceptionsHandler.handleDelayedException(ex);
+        } finally {
+            completed.increment();
+            finished();
+        }
+    }
+
+    private void finished() {
+        if (unfinished.decrementAndGet() == 0) {
+            synchronized (drained) {
+                drained.notifyAll();
+            }
+        }
+    }
+
+    private void recordWaitTime(long waitNanos) {
+        started.increment();
+        totalWaitNanos.add(waitNanos);
+        long max = maxWaitNanos.get();
+        while (waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        long startedCommands = started.sum();
+        List<Metric<?>> metrics = new ArrayList<>();
+        addExecutorMetrics(metrics);
+        metrics.add(new Metric<>(METRIC_PREFIX + "accepted", accepted.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "rejected", rejected.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "completed", completed.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "wait.avg.ms",
+                startedCommands > 0 ? TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.sum() / startedCommands) : 0L));
+        metrics.add(new Metric<>(METRIC_PREFIX + "wait.max.ms", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get())));
+        return metrics;
+    }
+}
@@ -0,0 +1,43 @@
+package ua.com.juja.microservices.teams.slackbot.command.impl;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import ua.com.juja.microservices.teams.slackbot.command.CommandStage;
+import ua.com.juja.microservices.teams.slackbot.command.StageRecorder;
+import ua.com.juja.microservices.teams.slackbot.util.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One lock-free {@link LatencyHistogram} per stage, shared by all slash commands
+ */
+@Component
+public class HistogramStageRecorder implements StageRecorder, PublicMetrics {
+
+    private static final String METRIC_PREFIX = "teams.slackbot.stage.";
+
+    private final Map<CommandStage, LatencyHistogram> histograms = new EnumMap<>(CommandStage.class);
+
+    public HistogramStageRecorder() {
+        for (CommandStage stage : CommandStage.values()) {
+            histograms.put(stage, new LatencyHistogram(stage.getMetricName()));
+        }
+    }
+
+    @Override
+    public void record(CommandStage stage, long nanos) {
+        histograms.get(stage).record(nanos);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        histograms.values().forEach(histogram -> histogram.addMetrics(metrics, METRIC_PREFIX));
+        return metrics;
+    }
+}
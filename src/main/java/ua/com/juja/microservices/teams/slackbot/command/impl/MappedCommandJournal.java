@@ -0,0 +1,347 @@
+package ua.com.juja.microservices.teams.slackbot.command.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import ua.com.juja.microservices.teams.slackbot.command.AcceptedCommand;
+import ua.com.juja.microservices.teams.slackbot.command.CommandJournal;
+
+import javax.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of accepted commands in memory-mapped segment files. A record is
+ * {@code [length][crc32][payload]}, the length is written last, so a record torn by a crash is
+ * detected and ends the segment on recovery. Appends go to the page cache only, which survives
+ * a crash of the bot but not of the host.
+ * <p>
+ * When a record does not fit into the current segment the journal rotates: unfinished commands
+ * are copied to a new segment and older segments are deleted, so finished and expired commands
+ * never outlive one rotation. Replaced segments are unmapped before they are deleted.
+ */
+@Component
+@Slf4j
+public class MappedCommandJournal implements CommandJournal, PublicMetrics, DisposableBean {
+
+    private static final String METRIC_PREFIX = "teams.slackbot.journal.";
+    private static final String SEGMENT_PREFIX = "commands-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte ACCEPTED = 1;
+    private static final byte COMPLETED = 2;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long urlLifetimeMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ConcurrentMap<String, AcceptedCommand> pending = new ConcurrentHashMap<>();
+    private final AtomicReference<List<AcceptedCommand>> unfinished;
+    private final int recovered;
+    private long segmentNumber;
+    private MappedByteBuffer segment;
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rotations = new LongAdder();
+    private final LongAdder totalAppendNanos = new LongAdder();
+    private final AtomicLong maxAppendNanos = new AtomicLong();
+
+    @Inject
+    public MappedCommandJournal(@Value("${teams.slackbot.journal.dir}") String directory,
+                                @Value("${teams.slackbot.journal.segmentSize}") int segmentSize,
+                                @Value("${teams.slackbot.delivery.urlLifetimeSeconds}") long urlLifetimeSeconds)
+            throws IOException {
+        this.directory = Paths.get(directory);
+        this.segmentSize = segmentSize;
+        this.urlLifetimeMillis = TimeUnit.SECONDS.toMillis(urlLifetimeSeconds);
+        Files.createDirectories(this.directory);
+
+        List<Path> segments = findSegments();
+        for (Path path : segments) {
+            readSegment(path);
+        }
+        removeExpired(System.currentTimeMillis());
+        List<AcceptedCommand> commands = new ArrayList<>(pending.values());
+        commands.sort(Comparator.comparingLong(AcceptedCommand::getAcceptedAt));
+        this.unfinished = new AtomicReference<>(commands);
+        this.recovered = commands.size();
+        this.segmentNumber = segments.isEmpty() ? 0 : segmentNumber(segments.get(segments.size() - 1));
+        lock.lock();
+        try {
+            rotate(0);
+        } finally {
+            lock.unlock();
+        }
+        log.info("Command journal '{}' recovered '{}' unfinished commands from '{}' segments", this.directory,
+                recovered, segments.size());
+    }
+
+    @Override
+    public void append(AcceptedCommand command) {
+        long start = System.nanoTime();
+        byte[] payload = encodeAccepted(command);
+        lock.lock();
+        try {
+            // a rotation between the put and the write would copy the command and then write it again
+            pending.put(command.getResponseUrl(), command);
+            write(payload);
+        } finally {
+            lock.unlock();
+        }
+        appended.increment();
+        recordAppendTime(System.nanoTime() - start);
+    }
+
+    @Override
+    public void complete(String responseUrl) {
+        lock.lock();
+        try {
+            if (pending.remove(responseUrl) == null) {
+                return;
+            }
+            write(encodeCompleted(responseUrl));
+        } finally {
+            lock.unlock();
+        }
+        completed.increment();
+    }
+
+    @Override
+    public List<AcceptedCommand> takeUnfinished() {
+        return unfinished.getAndSet(Collections.emptyList());
+    }
+
+    /**
+     * Must be called under the lock
+     */
+    private void write(byte[] payload) {
+        try {
+            if (segment.remaining() < RECORD_HEADER_SIZE + payload.length) {
+                rotate(RECORD_HEADER_SIZE + payload.length);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to rotate command journal " + directory, e);
+        }
+        writeRecord(payload);
+    }
+
+    private void writeRecord(byte[] payload) {
+        int position = segment.position();
+        segment.position(position + RECORD_HEADER_SIZE);
+        segment.put(payload);
+        segment.putInt(position + 4, checksum(payload));
+        segment.putInt(position, payload.length);
+    }
+
+    /**
+     * Copies unfinished commands to a new segment and deletes the older ones. Must be called under the lock
+     */
+    private void rotate(int reserve) throws IOException {
+        removeExpired(System.currentTimeMillis());
+        List<byte[]> live = pending.values().stream()
+                .map(MappedCommandJournal::encodeAccepted)
+                .collect(Collectors.toList());
+        int liveSize = live.stream().mapToInt(record -> RECORD_HEADER_SIZE + record.length).sum();
+        segmentNumber++;
+        Path path = directory.resolve(SEGMENT_PREFIX + segmentNumber + SEGMENT_SUFFIX);
+        MappedByteBuffer previousSegment = segment;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.max(segmentSize, 2 * (liveSize + reserve)));
+        }
+        live.forEach(this::writeRecord);
+        if (previousSegment != null) {
+            unmap(previousSegment);
+        }
+        for (Path previous : findSegments()) {
+            if (segmentNumber(previous) < segmentNumber) {
+                Files.delete(previous);
+            }
+        }
+        rotations.increment();
+        log.debug("Command journal rotated to '{}' with '{}' unfinished commands", path, live.size());
+    }
+
+    private void readSegment(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                if (checksum(payload) != checksum) {
+                    log.warn("Torn record at position '{}' of command journal segment '{}'",
+                            buffer.position() - length - RECORD_HEADER_SIZE, path);
+                    break;
+                }
+                applyRecord(payload);
+            }
+            unmap(buffer);
+        }
+    }
+
+    private void applyRecord(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            byte type = in.readByte();
+            if (type == ACCEPTED) {
+                long acceptedAt = in.readLong();
+                AcceptedCommand command = new AcceptedCommand(in.readUTF(), in.readUTF(), in.readUTF(),
+                        in.readUTF(), acceptedAt);
+                pending.put(command.getResponseUrl(), command);
+            } else if (type == COMPLETED) {
+                pending.remove(in.readUTF());
+            }
+        }
+    }
+
+    /**
+     * Releases the mapping at once instead of when the buffer is garbage collected, otherwise deleted segments
+     * keep their disk space and cannot be deleted at all on Windows. The buffer must not be used afterwards
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (NoSuchMethodException e) {
+                // Java 8 has no Unsafe.invokeCleaner, the cleaner of the direct buffer is called instead
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Unable to unmap command journal segment, it is released on garbage collection: {}",
+                    e.toString());
+        }
+    }
+
+    private void removeExpired(long now) {
+        pending.values().removeIf(command -> now - command.getAcceptedAt() >= urlLifetimeMillis);
+    }
+
+    private List<Path> findSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(MappedCommandJournal::isSegment)
+                    .sorted(Comparator.comparingLong(MappedCommandJournal::segmentNumber))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static byte[] encodeAccepted(AcceptedCommand command) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(ACCEPTED);
+            out.writeLong(command.getAcceptedAt());
+            out.writeUTF(command.getCommand());
+            out.writeUTF(command.getFromUser());
+            out.writeUTF(command.getText());
+            out.writeUTF(command.getResponseUrl());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeCompleted(String responseUrl) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(COMPLETED);
+            out.writeUTF(responseUrl);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    private void recordAppendTime(long appendNanos) {
+        totalAppendNanos.add(appendNanos);
+        long max = maxAppendNanos.get();
+        while (appendNanos > max && !maxAppendNanos.compareAndSet(max, appendNanos)) {
+            max = maxAppendNanos.get();
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        long appendedCommands = appended.sum();
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "appended", appendedCommands));
+        metrics.add(new Metric<>(METRIC_PREFIX + "completed", completed.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "pending", pending.size()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "recovered", recovered));
+        metrics.add(new Metric<>(METRIC_PREFIX + "rotations", rotations.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "append.avg.us",
+                appendedCommands > 0 ? TimeUnit.NANOSECONDS.toMicros(totalAppendNanos.sum() / appendedCommands) : 0L));
+        metrics.add(new Metric<>(METRIC_PREFIX + "append.max.us", TimeUnit.NANOSECONDS.toMicros(maxAppendNanos.get())));
+        return metrics;
+    }
+
+    @Override
+    public void destroy() {
+        lock.lock();
+        try {
+            segment.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package ua.com.juja.microservices.teams.slackbot.command.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import me.ramswaroop.jbot.core.slack.models.RichMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import ua.com.juja.microservices.teams.slackbot.command.AcceptedCommand;
+import ua.com.juja.microservices.teams.slackbot.command.CommandDefinition;
+import ua.com.juja.microservices.teams.slackbot.command.CommandExecutor;
+import ua.com.juja.microservices.teams.slackbot.command.CommandJournal;
+import ua.com.juja.microservices.teams.slackbot.command.CommandPipeline;
+import ua.com.juja.microservices.teams.slackbot.command.CommandRegistry;
+import ua.com.juja.microservices.teams.slackbot.command.CommandStage;
+import ua.com.juja.microservices.teams.slackbot.command.RateLimiter;
+import ua.com.juja.microservices.teams.slackbot.command.StageRecorder;
+import ua.com.juja.microservices.teams.slackbot.exceptions.DeadlineExceededException;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ExceptionsHandler;
+import ua.com.juja.microservices.teams.slackbot.filter.SlashCommandFilter;
+import ua.com.juja.microservices.teams.slackbot.service.SlackDeliveryService;
+import ua.com.juja.microservices.teams.slackbot.util.Deadline;
+
+import javax.inject.Inject;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Commands over the rate limit are rejected before they are journaled. The ack stage is timed here. Token and
+ * common parameters are validated earlier by {@link SlashCommandFilter}, stages of service calls are timed by the
+ * services, the deliver stage by {@link SlackDeliveryService}, which knows when the message reached slack.
+ * <p>
+ * The deadline of a command starts when it is accepted, or replayed after restart, and is bound to the thread
+ * which runs its delayed part. The lifetime of its response_url always starts when it was accepted.
+ */
+@Component
+@Slf4j
+public class StagedCommandPipeline implements CommandPipeline, PublicMetrics {
+
+    private final ExceptionsHandler exceptionsHandler;
+    private final CommandExecutor commandExecutor;
+    private final CommandJournal commandJournal;
+    private final CommandRegistry commandRegistry;
+    private final SlackDeliveryService slackDeliveryService;
+    private final StageRecorder stageRecorder;
+    private final RateLimiter rateLimiter;
+    private final LongAdder expired = new LongAdder();
+
+    @Value("${message.sorry}")
+    private String SORRY_MESSAGE;
+    @Value("${message.busy}")
+    private String BUSY_MESSAGE;
+    @Value("${message.rate.limited}")
+    private String RATE_LIMITED_MESSAGE;
+
+    @Inject
+    public StagedCommandPipeline(ExceptionsHandler exceptionsHandler,
+                                 CommandExecutor commandExecutor,
+                                 CommandJournal commandJournal,
+                                 CommandRegistry commandRegistry,
+                                 SlackDeliveryService slackDeliveryService,
+                                 StageRecorder stageRecorder,
+                                 RateLimiter rateLimiter) {
+        this.exceptionsHandler = exceptionsHandler;
+        this.commandExecutor = commandExecutor;
+        this.commandJournal = commandJournal;
+        this.commandRegistry = commandRegistry;
+        this.slackDeliveryService = slackDeliveryService;
+        this.stageRecorder = stageRecorder;
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public String accept(CommandDefinition<?> definition, String fromUser, String text, String responseUrl) {
+        exceptionsHandler.setResponseUrl(responseUrl);
+        if (definition.isUsesText() && text == null) {
+            log.debug("Text of '{}' command is missing", definition.getName());
+            return SORRY_MESSAGE;
+        }
+        if (!rateLimiter.tryAcquire(definition.getName(), fromUser)) {
+            return RATE_LIMITED_MESSAGE;
+        }
+        Deadline deadline = Deadline.after(definition.getDeadlineMillis());
+        AcceptedCommand command = new AcceptedCommand(definition.getName(), fromUser,
+                definition.isUsesText() ? text : "", responseUrl, System.currentTimeMillis());
+        return stageRecorder.time(CommandStage.ACK, () -> acknowledge(definition, command, deadline));
+    }
+
+    @Override
+    public void replay(AcceptedCommand command) {
+        CommandDefinition<?> definition = commandRegistry.findByName(command.getCommand());
+        if (definition == null) {
+            commandJournal.complete(command.getResponseUrl());
+            log.warn("Unable to replay unknown command '{}'", command);
+        } else if (commandExecutor.execute(command.getResponseUrl(), () -> runDelayedPart(definition, command,
+                Deadline.after(definition.getDeadlineMillis())))) {
+            log.info("Replayed unfinished command '{}'", command);
+        } else {
+            commandJournal.complete(command.getResponseUrl());
+            log.warn("Unable to replay unfinished command '{}'", command);
+        }
+    }
+
+    private String acknowledge(CommandDefinition<?> definition, AcceptedCommand command, Deadline deadline) {
+        commandJournal.append(command);
+        if (commandExecutor.execute(command.getResponseUrl(), () -> runDelayedPart(definition, command, deadline))) {
+            return definition.getInstantMessage().apply(command);
+        }
+        commandJournal.complete(command.getResponseUrl());
+        return BUSY_MESSAGE;
+    }
+
+    private <T> void runDelayedPart(CommandDefinition<T> definition, AcceptedCommand command, Deadline deadline) {
+        exceptionsHandler.setResponseUrl(command.getResponseUrl(), command.getAcceptedAt());
+        T result;
+        try {
+            result = Deadline.callWithin(deadline, () -> {
+                Deadline.checkNotExpired();
+                return definition.getCall().apply(command);
+            });
+        } catch (DeadlineExceededException ex) {
+            expired.increment();
+            log.warn("'{}' command abandoned after its deadline of '{}' ms: '{}'", definition.getName(),
+                    definition.getDeadlineMillis(), command);
+            throw ex;
+        }
+        RichMessage message = stageRecorder.time(CommandStage.RENDER,
+                () -> new RichMessage(definition.getRender().apply(command, result)));
+        log.debug("Before queueing delayed response message '{}' to slack response_url '{}' ", message.getText(),
+                command.getResponseUrl());
+        slackDeliveryService.deliver(command.getResponseUrl(), command.getAcceptedAt(), message);
+        log.info("'{}' command processed : fromUser: '{}', text: '{}', response_url: '{}' and sent message to " +
+                        "slack: '{}'", definition.getName(), command.getFromUser(), command.getText(),
+                command.getResponseUrl(), message.getText());
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Collections.singletonList(new Metric<>("teams.slackbot.deadline.expired", expired.sum()));
+    }
+}
@@ -0,0 +1,122 @@
+package ua.com.juja.microservices.teams.slackbot.command.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ua.com.juja.microservices.teams.slackbot.command.CommandDefinition;
+import ua.com.juja.microservices.teams.slackbot.command.CommandRegistry;
+import ua.com.juja.microservices.teams.slackbot.service.TeamService;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Slash commands of the bot. A new command is one more definition here and one more endpoint property.
+ */
+@Component
+public class TeamCommandRegistry implements CommandRegistry {
+
+    private static final String ACTIVATE_TEAM = "activateTeam";
+    private static final String DEACTIVATE_TEAM = "deactivateTeam";
+    private static final String GET_TEAM = "getTeam";
+    private static final String GET_MY_TEAM = "getMyTeam";
+
+    private final TeamService teamService;
+    private final Map<String, CommandDefinition<?>> byEndpoint = new LinkedHashMap<>();
+    private final Map<String, CommandDefinition<?>> byName = new LinkedHashMap<>();
+
+    @Value("${teams.slackbot.endpoint.activateTeam}")
+    private String activateTeamEndpoint;
+    @Value("${teams.slackbot.endpoint.deactivateTeam}")
+    private String deactivateTeamEndpoint;
+    @Value("${teams.slackbot.endpoint.getTeam}")
+    private String getTeamEndpoint;
+    @Value("${teams.slackbot.endpoint.getMyTeam}")
+    private String getMyTeamEndpoint;
+    @Value("${teams.slackbot.deadline.activateTeam}")
+    private long activateTeamDeadline;
+    @Value("${teams.slackbot.deadline.deactivateTeam}")
+    private long deactivateTeamDeadline;
+    @Value("${teams.slackbot.deadline.getTeam}")
+    private long getTeamDeadline;
+    @Value("${teams.slackbot.deadline.getMyTeam}")
+    private long getMyTeamDeadline;
+    @Value("${message.activate.team.instant}")
+    private String ACTIVATE_TEAM_INSTANT_MESSAGE;
+    @Value("${message.activate.team.delayed}")
+    private String ACTIVATE_TEAM_DELAYED_MESSAGE;
+    @Value("${message.get.team.instant}")
+    private String GET_TEAM_INSTANT_MESSAGE;
+    @Value("${message.get.team.delayed}")
+    private String GET_TEAM_DELAYED_MESSAGE;
+    @Value("${message.get.my.team.instant}")
+    private String GET_MY_TEAM_INSTANT_MESSAGE;
+    @Value("${message.get.my.team.delayed}")
+    private String GET_MY_TEAM_DELAYED_MESSAGE;
+    @Value("${message.deactivate.team.instant}")
+    private String DEACTIVATE_TEAM_INSTANT_MESSAGE;
+    @Value("${message.deactivate.team.delayed}")
+    private String DEACTIVATE_TEAM_DELAYED_MESSAGE;
+
+    @Inject
+    public TeamCommandRegistry(TeamService teamService) {
+        this.teamService = teamService;
+    }
+
+    @PostConstruct
+    public void registerCommands() {
+        register(new CommandDefinition<>(ACTIVATE_TEAM, activateTeamEndpoint, true, activateTeamDeadline,
+                command -> ACTIVATE_TEAM_INSTANT_MESSAGE,
+                command -> teamService.activateTeam(command.getFromUser(), command.getText()),
+                (command, team) -> String.format(ACTIVATE_TEAM_DELAYED_MESSAGE, command.getText())));
+        register(new CommandDefinition<>(DEACTIVATE_TEAM, deactivateTeamEndpoint, true, deactivateTeamDeadline,
+                command -> String.format(DEACTIVATE_TEAM_INSTANT_MESSAGE, command.getText()),
+                command -> teamService.deactivateTeam(command.getFromUser(), command.getText()),
+                (command, slackNames) -> String.format(DEACTIVATE_TEAM_DELAYED_MESSAGE, sorted(slackNames))));
+        register(new CommandDefinition<>(GET_TEAM, getTeamEndpoint, true, getTeamDeadline,
+                command -> String.format(GET_TEAM_INSTANT_MESSAGE, command.getText()),
+                command -> teamService.getTeam(command.getText()),
+                (command, slackNames) -> String.format(GET_TEAM_DELAYED_MESSAGE, command.getText(),
+                        sorted(slackNames))));
+        register(new CommandDefinition<>(GET_MY_TEAM, getMyTeamEndpoint, false, getMyTeamDeadline,
+                command -> String.format(GET_MY_TEAM_INSTANT_MESSAGE, toSlackName(command.getFromUser())),
+                command -> teamService.getTeam(toSlackName(command.getFromUser())),
+                (command, slackNames) -> String.format(GET_MY_TEAM_DELAYED_MESSAGE,
+                        toSlackName(command.getFromUser()), sorted(slackNames))));
+    }
+
+    private void register(CommandDefinition<?> definition) {
+        if (byEndpoint.put(definition.getEndpoint(), definition) != null) {
+            throw new IllegalStateException("Two commands are posted to endpoint " + definition.getEndpoint());
+        }
+        byName.put(definition.getName(), definition);
+    }
+
+    @Override
+    public CommandDefinition<?> findByEndpoint(String endpoint) {
+        return byEndpoint.get(endpoint);
+    }
+
+    @Override
+    public CommandDefinition<?> findByName(String name) {
+        return byName.get(name);
+    }
+
+    @Override
+    public Collection<CommandDefinition<?>> definitions() {
+        return Collections.unmodifiableCollection(byName.values());
+    }
+
+    private static String toSlackName(String fromUser) {
+        return fromUser.startsWith("@") ? fromUser : "@" + fromUser;
+    }
+
+    private static String sorted(Set<String> slackNames) {
+        return slackNames.stream().sorted().collect(Collectors.joining(" "));
+    }
+}
@@ -0,0 +1,59 @@
+package ua.com.juja.microservices.teams.slackbot.command.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ExceptionsHandler;
+
+import javax.inject.Inject;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of workers for slash commands. When all workers are busy and the queue is full
+ * the command is rejected instead of blocking the servlet thread.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "teams.slackbot.executor.mode", havingValue = "pool", matchIfMissing = true)
+public class ThreadPoolCommandExecutor extends AbstractCommandExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    @Inject
+    public ThreadPoolCommandExecutor(ExceptionsHandler exceptionsHandler,
+                                     @Value("${teams.slackbot.executor.poolSize}") int poolSize,
+                                     @Value("${teams.slackbot.executor.queueCapacity}") int queueCapacity,
+                                     @Value("${teams.slackbot.executor.keepAliveSeconds}") long keepAliveSeconds) {
+        super(exceptionsHandler);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, keepAliveSeconds, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("slack-command-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    protected void submit(Runnable task) {
+        executor.execute(task);
+    }
+
+    @Override
+    protected void addExecutorMetrics(List<Metric<?>> metrics) {
+        metrics.add(new Metric<>(METRIC_PREFIX + "queue.depth", executor.getQueue().size()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "queue.remainingCapacity", executor.getQueue().remainingCapacity()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "active", executor.getActiveCount()));
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Command executor terminated with '{}' unfinished commands", executor.shutdownNow().size());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package ua.com.juja.microservices.teams.slackbot.command.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import ua.com.juja.microservices.teams.slackbot.command.RateLimiter;
+import ua.com.juja.microservices.teams.slackbot.util.TokenBucket;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link TokenBucket} per slack user, shared by all commands of the user, and optionally a bucket per command
+ * shared by all users. A limit with zero capacity is off. When maxUsers buckets are kept, buckets which are
+ * full again are dropped; if all are in use, arbitrary ones are dropped.
+ */
+@Component
+@Slf4j
+public class TokenBucketRateLimiter implements RateLimiter, PublicMetrics {
+
+    private static final String METRIC_PREFIX = "teams.slackbot.rateLimit.";
+
+    private final int userCapacity;
+    private final int userPerMinute;
+    private final int commandCapacity;
+    private final int commandPerMinute;
+    private final int maxUsers;
+    private final ConcurrentMap<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TokenBucket> commandBuckets = new ConcurrentHashMap<>();
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejectedUser = new LongAdder();
+    private final LongAdder rejectedCommand = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @Inject
+    public TokenBucketRateLimiter(@Value("${teams.slackbot.rateLimit.user.capacity}") int userCapacity,
+                                  @Value("${teams.slackbot.rateLimit.user.perMinute}") int userPerMinute,
+                                  @Value("${teams.slackbot.rateLimit.command.capacity}") int commandCapacity,
+                                  @Value("${teams.slackbot.rateLimit.command.perMinute}") int commandPerMinute,
+                                  @Value("${teams.slackbot.rateLimit.maxUsers}") int maxUsers) {
+        checkRate("user", userCapacity, userPerMinute);
+        checkRate("command", commandCapacity, commandPerMinute);
+        this.userCapacity = userCapacity;
+        this.userPerMinute = userPerMinute;
+        this.commandCapacity = commandCapacity;
+        this.commandPerMinute = commandPerMinute;
+        this.maxUsers = maxUsers;
+    }
+
+    /**
+     * Fails on startup instead of on the first command when an enabled limit has no refill rate
+     */
+    private static void checkRate(String limit, int capacity, int perMinute) {
+        if (capacity > 0 && perMinute <= 0) {
+            throw new IllegalArgumentException("teams.slackbot.rateLimit." + limit + ".perMinute must be positive "
+                    + "when the " + limit + " rate limit is on, got " + perMinute);
+        }
+    }
+
+    @Override
+    public boolean tryAcquire(String command, String fromUser) {
+        long now = System.nanoTime();
+        if (userCapacity > 0 && !userBucket(fromUser, now).tryAcquire(now)) {
+            rejectedUser.increment();
+            log.info("Command '{}' of user '{}' rejected: user rate limit exceeded", command, fromUser);
+            return false;
+        }
+        if (commandCapacity > 0 && !commandBuckets.computeIfAbsent(command,
+                key -> new TokenBucket(commandCapacity, commandPerMinute, now)).tryAcquire(now)) {
+            rejectedCommand.increment();
+            log.info("Command '{}' of user '{}' rejected: command rate limit exceeded", command, fromUser);
+            return false;
+        }
+        allowed.increment();
+        return true;
+    }
+
+    private TokenBucket userBucket(String fromUser, long now) {
+        TokenBucket bucket = userBuckets.get(fromUser);
+        if (bucket == null) {
+            evictIfFull(now);
+            TokenBucket created = new TokenBucket(userCapacity, userPerMinute, now);
+            bucket = userBuckets.putIfAbsent(fromUser, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Makes room before the bucket of a new user is added, so the new bucket is never evicted right away
+     */
+    private void evictIfFull(long now) {
+        if (userBuckets.size() < maxUsers) {
+            return;
+        }
+        Iterator<TokenBucket> iterator = userBuckets.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isFull(now)) {
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+        iterator = userBuckets.values().iterator();
+        while (userBuckets.size() >= maxUsers && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "allowed", allowed.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "rejected.user", rejectedUser.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "rejected.command", rejectedCommand.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "users", userBuckets.size()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "evictions", evictions.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "user.capacity", userCapacity));
+        metrics.add(new Metric<>(METRIC_PREFIX + "user.perMinute", userPerMinute));
+        metrics.add(new Metric<>(METRIC_PREFIX + "command.capacity", commandCapacity));
+        metrics.add(new Metric<>(METRIC_PREFIX + "command.perMinute", commandPerMinute));
+        return metrics;
+    }
+}
@@ -0,0 +1,102 @@
+package ua.com.juja.microservices.teams.slackbot.command.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ExceptionsHandler;
+
+import javax.inject.Inject;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs every accepted command on its own virtual thread, so blocking calls to Users, Teams and Slack
+ * don't hold platform threads. The number of commands in flight is bounded by
+ * teams.slackbot.executor.virtual.maxInFlight.
+ * <p>
+ * Virtual threads API is looked up reflectively because the bot is still compiled for Java 8,
+ * so this mode requires the application to be started on Java 21 or newer.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "teams.slackbot.executor.mode", havingValue = "virtual")
+public class VirtualThreadCommandExecutor extends AbstractCommandExecutor {
+
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+
+    @Inject
+    public VirtualThreadCommandExecutor(ExceptionsHandler exceptionsHandler,
+                                        @Value("${teams.slackbot.executor.virtual.maxInFlight}") int maxInFlight) {
+        super(exceptionsHandler);
+        this.executor = newVirtualThreadPerTaskExecutor("slack-command-vt-");
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        log.info("Slash commands run on virtual threads. Max in flight commands '{}'", maxInFlight);
+    }
+
+    @Override
+    protected void submit(Runnable task) {
+        if (!inFlight.tryAcquire()) {
+            throw new RejectedExecutionException(String.format("%d commands already in flight", maxInFlight));
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            inFlight.release();
+            throw ex;
+        }
+    }
+
+    @Override
+    protected void addExecutorMetrics(List<Metric<?>> metrics) {
+        metrics.add(new Metric<>(METRIC_PREFIX + "inFlight", maxInFlight - inFlight.availablePermits()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "maxInFlight", maxInFlight));
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Command executor terminated with '{}' unfinished commands", executor.shutdownNow().size());
+        }
+    }
+
+    static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor(String threadNamePrefix) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 0L);
+            ThreadFactory threadFactory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            Method perTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) perTaskExecutor.invoke(null, threadFactory);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Virtual threads executor mode requires Java 21 or newer, current " +
+                    "version is " + System.getProperty("java.version"), ex);
+        }
+    }
+}
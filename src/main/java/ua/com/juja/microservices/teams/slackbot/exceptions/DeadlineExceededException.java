@@ -0,0 +1,10 @@
+package ua.com.juja.microservices.teams.slackbot.exceptions;
+
+/**
+ * Command ran out of its time budget, the rest of its work is abandoned
+ */
+public class DeadlineExceededException extends RuntimeException {
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -2,13 +2,16 @@ package ua.com.juja.microservices.teams.slackbot.exceptions;
 
 import lombok.extern.slf4j.Slf4j;
 import me.ramswaroop.jbot.core.slack.models.RichMessage;
+import org.springframework.util.ReflectionUtils;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.method.annotation.ExceptionHandlerMethodResolver;
+import ua.com.juja.microservices.teams.slackbot.service.SlackDeliveryService;
 import ua.com.juja.microservices.teams.slackbot.service.UserService;
 
 import javax.inject.Inject;
+import java.lang.reflect.Method;
 
 /**
  * @author Ivan Shapovalov
@@ -17,20 +20,42 @@ import javax.inject.Inject;
 @Slf4j
 public class ExceptionsHandler {
 
-    private final RestTemplate restTemplate;
+    private final SlackDeliveryService slackDeliveryService;
 
     private final UserService userService;
 
     private ThreadLocal<String> responseUrl=new ThreadLocal<>();
 
+    private ThreadLocal<Long> responseUrlIssuedAt = new ThreadLocal<>();
+
+    private final ExceptionHandlerMethodResolver exceptionHandlerMethodResolver =
+            new ExceptionHandlerMethodResolver(ExceptionsHandler.class);
+
     @Inject
-    public ExceptionsHandler(RestTemplate restTemplate, UserService userService) {
-        this.restTemplate = restTemplate;
+    public ExceptionsHandler(SlackDeliveryService slackDeliveryService, UserService userService) {
+        this.slackDeliveryService = slackDeliveryService;
         this.userService = userService;
     }
 
     public void setResponseUrl(String responseUrl) {
+        setResponseUrl(responseUrl, System.currentTimeMillis());
+    }
+
+    /**
+     * @param issuedAt time in millis when slack issued the response_url, that is when the command was accepted
+     */
+    public void setResponseUrl(String responseUrl, long issuedAt) {
         this.responseUrl.set(responseUrl);
+        this.responseUrlIssuedAt.set(issuedAt);
+    }
+
+    /**
+     * Handles exception thrown by the delayed part of a command outside of servlet request,
+     * with the same handler method which would be chosen for it by Spring MVC
+     */
+    public void handleDelayedException(Exception ex) {
+        Method handler = exceptionHandlerMethodResolver.resolveMethod(ex);
+        ReflectionUtils.invokeMethod(handler, this, ex);
     }
 
     @ExceptionHandler(Exception.class)
@@ -48,6 +73,21 @@ public class ExceptionsHandler {
         sendErrorResponseAsRichMessage(new RichMessage("Some service unavailable"));
     }
 
+    @ExceptionHandler(ServiceBusyException.class)
+    public void handleServiceBusyException(ServiceBusyException ex) {
+        sendErrorResponseAsRichMessage(new RichMessage(ex.getMessage()));
+    }
+
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public void handleServiceUnavailableException(ServiceUnavailableException ex) {
+        sendErrorResponseAsRichMessage(new RichMessage(ex.getMessage()));
+    }
+
+    @ExceptionHandler(DeadlineExceededException.class)
+    public void handleDeadlineExceededException(DeadlineExceededException ex) {
+        sendErrorResponseAsRichMessage(new RichMessage(ex.getMessage()));
+    }
+
     @ExceptionHandler(UserExchangeException.class)
     public void handleUserExchangeException(UserExchangeException ex) {
         sendErrorResponseAsRichMessage(new RichMessage(ex.getExceptionMessage()));
@@ -71,9 +111,9 @@ public class ExceptionsHandler {
         log.debug("Before sending error response message '{}' to slack response_url '{}' ", richMessage.getText(),
                 responseUrl.get());
         try {
-            restTemplate.postForObject(responseUrl.get(), richMessage, String.class);
+            slackDeliveryService.deliver(responseUrl.get(), responseUrlIssuedAt.get(), richMessage);
         } catch (Exception ex) {
-            log.warn("Nested exception : '{}' with text '{}' . Unable to send response to slack", ex.getMessage(),
+            log.warn("Nested exception : '{}' with text '{}' . Unable to queue response to slack", ex.getMessage(),
                     richMessage.getText());
         }
         log.debug("After sending error response message '{}' to slack response_url '{}' ", richMessage.getText(),
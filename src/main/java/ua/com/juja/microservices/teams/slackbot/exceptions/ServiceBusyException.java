@@ -0,0 +1,11 @@
+package ua.com.juja.microservices.teams.slackbot.exceptions;
+
+/**
+ * Call to a downstream service was not made, because the service is already handling as many calls from the bot
+ * as it can
+ */
+public class ServiceBusyException extends RuntimeException {
+    public ServiceBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,10 @@
+package ua.com.juja.microservices.teams.slackbot.exceptions;
+
+/**
+ * Call to a downstream service was not made, because its circuit breaker is open after recent failures
+ */
+public class ServiceUnavailableException extends RuntimeException {
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,96 @@
+package ua.com.juja.microservices.teams.slackbot.filter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ua.com.juja.microservices.teams.slackbot.command.CommandStage;
+import ua.com.juja.microservices.teams.slackbot.command.StageRecorder;
+
+import javax.inject.Inject;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rejects slash commands with a wrong token or without user_name or response_url before they reach the
+ * dispatcher servlet, so invalid traffic costs one parse of the form body and a constant-time token check.
+ * The container keeps the parsed parameters, controllers bind them without parsing the body again.
+ * The filter package is not wrapped by the debug logging aspect.
+ */
+@Component
+@Slf4j
+public class SlashCommandFilter extends OncePerRequestFilter implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "teams.slackbot.filter.";
+
+    private final StageRecorder stageRecorder;
+    private final byte[] slackToken;
+    private final String sorryMessage;
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    @Inject
+    public SlashCommandFilter(StageRecorder stageRecorder,
+                              @Value("${slack.slashCommandToken}") String slackToken,
+                              @Value("${message.sorry}") String sorryMessage) {
+        this.stageRecorder = stageRecorder;
+        this.slackToken = slackToken.getBytes(StandardCharsets.UTF_8);
+        this.sorryMessage = sorryMessage;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long startedAt = System.nanoTime();
+        boolean correct = isRequestCorrect(request);
+        stageRecorder.record(CommandStage.VALIDATE, System.nanoTime() - startedAt);
+        if (correct) {
+            accepted.increment();
+            chain.doFilter(request, response);
+        } else {
+            rejected.increment();
+            log.debug("Rejected slash command posted to '{}'", request.getRequestURI());
+            sendSorryMessage(response);
+        }
+    }
+
+    private boolean isRequestCorrect(HttpServletRequest request) {
+        String token = request.getParameter("token");
+        return token != null
+                && MessageDigest.isEqual(slackToken, token.getBytes(StandardCharsets.UTF_8))
+                && !isEmpty(request.getParameter("user_name"))
+                && !isEmpty(request.getParameter("response_url"));
+    }
+
+    private static boolean isEmpty(String param) {
+        return param == null || param.isEmpty();
+    }
+
+    private void sendSorryMessage(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("text/plain;charset=UTF-8");
+        PrintWriter printWriter = response.getWriter();
+        printWriter.print(sorryMessage);
+        printWriter.flush();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "accepted", accepted.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "rejected", rejected.sum()));
+        return metrics;
+    }
+}
@@ -1,7 +1,8 @@
 package ua.com.juja.microservices.teams.slackbot.model.teams;
 
-import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.Getter;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
@@ -27,11 +28,13 @@ public class Team {
     private String id;
 
     @JsonProperty("activateDate")
-    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ssZ")
+    @JsonSerialize(using = TeamDateFormat.Serializer.class)
+    @JsonDeserialize(using = TeamDateFormat.Deserializer.class)
     private Date activateDate;
 
     @JsonProperty("deactivateDate")
-    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ssZ")
+    @JsonSerialize(using = TeamDateFormat.Serializer.class)
+    @JsonDeserialize(using = TeamDateFormat.Deserializer.class)
     private Date deactivateDate;
 
     public Team(@JsonProperty("from") String from, @JsonProperty("id") String id,
@@ -0,0 +1,50 @@
+package ua.com.juja.microservices.teams.slackbot.model.teams;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+
+/**
+ * Dates of Teams service as 'yyyy-MM-dd'T'HH:mm:ssZ' in UTC. The formatter is immutable, so unlike
+ * a pattern of {@link com.fasterxml.jackson.annotation.JsonFormat} it is neither cloned nor locked per date.
+ */
+final class TeamDateFormat {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ")
+            .withZone(ZoneOffset.UTC);
+
+    private TeamDateFormat() {
+    }
+
+    static class Serializer extends JsonSerializer<Date> {
+        @Override
+        public void serialize(Date date, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeString(FORMATTER.format(date.toInstant()));
+        }
+    }
+
+    static class Deserializer extends JsonDeserializer<Date> {
+        @Override
+        public Date deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            String text = parser.getValueAsString();
+            if (text == null || text.trim().isEmpty()) {
+                return null;
+            }
+            try {
+                return Date.from(OffsetDateTime.parse(text.trim(), FORMATTER).toInstant());
+            } catch (DateTimeParseException ex) {
+                throw context.weirdStringException(text, Date.class, ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package ua.com.juja.microservices.teams.slackbot.model.users;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Slack names of users found by their uuids, in the order of Users service response.
+ * It is read from the response directly, without {@link User} objects in between.
+ */
+public class SlackNamesByUuids extends LinkedHashMap<String, String> {
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,11 @@
+package ua.com.juja.microservices.teams.slackbot.model.users;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Uuids of users found by their slack names, in the order of Users service response.
+ * It is read from the response directly, without {@link User} objects in between.
+ */
+public class UuidsBySlackNames extends LinkedHashMap<String, String> {
+    private static final long serialVersionUID = 1L;
+}
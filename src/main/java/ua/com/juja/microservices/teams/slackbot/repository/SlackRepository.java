@@ -0,0 +1,11 @@
+package ua.com.juja.microservices.teams.slackbot.repository;
+
+import me.ramswaroop.jbot.core.slack.models.RichMessage;
+
+/**
+ * Delayed responses to slash commands via slack response_url
+ */
+public interface SlackRepository {
+
+    String sendRichMessage(String responseUrl, RichMessage richMessage);
+}
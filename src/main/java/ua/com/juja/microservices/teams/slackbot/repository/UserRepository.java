@@ -1,6 +1,8 @@
 package ua.com.juja.microservices.teams.slackbot.repository;
 
+import ua.com.juja.microservices.teams.slackbot.model.users.SlackNamesByUuids;
 import ua.com.juja.microservices.teams.slackbot.model.users.User;
+import ua.com.juja.microservices.teams.slackbot.model.users.UuidsBySlackNames;
 
 import java.util.List;
 
@@ -12,4 +14,10 @@ public interface UserRepository {
     List<User> findUsersBySlackNames(List<String> slackNames);
 
     List<User> findUsersByUuids(List<String> uuids);
+
+    UuidsBySlackNames findUuidsBySlackNames(List<String> slackNames);
+
+    SlackNamesByUuids findSlackNamesByUuids(List<String> uuids);
+
+    SlackNamesByUuids findAllSlackNamesByUuids();
 }
@@ -0,0 +1,45 @@
+package ua.com.juja.microservices.teams.slackbot.repository.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import me.ramswaroop.jbot.core.slack.models.RichMessage;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import ua.com.juja.microservices.teams.slackbot.repository.SlackRepository;
+import ua.com.juja.microservices.teams.slackbot.util.Bulkhead;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Slack response_url client without the transport, see {@link AbstractTeamRepository}.
+ */
+@Slf4j
+public abstract class AbstractSlackRepository implements SlackRepository, PublicMetrics {
+
+    private final Bulkhead bulkhead;
+
+    protected AbstractSlackRepository(ServiceGuardFactory serviceGuardFactory) {
+        this.bulkhead = serviceGuardFactory.createBulkhead("slack");
+    }
+
+    @Override
+    public String sendRichMessage(String responseUrl, RichMessage richMessage) {
+        log.debug("Send message '{}' to slack response_url '{}'", richMessage.getText(), responseUrl);
+        String response = bulkhead.execute(() -> post(responseUrl, richMessage));
+        log.debug("Get response '{}' from slack", response);
+        return response;
+    }
+
+    /**
+     * Posts the message and returns the response body or throws the same exceptions as RestTemplate does
+     */
+    protected abstract String post(String responseUrl, RichMessage richMessage);
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        bulkhead.addMetrics(metrics, "teams.slackbot.bulkhead.");
+        return metrics;
+    }
+}
@@ -0,0 +1,110 @@
+package ua.com.juja.microservices.teams.slackbot.repository.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ApiError;
+import ua.com.juja.microservices.teams.slackbot.exceptions.TeamExchangeException;
+import ua.com.juja.microservices.teams.slackbot.model.teams.ActivateTeamRequest;
+import ua.com.juja.microservices.teams.slackbot.model.teams.DeactivateTeamRequest;
+import ua.com.juja.microservices.teams.slackbot.model.teams.Team;
+import ua.com.juja.microservices.teams.slackbot.repository.TeamRepository;
+import ua.com.juja.microservices.teams.slackbot.util.JsonCodec;
+import ua.com.juja.microservices.teams.slackbot.util.ServiceGuard;
+import ua.com.juja.microservices.teams.slackbot.util.Utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Teams service client without the transport: requests, the service guard, wire format negotiation
+ * and error mapping are the same for blocking and netty clients.
+ *
+ * @author Ivan Shapovalov
+ */
+@Slf4j
+public abstract class AbstractTeamRepository implements TeamRepository, PublicMetrics {
+
+    private final ServiceGuard serviceGuard;
+    private final JsonCodec jsonCodec;
+    private final WireFormatNegotiator wireFormatNegotiator;
+    @Value("${teams.endpoint.activateTeam}")
+    private String teamsActivateTeamUrl;
+    @Value("${teams.endpoint.deactivateTeam}")
+    private String teamsDeactivateTeamUrl;
+    @Value("${teams.endpoint.getTeam}")
+    private String teamsGetTeamUrl;
+
+    protected AbstractTeamRepository(ServiceGuardFactory serviceGuardFactory, JsonCodec jsonCodec,
+                                     boolean smileWireFormat) {
+        this.serviceGuard = serviceGuardFactory.createGuard("teams");
+        this.jsonCodec = jsonCodec;
+        this.wireFormatNegotiator = new WireFormatNegotiator("teams", smileWireFormat);
+    }
+
+    @Override
+    public Team activateTeam(ActivateTeamRequest activateTeamRequest) {
+        HttpEntity<ActivateTeamRequest> request = new HttpEntity<>(activateTeamRequest, Utils.setupJsonHttpHeaders());
+        log.debug("Send 'Activate team' request '{}' to Teams service to url '{}'", activateTeamRequest,
+                teamsActivateTeamUrl);
+        Team activatedTeam = exchange(teamsActivateTeamUrl, HttpMethod.POST, request);
+        log.info("Team activated: '{}'", activatedTeam.getId());
+        return activatedTeam;
+    }
+
+    @Override
+    public Team deactivateTeam(DeactivateTeamRequest deactivateTeamRequest) {
+        HttpEntity<DeactivateTeamRequest> request = new HttpEntity<>(deactivateTeamRequest,
+                Utils.setupJsonHttpHeaders());
+        log.debug("Send 'Deactivate team' request to Teams service to url '{}'", teamsDeactivateTeamUrl);
+        Team deactivatedTeam = exchange(teamsDeactivateTeamUrl, HttpMethod.PUT, request);
+        log.info("Team deactivated: '{}'", deactivatedTeam.getId());
+        return deactivatedTeam;
+    }
+
+    @Override
+    public Team getTeam(String uuid) {
+        HttpEntity<Void> request = new HttpEntity<>(Utils.setupJsonHttpHeaders());
+        String teamsServiceURL = teamsGetTeamUrl + "/" + uuid;
+        log.debug("Send 'Get team' request to Teams service to url '{}'", teamsServiceURL);
+        Team team = exchange(teamsServiceURL, HttpMethod.GET, request);
+        log.info("Team got: '{}'", team.getId());
+        return team;
+    }
+
+    private <T> Team exchange(String url, HttpMethod method, HttpEntity<T> request) {
+        try {
+            Supplier<ResponseEntity<Team>> exchange = () -> wireFormatNegotiator.exchange(url, request, entity ->
+                    send(url, method, entity, Team.class));
+            // only reads are idempotent and may be sent twice
+            ResponseEntity<Team> response = method == HttpMethod.GET
+                    ? serviceGuard.hedgedCall(exchange) : serviceGuard.call(exchange);
+            log.debug("Get response '{}' from Teams service", response);
+            return response.getBody();
+        } catch (HttpClientErrorException ex) {
+            ApiError error = jsonCodec.convertToApiError(ex);
+            throw new TeamExchangeException(error, ex);
+        }
+    }
+
+    /**
+     * Sends the request and returns the response or throws the same exceptions as RestTemplate does
+     */
+    protected abstract <T, R> ResponseEntity<R> send(String url, HttpMethod method, HttpEntity<T> entity,
+                                                    Class<R> responseType);
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        serviceGuard.addMetrics(metrics);
+        wireFormatNegotiator.addMetrics(metrics);
+        return metrics;
+    }
+}
@@ -0,0 +1,136 @@
+package ua.com.juja.microservices.teams.slackbot.repository.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ApiError;
+import ua.com.juja.microservices.teams.slackbot.exceptions.UserExchangeException;
+import ua.com.juja.microservices.teams.slackbot.model.users.SlackNamesByUuids;
+import ua.com.juja.microservices.teams.slackbot.model.users.User;
+import ua.com.juja.microservices.teams.slackbot.model.users.UserSlackNameRequest;
+import ua.com.juja.microservices.teams.slackbot.model.users.UserUuidRequest;
+import ua.com.juja.microservices.teams.slackbot.model.users.UuidsBySlackNames;
+import ua.com.juja.microservices.teams.slackbot.repository.UserRepository;
+import ua.com.juja.microservices.teams.slackbot.util.SlackNameHandler;
+import ua.com.juja.microservices.teams.slackbot.util.JsonCodec;
+import ua.com.juja.microservices.teams.slackbot.util.ServiceGuard;
+import ua.com.juja.microservices.teams.slackbot.util.Utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Users service client without the transport, see {@link AbstractTeamRepository}.
+ *
+ * @author Ivan Shapovalov
+ */
+@Slf4j
+public abstract class AbstractUserRepository implements UserRepository, PublicMetrics {
+
+    private final ServiceGuard serviceGuard;
+    private final JsonCodec jsonCodec;
+    private final WireFormatNegotiator wireFormatNegotiator;
+    @Value("${users.endpoint.usersBySlackNames}")
+    private String usersUrlFindUsersBySlackNames;
+    @Value("${users.endpoint.usersByUuids}")
+    private String usersUrlFindUsersByUuids;
+    @Value("${users.endpoint.allUsers}")
+    private String usersUrlFindAllUsers;
+
+    protected AbstractUserRepository(ServiceGuardFactory serviceGuardFactory, JsonCodec jsonCodec,
+                                     boolean smileWireFormat) {
+        this.serviceGuard = serviceGuardFactory.createGuard("users");
+        this.jsonCodec = jsonCodec;
+        this.wireFormatNegotiator = new WireFormatNegotiator("users", smileWireFormat);
+    }
+
+    @Override
+    public List<User> findUsersBySlackNames(List<String> slackNames) {
+        SlackNameHandler.addAtToSlackNames(slackNames);
+        UserSlackNameRequest userSlackNameRequest = new UserSlackNameRequest(slackNames);
+        HttpEntity<UserSlackNameRequest> request = new HttpEntity<>(userSlackNameRequest, Utils.setupJsonHttpHeaders());
+        List<User> users = Arrays.asList(getUsers(request, usersUrlFindUsersBySlackNames, User[].class, false));
+        log.info("Found Users: '{}' by slackNames: '{}'", users, slackNames);
+        return users;
+    }
+
+    @Override
+    public List<User> findUsersByUuids(List<String> uuids) {
+        UserUuidRequest userUuidRequest = new UserUuidRequest(uuids);
+        HttpEntity<UserUuidRequest> request = new HttpEntity<>(userUuidRequest, Utils.setupJsonHttpHeaders());
+        List<User> users = Arrays.asList(getUsers(request, usersUrlFindUsersByUuids, User[].class, true));
+        log.info("Found Users:{} by uuids: '{}'", users, uuids);
+        return users;
+    }
+
+    @Override
+    public UuidsBySlackNames findUuidsBySlackNames(List<String> slackNames) {
+        SlackNameHandler.addAtToSlackNames(slackNames);
+        UserSlackNameRequest userSlackNameRequest = new UserSlackNameRequest(slackNames);
+        HttpEntity<UserSlackNameRequest> request = new HttpEntity<>(userSlackNameRequest, Utils.setupJsonHttpHeaders());
+        UuidsBySlackNames uuids = getUsers(request, usersUrlFindUsersBySlackNames, UuidsBySlackNames.class, false);
+        log.info("Found uuids: '{}' by slackNames: '{}'", uuids, slackNames);
+        return uuids;
+    }
+
+    @Override
+    public SlackNamesByUuids findSlackNamesByUuids(List<String> uuids) {
+        UserUuidRequest userUuidRequest = new UserUuidRequest(uuids);
+        HttpEntity<UserUuidRequest> request = new HttpEntity<>(userUuidRequest, Utils.setupJsonHttpHeaders());
+        SlackNamesByUuids slackNames = getUsers(request, usersUrlFindUsersByUuids, SlackNamesByUuids.class, true);
+        log.info("Found slackNames: '{}' by uuids: '{}'", slackNames, uuids);
+        return slackNames;
+    }
+
+    @Override
+    public SlackNamesByUuids findAllSlackNamesByUuids() {
+        HttpEntity<Void> request = new HttpEntity<>(Utils.setupJsonHttpHeaders());
+        SlackNamesByUuids slackNames = getUsers(request, usersUrlFindAllUsers, HttpMethod.GET,
+                SlackNamesByUuids.class, false);
+        log.info("Found '{}' users", slackNames.size());
+        return slackNames;
+    }
+
+    private <T, R> R getUsers(HttpEntity<T> request, String userServiceURL, Class<R> responseType,
+                              boolean hedged) {
+        return getUsers(request, userServiceURL, HttpMethod.POST, responseType, hedged);
+    }
+
+    private <T, R> R getUsers(HttpEntity<T> request, String userServiceURL, HttpMethod method,
+                              Class<R> responseType, boolean hedged) {
+        try {
+            log.debug("Send request '{}' to User service to url '{}'", request, userServiceURL);
+            Supplier<ResponseEntity<R>> exchange = () -> wireFormatNegotiator.exchange(userServiceURL, request,
+                    entity -> send(userServiceURL, method, entity, responseType));
+            ResponseEntity<R> response = hedged ? serviceGuard.hedgedCall(exchange)
+                    : serviceGuard.call(exchange);
+            log.debug("Get response '{}' from User service", response);
+            return response.getBody();
+        } catch (HttpClientErrorException ex) {
+            ApiError error = jsonCodec.convertToApiError(ex);
+            throw new UserExchangeException(error, ex);
+        }
+    }
+
+    /**
+     * @see AbstractTeamRepository#send(String, HttpMethod, HttpEntity, Class)
+     */
+    protected abstract <T, R> ResponseEntity<R> send(String url, HttpMethod method, HttpEntity<T> entity,
+                                                    Class<R> responseType);
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        serviceGuard.addMetrics(metrics);
+        wireFormatNegotiator.addMetrics(metrics);
+        return metrics;
+    }
+}
@@ -0,0 +1,36 @@
+package ua.com.juja.microservices.teams.slackbot.repository.impl;
+
+import me.ramswaroop.jbot.core.slack.models.RichMessage;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.client.AsyncRestTemplate;
+import ua.com.juja.microservices.teams.slackbot.util.Utils;
+
+import javax.inject.Inject;
+
+/**
+ * @see AsyncRestTeamRepository
+ */
+@Repository
+@Profile("netty")
+public class AsyncRestSlackRepository extends AbstractSlackRepository {
+
+    private final AsyncRestTemplate asyncRestTemplate;
+
+    @Inject
+    public AsyncRestSlackRepository(AsyncRestTemplate asyncRestTemplate,
+                                    ServiceGuardFactory serviceGuardFactory) {
+        super(serviceGuardFactory);
+        this.asyncRestTemplate = asyncRestTemplate;
+    }
+
+    @Override
+    protected String post(String responseUrl, RichMessage richMessage) {
+        ListenableFuture<ResponseEntity<String>> future = asyncRestTemplate.postForEntity(responseUrl,
+                new HttpEntity<>(richMessage), String.class);
+        return Utils.awaitResponse(future, responseUrl).getBody();
+    }
+}
@@ -0,0 +1,39 @@
+package ua.com.juja.microservices.teams.slackbot.repository.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Repository;
+import org.springframework.web.client.AsyncRestTemplate;
+import ua.com.juja.microservices.teams.slackbot.util.JsonCodec;
+import ua.com.juja.microservices.teams.slackbot.util.Utils;
+
+import javax.inject.Inject;
+
+/**
+ * Teams service client on the netty event loop ('netty' profile). Socket I/O of all in-flight requests is
+ * served by a few event loop threads, but the calling command thread still waits for the result, so threads
+ * of the command executor are only freed with teams.slackbot.executor.mode=virtual.
+ */
+@Repository
+@Profile("netty")
+public class AsyncRestTeamRepository extends AbstractTeamRepository {
+
+    private final AsyncRestTemplate asyncRestTemplate;
+
+    @Inject
+    public AsyncRestTeamRepository(AsyncRestTemplate asyncRestTemplate, ServiceGuardFactory serviceGuardFactory,
+                                   JsonCodec jsonCodec,
+                                   @Value("${teams.slackbot.wireFormat.smile}") boolean smileWireFormat) {
+        super(serviceGuardFactory, jsonCodec, smileWireFormat);
+        this.asyncRestTemplate = asyncRestTemplate;
+    }
+
+    @Override
+    protected <T, R> ResponseEntity<R> send(String url, HttpMethod method, HttpEntity<T> entity,
+                                           Class<R> responseType) {
+        return Utils.awaitResponse(asyncRestTemplate.exchange(url, method, entity, responseType), url);
+    }
+}
@@ -0,0 +1,37 @@
+package ua.com.juja.microservices.teams.slackbot.repository.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Repository;
+import org.springframework.web.client.AsyncRestTemplate;
+import ua.com.juja.microservices.teams.slackbot.util.JsonCodec;
+import ua.com.juja.microservices.teams.slackbot.util.Utils;
+
+import javax.inject.Inject;
+
+/**
+ * @see AsyncRestTeamRepository
+ */
+@Repository
+@Profile("netty")
+public class AsyncRestUserRepository extends AbstractUserRepository {
+
+    private final AsyncRestTemplate asyncRestTemplate;
+
+    @Inject
+    public AsyncRestUserRepository(AsyncRestTemplate asyncRestTemplate, ServiceGuardFactory serviceGuardFactory,
+                                   JsonCodec jsonCodec,
+                                   @Value("${teams.slackbot.wireFormat.smile}") boolean smileWireFormat) {
+        super(serviceGuardFactory, jsonCodec, smileWireFormat);
+        this.asyncRestTemplate = asyncRestTemplate;
+    }
+
+    @Override
+    protected <T, R> ResponseEntity<R> send(String url, HttpMethod method, HttpEntity<T> entity,
+                                           Class<R> responseType) {
+        return Utils.awaitResponse(asyncRestTemplate.exchange(url, method, entity, responseType), url);
+    }
+}
@@ -0,0 +1,196 @@
+package ua.com.juja.microservices.teams.slackbot.repository.impl;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression of exchanges with Teams and Users services. Every request accepts gzip and deflate responses,
+ * which are decompressed while the message converter reads them. Request bodies to Users service of at least
+ * requestThreshold bytes are sent gzipped, 0 turns it off, as the service has to accept gzipped bodies.
+ * <p>
+ * Bytes before and after compression are counted for requests and responses, so the saving is visible.
+ */
+public class CompressionInterceptor implements ClientHttpRequestInterceptor, PublicMetrics {
+
+    private static final String METRIC_PREFIX = "teams.slackbot.compression.";
+    private static final String GZIP = "gzip";
+    private static final String DEFLATE = "deflate";
+
+    private final int requestThreshold;
+    private final String usersBaseUrl;
+    private final LongAdder requestBytes = new LongAdder();
+    private final LongAdder requestWireBytes = new LongAdder();
+    private final LongAdder compressedRequests = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+    private final LongAdder responseWireBytes = new LongAdder();
+    private final LongAdder compressedResponses = new LongAdder();
+
+    public CompressionInterceptor(int requestThreshold, String usersBaseUrl) {
+        this.requestThreshold = requestThreshold;
+        this.usersBaseUrl = usersBaseUrl;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        HttpHeaders headers = request.getHeaders();
+        headers.set(HttpHeaders.ACCEPT_ENCODING, GZIP + ", " + DEFLATE);
+        byte[] sent = body;
+        if (requestThreshold > 0 && body.length >= requestThreshold
+                && request.getURI().toString().startsWith(usersBaseUrl)) {
+            sent = gzip(body);
+            headers.set(HttpHeaders.CONTENT_ENCODING, GZIP);
+            headers.setContentLength(sent.length);
+            compressedRequests.increment();
+        }
+        requestBytes.add(body.length);
+        requestWireBytes.add(sent.length);
+        return new DecodingResponse(execution.execute(request, sent));
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(body);
+        }
+        return compressed.toByteArray();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "request.bytes", requestBytes.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "request.wireBytes", requestWireBytes.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "request.compressed", compressedRequests.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "response.bytes", responseBytes.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "response.wireBytes", responseWireBytes.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "response.compressed", compressedResponses.sum()));
+        return metrics;
+    }
+
+    private class DecodingResponse implements ClientHttpResponse {
+        private final ClientHttpResponse response;
+        private final String encoding;
+        private HttpHeaders headers;
+        private InputStream body;
+
+        DecodingResponse(ClientHttpResponse response) {
+            this.response = response;
+            String contentEncoding = response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+            this.encoding = contentEncoding == null ? null : contentEncoding.trim().toLowerCase();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            if (headers == null) {
+                headers = new HttpHeaders();
+                headers.putAll(response.getHeaders());
+                if (isCompressed()) {
+                    headers.remove(HttpHeaders.CONTENT_ENCODING);
+                    headers.remove(HttpHeaders.CONTENT_LENGTH);
+                }
+            }
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                InputStream wire = new CountingInputStream(response.getBody(), responseWireBytes);
+                if (isCompressed()) {
+                    compressedResponses.increment();
+                    wire = decoding(wire);
+                }
+                body = new CountingInputStream(wire, responseBytes);
+            }
+            return body;
+        }
+
+        private boolean isCompressed() {
+            return GZIP.equals(encoding) || DEFLATE.equals(encoding);
+        }
+
+        private InputStream decoding(InputStream wire) throws IOException {
+            PushbackInputStream stream = new PushbackInputStream(wire, 1);
+            int first = stream.read();
+            if (first == -1) {
+                return stream;
+            }
+            stream.unread(first);
+            return GZIP.equals(encoding) ? new GZIPInputStream(stream) : new InflaterInputStream(stream);
+        }
+
+        @Override
+        public HttpStatus getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public int getRawStatusCode() throws IOException {
+            return response.getRawStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final LongAdder counter;
+
+        CountingInputStream(InputStream in, LongAdder counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = in.read();
+            if (read != -1) {
+                counter.increment();
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = in.read(buffer, offset, length);
+            if (read > 0) {
+                counter.add(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            counter.add(skipped);
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ua.com.juja.microservices.teams.slackbot.repository.impl;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+import ua.com.juja.microservices.teams.slackbot.util.Utils;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Saturation of connection pools of Teams, Users and slack, in total and per route. Routes of Teams and Users
+ * services are named after the service, other routes after their host and port. Pending is the number of calls
+ * waiting for a connection, so it grows when a service holds all of its connections.
+ */
+@Component
+public class ConnectionPoolMetrics implements PublicMetrics {
+
+    private static final String METRIC_PREFIX = "teams.slackbot.httpClient.";
+
+    private final PoolingHttpClientConnectionManager servicesConnectionManager;
+    private final PoolingHttpClientConnectionManager slackConnectionManager;
+    private final Map<HttpRoute, String> routeNames = new HashMap<>();
+
+    @Inject
+    public ConnectionPoolMetrics(
+            @Named("servicesConnectionManager") PoolingHttpClientConnectionManager servicesConnectionManager,
+            @Named("slackConnectionManager") PoolingHttpClientConnectionManager slackConnectionManager,
+            @Value("${teams.baseURL}") String teamsBaseUrl,
+            @Value("${users.baseURL}") String usersBaseUrl) {
+        this.servicesConnectionManager = servicesConnectionManager;
+        this.slackConnectionManager = slackConnectionManager;
+        routeNames.put(Utils.routeOf(teamsBaseUrl), "teams");
+        routeNames.put(Utils.routeOf(usersBaseUrl), "users");
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        addPoolMetrics(metrics, "services", servicesConnectionManager);
+        addPoolMetrics(metrics, "slack", slackConnectionManager);
+        return metrics;
+    }
+
+    private void addPoolMetrics(List<Metric<?>> metrics, String pool, PoolingHttpClientConnectionManager manager) {
+        addPoolStats(metrics, METRIC_PREFIX + pool + ".total.", manager.getTotalStats());
+        Set<HttpRoute> routes = new HashSet<>(manager.getRoutes());
+        if (manager == servicesConnectionManager) {
+            routes.addAll(routeNames.keySet());
+        }
+        for (HttpRoute route : routes) {
+            addPoolStats(metrics, METRIC_PREFIX + pool + ".route." + nameOf(route) + ".", manager.getStats(route));
+        }
+    }
+
+    private String nameOf(HttpRoute route) {
+        String name = routeNames.get(route);
+        if (name != null) {
+            return name;
+        }
+        HttpHost target = route.getTargetHost();
+        return target.getHostName() + ":" + target.getPort();
+    }
+
+    private static void addPoolStats(List<Metric<?>> metrics, String prefix, PoolStats stats) {
+        metrics.add(new Metric<>(prefix + "max", stats.getMax()));
+        metrics.add(new Metric<>(prefix + "leased", stats.getLeased()));
+        metrics.add(new Metric<>(prefix + "available", stats.getAvailable()));
+        metrics.add(new Metric<>(prefix + "pending", stats.getPending()));
+    }
+}
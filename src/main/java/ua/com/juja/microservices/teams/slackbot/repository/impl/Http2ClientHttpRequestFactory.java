@@ -0,0 +1,539 @@
+package ua.com.juja.microservices.teams.slackbot.repository.impl;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.HttpConversionUtil.ExtensionHeaderNames;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandler;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapterBuilder;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.AbstractClientHttpResponse;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StreamUtils;
+import ua.com.juja.microservices.teams.slackbot.util.Deadline;
+import ua.com.juja.microservices.teams.slackbot.util.Hedger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP/2 transport of Teams and Users services. Requests to a service are multiplexed as streams over at most
+ * maxConnections cleartext HTTP/2 connections (h2c with prior knowledge), a new connection is opened only when
+ * every open one carries maxStreams streams. A service which accepts the connection but doesn't answer the HTTP/2
+ * preface with its settings, and every https service, is called through the HTTP/1.1 fallback factory, HTTP/2 is
+ * tried again after retrySeconds. When disabled every request goes to the fallback factory.
+ * <p>
+ * Timeouts, deadlines and cancellation of hedged attempts work the same way as with the fallback factory:
+ * a stream which isn't answered in time is reset and the call fails with {@link SocketTimeoutException}.
+ */
+@Slf4j
+public class Http2ClientHttpRequestFactory implements ClientHttpRequestFactory, PublicMetrics, DisposableBean {
+
+    private static final String METRIC_PREFIX = "teams.slackbot.http2.";
+    private static final int MAX_CONTENT_LENGTH = 16 * 1024 * 1024;
+
+    private final boolean enabled;
+    private final int maxConnections;
+    private final int maxStreams;
+    private final int connectTimeout;
+    private final int socketTimeout;
+    private final long retryNanos;
+    private final ClientHttpRequestFactory fallback;
+    private final EventLoopGroup eventLoopGroup;
+    private final Map<String, Origin> origins = new ConcurrentHashMap<>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder streams = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    /**
+     * @param connectTimeout time in milliseconds to connect and to get the settings of the server
+     * @param socketTimeout  time in milliseconds to wait for a response, shortened by a command deadline
+     */
+    public Http2ClientHttpRequestFactory(boolean enabled, int eventLoopThreads, int maxConnections, int maxStreams,
+                                         int connectTimeout, int socketTimeout, long retrySeconds,
+                                         ClientHttpRequestFactory fallback) {
+        this.enabled = enabled;
+        this.maxConnections = maxConnections;
+        this.maxStreams = maxStreams;
+        this.connectTimeout = connectTimeout;
+        this.socketTimeout = socketTimeout;
+        this.retryNanos = TimeUnit.SECONDS.toNanos(retrySeconds);
+        this.fallback = fallback;
+        this.eventLoopGroup = enabled
+                ? new NioEventLoopGroup(eventLoopThreads, new DefaultThreadFactory("http2-client", true)) : null;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        if (!enabled || !"http".equalsIgnoreCase(uri.getScheme())) {
+            return fallback.createRequest(uri, httpMethod);
+        }
+        int port = uri.getPort() > 0 ? uri.getPort() : 80;
+        Origin origin = origins.computeIfAbsent(uri.getHost() + ":" + port, key -> new Origin(uri.getHost(), port));
+        if (!origin.speaksHttp2()) {
+            fallbacks.increment();
+            return fallback.createRequest(uri, httpMethod);
+        }
+        return new Http2Request(origin, uri, httpMethod);
+    }
+
+    @Override
+    public void destroy() {
+        if (eventLoopGroup != null) {
+            eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "connections", openConnections.get()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "connectionsOpened", connectionsOpened.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "activeStreams", activeStreams.get()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "streams", streams.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "fallbacks", fallbacks.sum()));
+        return metrics;
+    }
+
+    private static long timeoutMillis(int socketTimeout) {
+        Deadline deadline = Deadline.current();
+        return deadline == null ? socketTimeout : Math.max(1, Math.min(socketTimeout, deadline.remainingMillis()));
+    }
+
+    /**
+     * Thrown when the server accepted the connection but didn't answer the HTTP/2 preface
+     */
+    private static class Http2NotSupportedException extends IOException {
+        Http2NotSupportedException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * At most one connection of an origin is opened at a time, outside of any lock: the caller which publishes
+     * the pending connection opens it, the others wait for it and then pick a connection again
+     */
+    private class Origin {
+        final String host;
+        final int port;
+        final List<Connection> connections = new CopyOnWriteArrayList<>();
+        final AtomicReference<CompletableFuture<Connection>> pending = new AtomicReference<>();
+        volatile long http1Since;
+        volatile boolean http1;
+
+        Origin(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        boolean speaksHttp2() {
+            return !http1 || System.nanoTime() - http1Since > retryNanos;
+        }
+
+        Connection acquire() throws IOException {
+            while (true) {
+                connections.removeIf(connection -> !connection.channel.isActive());
+                Connection leastLoaded = null;
+                for (Connection connection : connections) {
+                    if (connection.isUsable() && (leastLoaded == null || connection.load() < leastLoaded.load())) {
+                        leastLoaded = connection;
+                    }
+                }
+                if (leastLoaded != null && (leastLoaded.load() < leastLoaded.maxStreams()
+                        || connections.size() >= maxConnections)) {
+                    return leastLoaded;
+                }
+                CompletableFuture<Connection> opening = pending.get();
+                if (opening != null) {
+                    awaitOpened(opening);
+                } else {
+                    CompletableFuture<Connection> created = new CompletableFuture<>();
+                    if (pending.compareAndSet(null, created)) {
+                        return open(created);
+                    }
+                }
+            }
+        }
+
+        private Connection open(CompletableFuture<Connection> opening) throws IOException {
+            try {
+                Connection connection = new Connection(this);
+                connections.add(connection);
+                http1 = false;
+                opening.complete(connection);
+                return connection;
+            } catch (Http2NotSupportedException ex) {
+                if (!http1) {
+                    log.warn("Service at {}:{} doesn't speak HTTP/2, it is called over HTTP/1.1 for {} seconds",
+                            host, port, TimeUnit.NANOSECONDS.toSeconds(retryNanos));
+                }
+                http1Since = System.nanoTime();
+                http1 = true;
+                opening.completeExceptionally(ex);
+                throw ex;
+            } catch (IOException | RuntimeException | Error ex) {
+                opening.completeExceptionally(ex);
+                throw ex;
+            } finally {
+                pending.compareAndSet(opening, null);
+            }
+        }
+
+        /**
+         * Callers which wait for a connection which can't be opened fail the same way as its opener
+         */
+        private void awaitOpened(CompletableFuture<Connection> opening) throws IOException {
+            try {
+                opening.get();
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof IOException) {
+                    throw (IOException) ex.getCause();
+                }
+                throw new IOException("Can't connect to " + host + ":" + port, ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while connecting to " + host);
+            }
+        }
+    }
+
+    private class Connection {
+        final Origin origin;
+        final Channel channel;
+        final HttpToHttp2ConnectionHandler handler;
+        final Map<Integer, Exchange> exchanges = new ConcurrentHashMap<>();
+        final AtomicInteger load = new AtomicInteger();
+        final CompletableFuture<Void> settingsReceived = new CompletableFuture<>();
+
+        Connection(Origin origin) throws IOException {
+            this.origin = origin;
+            Http2Connection connection = new DefaultHttp2Connection(false);
+            this.handler = new HttpToHttp2ConnectionHandlerBuilder()
+                    .connection(connection)
+                    .frameListener(new InboundHttp2ToHttpAdapterBuilder(connection)
+                            .maxContentLength(MAX_CONTENT_LENGTH)
+                            .propagateSettings(true)
+                            .build())
+                    .build();
+            ChannelFuture connected = new Bootstrap()
+                    .group(eventLoopGroup)
+                    .channel(NioSocketChannel.class)
+                    .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout)
+                    .option(ChannelOption.TCP_NODELAY, true)
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel channel) {
+                            channel.pipeline().addLast(handler, new ResponseHandler());
+                        }
+                    })
+                    .connect(origin.host, origin.port);
+            connected.awaitUninterruptibly();
+            if (!connected.isSuccess()) {
+                throw new IOException("Can't connect to " + origin.host + ":" + origin.port, connected.cause());
+            }
+            this.channel = connected.channel();
+            channel.flush();
+            awaitSettings();
+            openConnections.incrementAndGet();
+            connectionsOpened.increment();
+            channel.closeFuture().addListener(future -> {
+                openConnections.decrementAndGet();
+                origin.connections.remove(this);
+            });
+        }
+
+        private void awaitSettings() throws IOException {
+            try {
+                settingsReceived.get(connectTimeout, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException | TimeoutException ex) {
+                channel.close();
+                throw new Http2NotSupportedException("No HTTP/2 settings from " + origin.host + ":" + origin.port,
+                        ex);
+            } catch (InterruptedException ex) {
+                channel.close();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while connecting to " + origin.host);
+            }
+        }
+
+        boolean isUsable() {
+            return channel.isActive() && !handler.connection().goAwayReceived();
+        }
+
+        int load() {
+            return load.get();
+        }
+
+        int maxStreams() {
+            return Math.min(maxStreams, handler.connection().local().maxActiveStreams());
+        }
+
+        void send(FullHttpRequest request, Exchange exchange) {
+            load.incrementAndGet();
+            activeStreams.incrementAndGet();
+            streams.increment();
+            exchange.response.whenComplete((response, failure) -> {
+                load.decrementAndGet();
+                activeStreams.decrementAndGet();
+            });
+            channel.eventLoop().execute(() -> {
+                if (exchange.response.isDone()) {
+                    ReferenceCountUtil.release(request);
+                    return;
+                }
+                int streamId = handler.connection().local().incrementAndGetNextStreamId();
+                exchange.streamId = streamId;
+                exchanges.put(streamId, exchange);
+                request.headers().setInt(ExtensionHeaderNames.STREAM_ID.text(), streamId);
+                channel.writeAndFlush(request).addListener(future -> {
+                    if (!future.isSuccess()) {
+                        exchanges.remove(streamId);
+                        exchange.response.completeExceptionally(new IOException("Can't send request to " +
+                                origin.host + ":" + origin.port, future.cause()));
+                    }
+                });
+            });
+        }
+
+        void reset(Exchange exchange) {
+            channel.eventLoop().execute(() -> {
+                if (exchange.streamId > 0 && exchanges.remove(exchange.streamId) != null) {
+                    ChannelHandlerContext context = channel.pipeline().context(handler);
+                    handler.resetStream(context, exchange.streamId, Http2Error.CANCEL.code(), context.newPromise());
+                    context.flush();
+                }
+            });
+        }
+
+        private class ResponseHandler extends ChannelInboundHandlerAdapter {
+            @Override
+            public void channelRead(ChannelHandlerContext context, Object message) {
+                try {
+                    if (message instanceof Http2Settings) {
+                        settingsReceived.complete(null);
+                    } else if (message instanceof FullHttpResponse) {
+                        FullHttpResponse response = (FullHttpResponse) message;
+                        Integer streamId = response.headers().getInt(ExtensionHeaderNames.STREAM_ID.text());
+                        Exchange exchange = streamId == null ? null : exchanges.remove(streamId);
+                        if (exchange != null) {
+                            exchange.response.complete(Http2Response.of(response));
+                        }
+                    }
+                } finally {
+                    ReferenceCountUtil.release(message);
+                }
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext context, Throwable cause) {
+                log.debug("HTTP/2 connection to {}:{} failed", origin.host, origin.port, cause);
+                context.close();
+            }
+
+            @Override
+            public void channelInactive(ChannelHandlerContext context) throws Exception {
+                IOException closed = new IOException("Connection to " + origin.host + ":" + origin.port + " closed");
+                settingsReceived.completeExceptionally(closed);
+                for (Exchange exchange : exchanges.values()) {
+                    exchange.response.completeExceptionally(closed);
+                }
+                exchanges.clear();
+                super.channelInactive(context);
+            }
+        }
+    }
+
+    private static class Exchange {
+        final CompletableFuture<Http2Response> response = new CompletableFuture<>();
+        volatile int streamId;
+    }
+
+    private class Http2Request extends AbstractClientHttpRequest {
+        private final Origin origin;
+        private final URI uri;
+        private final HttpMethod method;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+
+        Http2Request(Origin origin, URI uri, HttpMethod method) {
+            this.origin = origin;
+            this.uri = uri;
+            this.method = method;
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        protected OutputStream getBodyInternal(HttpHeaders headers) {
+            return body;
+        }
+
+        @Override
+        protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+            Connection connection = acquireConnection();
+            if (connection == null) {
+                fallbacks.increment();
+                return executeFallback(headers);
+            }
+            Exchange exchange = new Exchange();
+            Hedger.onCancel(() -> {
+                exchange.response.completeExceptionally(new IOException("Request to " + uri + " aborted"));
+                connection.reset(exchange);
+            });
+            connection.send(toNettyRequest(headers), exchange);
+            long timeout = timeoutMillis(socketTimeout);
+            try {
+                return exchange.response.get(timeout, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                exchange.response.cancel(false);
+                connection.reset(exchange);
+                throw new SocketTimeoutException("No response from " + uri + " within " + timeout + " ms");
+            } catch (ExecutionException ex) {
+                throw ex.getCause() instanceof IOException
+                        ? (IOException) ex.getCause() : new IOException(ex.getCause());
+            } catch (InterruptedException ex) {
+                exchange.response.cancel(false);
+                connection.reset(exchange);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + uri);
+            }
+        }
+
+        private Connection acquireConnection() throws IOException {
+            try {
+                return origin.speaksHttp2() ? origin.acquire() : null;
+            } catch (Http2NotSupportedException ex) {
+                return null;
+            }
+        }
+
+        private FullHttpRequest toNettyRequest(HttpHeaders headers) {
+            String path = uri.getRawQuery() == null ? uri.getRawPath() : uri.getRawPath() + "?" + uri.getRawQuery();
+            FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1,
+                    io.netty.handler.codec.http.HttpMethod.valueOf(method.name()), path,
+                    Unpooled.wrappedBuffer(body.toByteArray()));
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                request.headers().add(header.getKey(), header.getValue());
+            }
+            request.headers().set(HttpHeaderNames.HOST, uri.getPort() > 0 ? uri.getHost() + ":" + uri.getPort()
+                    : uri.getHost());
+            request.headers().set(ExtensionHeaderNames.SCHEME.text(), "http");
+            request.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, body.size());
+            return request;
+        }
+
+        private ClientHttpResponse executeFallback(HttpHeaders headers) throws IOException {
+            ClientHttpRequest request = fallback.createRequest(uri, method);
+            request.getHeaders().putAll(headers);
+            StreamUtils.copy(body.toByteArray(), request.getBody());
+            return request.execute();
+        }
+    }
+
+    private static class Http2Response extends AbstractClientHttpResponse {
+        private final int status;
+        private final String reason;
+        private final HttpHeaders headers;
+        private final byte[] body;
+
+        private Http2Response(int status, String reason, HttpHeaders headers, byte[] body) {
+            this.status = status;
+            this.reason = reason;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        static Http2Response of(FullHttpResponse response) {
+            HttpHeaders headers = new HttpHeaders();
+            for (Map.Entry<String, String> header : response.headers()) {
+                if (!header.getKey().startsWith("x-http2-")) {
+                    headers.add(header.getKey(), header.getValue());
+                }
+            }
+            byte[] body = new byte[response.content().readableBytes()];
+            response.content().readBytes(body);
+            return new Http2Response(response.status().code(), response.status().reasonPhrase(), headers, body);
+        }
+
+        @Override
+        public int getRawStatusCode() {
+            return status;
+        }
+
+        @Override
+        public String getStatusText() {
+            return reason;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
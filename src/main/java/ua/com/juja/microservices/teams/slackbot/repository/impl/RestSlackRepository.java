@@ -0,0 +1,28 @@
+package ua.com.juja.microservices.teams.slackbot.repository.impl;
+
+import me.ramswaroop.jbot.core.slack.models.RichMessage;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+import org.springframework.web.client.RestTemplate;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+@Repository
+@Profile("!netty")
+public class RestSlackRepository extends AbstractSlackRepository {
+
+    private final RestTemplate restTemplate;
+
+    @Inject
+    public RestSlackRepository(@Named("slackRestTemplate") RestTemplate restTemplate,
+                               ServiceGuardFactory serviceGuardFactory) {
+        super(serviceGuardFactory);
+        this.restTemplate = restTemplate;
+    }
+
+    @Override
+    protected String post(String responseUrl, RichMessage richMessage) {
+        return restTemplate.postForObject(responseUrl, richMessage, String.class);
+    }
+}
@@ -0,0 +1,95 @@
+package ua.com.juja.microservices.teams.slackbot.repository.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import ua.com.juja.microservices.teams.slackbot.util.AdaptiveConcurrencyLimiter;
+import ua.com.juja.microservices.teams.slackbot.util.Bulkhead;
+import ua.com.juja.microservices.teams.slackbot.util.CircuitBreaker;
+import ua.com.juja.microservices.teams.slackbot.util.Hedger;
+import ua.com.juja.microservices.teams.slackbot.util.ServiceGuard;
+
+import javax.inject.Inject;
+
+/**
+ * Creates guards of downstream services from the teams.slackbot.concurrency, circuitBreaker, bulkhead and hedging
+ * properties. Every repository gets its own guard, caps of the bulkhead are set per service.
+ */
+@Component
+public class ServiceGuardFactory {
+
+    private final Environment environment;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+    private final int windowSize;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallMillis;
+    private final long openSeconds;
+    private final long maxWaitMillis;
+    private final boolean hedgingEnabled;
+    private final double hedgingPercentile;
+    private final long hedgingMinDelayMillis;
+    private final int hedgingBudgetPercent;
+
+    @Inject
+    public ServiceGuardFactory(Environment environment,
+                               @Value("${teams.slackbot.concurrency.initialLimit}") int initialLimit,
+                               @Value("${teams.slackbot.concurrency.minLimit}") int minLimit,
+                               @Value("${teams.slackbot.concurrency.maxLimit}") int maxLimit,
+                               @Value("${teams.slackbot.concurrency.rttTolerance}") double rttTolerance,
+                               @Value("${teams.slackbot.circuitBreaker.windowSize}") int windowSize,
+                               @Value("${teams.slackbot.circuitBreaker.failureRateThreshold}") int failureRate,
+                               @Value("${teams.slackbot.circuitBreaker.slowCallRateThreshold}") int slowCallRate,
+                               @Value("${teams.slackbot.circuitBreaker.slowCallMillis}") long slowCallMillis,
+                               @Value("${teams.slackbot.circuitBreaker.openSeconds}") long openSeconds,
+                               @Value("${teams.slackbot.bulkhead.maxWaitMillis}") long maxWaitMillis,
+                               @Value("${teams.slackbot.hedging.enabled}") boolean hedgingEnabled,
+                               @Value("${teams.slackbot.hedging.percentile}") double hedgingPercentile,
+                               @Value("${teams.slackbot.hedging.minDelayMillis}") long hedgingMinDelayMillis,
+                               @Value("${teams.slackbot.hedging.budgetPercent}") int hedgingBudgetPercent) {
+        this.environment = environment;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.rttTolerance = rttTolerance;
+        this.windowSize = windowSize;
+        this.failureRateThreshold = failureRate;
+        this.slowCallRateThreshold = slowCallRate;
+        this.slowCallMillis = slowCallMillis;
+        this.openSeconds = openSeconds;
+        this.maxWaitMillis = maxWaitMillis;
+        this.hedgingEnabled = hedgingEnabled;
+        this.hedgingPercentile = hedgingPercentile;
+        this.hedgingMinDelayMillis = hedgingMinDelayMillis;
+        this.hedgingBudgetPercent = hedgingBudgetPercent;
+    }
+
+    /**
+     * @param service 'teams' or 'users'
+     */
+    public ServiceGuard createGuard(String service) {
+        int maxConcurrentCalls = maxConcurrentCalls(service);
+        return new ServiceGuard(
+                new CircuitBreaker(service, windowSize, failureRateThreshold, slowCallRateThreshold, slowCallMillis,
+                        openSeconds),
+                new Bulkhead(service, maxConcurrentCalls, maxWaitMillis),
+                new AdaptiveConcurrencyLimiter(service, initialLimit, minLimit, maxLimit, rttTolerance),
+                new Hedger(service, hedgingEnabled, hedgingPercentile, hedgingMinDelayMillis, hedgingBudgetPercent,
+                        2 * maxConcurrentCalls));
+    }
+
+    /**
+     * @param service 'slack'
+     */
+    public Bulkhead createBulkhead(String service) {
+        return new Bulkhead(service, maxConcurrentCalls(service), maxWaitMillis);
+    }
+
+    private int maxConcurrentCalls(String service) {
+        return environment.getRequiredProperty("teams.slackbot.bulkhead." + service + ".maxConcurrentCalls",
+                Integer.class);
+    }
+}
@@ -0,0 +1,97 @@
+package ua.com.juja.microservices.teams.slackbot.repository.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import ua.com.juja.microservices.teams.slackbot.model.users.SlackNamesByUuids;
+import ua.com.juja.microservices.teams.slackbot.model.users.UuidsBySlackNames;
+import ua.com.juja.microservices.teams.slackbot.util.JsonCodec;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Reads the array of users of Users service token by token straight into {@link UuidsBySlackNames} or
+ * {@link SlackNamesByUuids}, so neither User objects nor intermediate collections are created.
+ * Unknown fields are skipped, and the first user wins when the key repeats.
+ * <p>
+ * It must be registered before the Jackson converter, which would read these maps as plain JSON objects.
+ */
+public class UserLookupHttpMessageConverter extends AbstractHttpMessageConverter<Map<String, String>> {
+
+    private static final String UUID = "uuid";
+    private static final String SLACK = "slack";
+
+    private final JsonFactory jsonFactory;
+
+    /**
+     * @param codec the format of responses, JSON or Smile, is the one of the codec
+     */
+    public UserLookupHttpMessageConverter(JsonCodec codec) {
+        super(codec.getMediaTypes());
+        this.jsonFactory = codec.getObjectMapper().getFactory();
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return UuidsBySlackNames.class == clazz || SlackNamesByUuids.class == clazz;
+    }
+
+    @Override
+    protected boolean canWrite(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Map<String, String> readInternal(Class<? extends Map<String, String>> clazz,
+                                               HttpInputMessage inputMessage) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(inputMessage.getBody())) {
+            if (UuidsBySlackNames.class == clazz) {
+                return read(parser, SLACK, UUID, new UuidsBySlackNames());
+            }
+            return read(parser, UUID, SLACK, new SlackNamesByUuids());
+        } catch (JsonProcessingException ex) {
+            throw new HttpMessageNotReadableException("Could not read users: " + ex.getOriginalMessage(), ex);
+        }
+    }
+
+    private static <M extends Map<String, String>> M read(JsonParser parser, String keyField, String valueField,
+                                                          M users) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new HttpMessageNotReadableException("Expected array of users but was " + parser.getCurrentToken());
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String key = null;
+            String value = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (keyField.equals(field)) {
+                    key = parser.getValueAsString();
+                } else if (valueField.equals(field)) {
+                    value = parser.getValueAsString();
+                }
+                parser.skipChildren();
+            }
+            if (key != null && value != null) {
+                users.putIfAbsent(key, value);
+            }
+        }
+        if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+            throw new HttpMessageNotReadableException("Expected user but was " + parser.getCurrentToken());
+        }
+        return users;
+    }
+
+    @Override
+    protected void writeInternal(Map<String, String> users, HttpOutputMessage outputMessage) {
+        throw new HttpMessageNotWritableException("Lookups of users are never sent");
+    }
+}
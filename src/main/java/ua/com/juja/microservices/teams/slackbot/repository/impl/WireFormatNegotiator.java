@@ -0,0 +1,114 @@
+package ua.com.juja.microservices.teams.slackbot.repository.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import ua.com.juja.microservices.teams.slackbot.util.JsonCodec;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Content negotiation of Smile with a service. When it is enabled, every request accepts Smile before JSON,
+ * and a service which answers in Smile gets Smile request bodies from then on. A service which answers in JSON,
+ * or rejects a Smile body with 415, is sent JSON again, the rejected request is resent as JSON.
+ */
+@Slf4j
+public class WireFormatNegotiator {
+
+    private static final String METRIC_PREFIX = "teams.slackbot.wireFormat.";
+    private static final List<MediaType> ACCEPT = Arrays.asList(JsonCodec.APPLICATION_SMILE,
+            new MediaType("application", "json", 0.9));
+
+    private final String service;
+    private final boolean smileEnabled;
+    private final Set<String> smileOrigins = ConcurrentHashMap.newKeySet();
+    private final LongAdder smileRequests = new LongAdder();
+    private final LongAdder jsonRequests = new LongAdder();
+    private final LongAdder smileResponses = new LongAdder();
+    private final LongAdder jsonResponses = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    public WireFormatNegotiator(String service, boolean smileEnabled) {
+        this.service = service;
+        this.smileEnabled = smileEnabled;
+    }
+
+    /**
+     * @param request  JSON request, its body is sent as Smile when the service is known to read it
+     * @param exchange sends the request with negotiated headers
+     */
+    public <T, R> ResponseEntity<R> exchange(String url, HttpEntity<T> request,
+                                             Function<HttpEntity<T>, ResponseEntity<R>> exchange) {
+        if (!smileEnabled) {
+            return exchange.apply(request);
+        }
+        String origin = originOf(url);
+        boolean smileBody = request.hasBody() && smileOrigins.contains(origin);
+        try {
+            return received(origin, exchange.apply(negotiated(request, smileBody)));
+        } catch (HttpClientErrorException ex) {
+            if (!smileBody || ex.getStatusCode() != HttpStatus.UNSUPPORTED_MEDIA_TYPE) {
+                throw ex;
+            }
+            smileOrigins.remove(origin);
+            fallbacks.increment();
+            log.warn("Service '{}' at '{}' rejected Smile request body, it is sent JSON from now on", service, origin);
+            return received(origin, exchange.apply(negotiated(request, false)));
+        }
+    }
+
+    private <T> HttpEntity<T> negotiated(HttpEntity<T> request, boolean smileBody) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(request.getHeaders());
+        headers.setAccept(ACCEPT);
+        if (request.hasBody()) {
+            if (smileBody) {
+                headers.setContentType(JsonCodec.APPLICATION_SMILE);
+                smileRequests.increment();
+            } else {
+                jsonRequests.increment();
+            }
+        }
+        return new HttpEntity<>(request.getBody(), headers);
+    }
+
+    private <R> ResponseEntity<R> received(String origin, ResponseEntity<R> response) {
+        MediaType contentType = response.getHeaders().getContentType();
+        if (JsonCodec.APPLICATION_SMILE.isCompatibleWith(contentType)) {
+            smileResponses.increment();
+            if (smileOrigins.add(origin)) {
+                log.info("Service '{}' at '{}' speaks Smile", service, origin);
+            }
+        } else if (contentType != null) {
+            jsonResponses.increment();
+            smileOrigins.remove(origin);
+        }
+        return response;
+    }
+
+    private static String originOf(String url) {
+        URI uri = URI.create(url);
+        return uri.getScheme() + "://" + uri.getAuthority();
+    }
+
+    public void addMetrics(List<Metric<?>> metrics) {
+        String prefix = METRIC_PREFIX + service + ".";
+        metrics.add(new Metric<>(prefix + "smile", smileOrigins.isEmpty() ? 0 : 1));
+        metrics.add(new Metric<>(prefix + "requests.smile", smileRequests.sum()));
+        metrics.add(new Metric<>(prefix + "requests.json", jsonRequests.sum()));
+        metrics.add(new Metric<>(prefix + "responses.smile", smileResponses.sum()));
+        metrics.add(new Metric<>(prefix + "responses.json", jsonResponses.sum()));
+        metrics.add(new Metric<>(prefix + "fallbacks", fallbacks.sum()));
+    }
+}
@@ -0,0 +1,18 @@
+package ua.com.juja.microservices.teams.slackbot.service;
+
+import me.ramswaroop.jbot.core.slack.models.RichMessage;
+
+/**
+ * Asynchronous delivery of delayed responses to slack response_url
+ */
+public interface SlackDeliveryService {
+
+    /**
+     * Queues the message for delivery. Messages for the same response_url are sent in the order they were queued.
+     *
+     * @param responseUrl slack response_url of the command
+     * @param issuedAt    time in millis when slack issued the response_url, that is when the command was accepted
+     * @param richMessage message to send
+     */
+    void deliver(String responseUrl, long issuedAt, RichMessage richMessage);
+}
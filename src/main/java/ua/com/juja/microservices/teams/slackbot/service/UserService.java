@@ -1,6 +1,8 @@
 package ua.com.juja.microservices.teams.slackbot.service;
 
+import ua.com.juja.microservices.teams.slackbot.model.users.SlackNamesByUuids;
 import ua.com.juja.microservices.teams.slackbot.model.users.User;
+import ua.com.juja.microservices.teams.slackbot.model.users.UuidsBySlackNames;
 
 import java.util.List;
 
@@ -15,4 +17,8 @@ public interface UserService {
 
     List<User> findUsersByUuids(List<String> uuids);
 
+    UuidsBySlackNames findUuidsBySlackNames(List<String> slackNames);
+
+    SlackNamesByUuids findSlackNamesByUuids(List<String> uuids);
+
 }
@@ -0,0 +1,237 @@
+package ua.com.juja.microservices.teams.slackbot.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import me.ramswaroop.jbot.core.slack.models.RichMessage;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import ua.com.juja.microservices.teams.slackbot.command.CommandJournal;
+import ua.com.juja.microservices.teams.slackbot.command.CommandStage;
+import ua.com.juja.microservices.teams.slackbot.command.StageRecorder;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ServiceBusyException;
+import ua.com.juja.microservices.teams.slackbot.repository.SlackRepository;
+import ua.com.juja.microservices.teams.slackbot.service.SlackDeliveryService;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends delayed responses on its own threads, so a slow or failing slack never stalls command workers.
+ * Every response_url has its own queue drained by at most one thread at a time, which keeps messages in order.
+ * Failed posts are retried with jittered exponential backoff. Slack accepts a limited number of posts
+ * to a response_url during its lifetime, messages over the limit or after the lifetime are dropped.
+ * The lifetime is counted from when slack issued the response_url, so a message queued after it is dropped
+ * at once and a response_url evicted as expired never gets a new lifetime or post limit. Once a message
+ * is delivered or dropped, the command is finished in {@link CommandJournal}. Time from queueing to delivery, retries included,
+ * is recorded as {@link CommandStage#DELIVER}.
+ */
+@Service
+@Slf4j
+public class SlackDeliveryServiceImpl implements SlackDeliveryService, PublicMetrics, DisposableBean {
+
+    private static final String METRIC_PREFIX = "teams.slackbot.delivery.";
+
+    private final SlackRepository slackRepository;
+    private final CommandJournal commandJournal;
+    private final StageRecorder stageRecorder;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int maxPostsPerUrl;
+    private final long urlLifetimeMillis;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ConcurrentMap<String, UrlDelivery> deliveries = new ConcurrentHashMap<>();
+
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder droppedExpired = new LongAdder();
+    private final LongAdder droppedLimit = new LongAdder();
+    private final LongAdder droppedFailed = new LongAdder();
+
+    @Inject
+    public SlackDeliveryServiceImpl(SlackRepository slackRepository,
+                                    CommandJournal commandJournal,
+                                    StageRecorder stageRecorder,
+                                    @Value("${teams.slackbot.delivery.threads}") int threads,
+                                    @Value("${teams.slackbot.delivery.maxAttempts}") int maxAttempts,
+                                    @Value("${teams.slackbot.delivery.initialBackoff}") long initialBackoffMillis,
+                                    @Value("${teams.slackbot.delivery.maxBackoff}") long maxBackoffMillis,
+                                    @Value("${teams.slackbot.delivery.maxPostsPerUrl}") int maxPostsPerUrl,
+                                    @Value("${teams.slackbot.delivery.urlLifetimeSeconds}") long urlLifetimeSeconds) {
+        this.slackRepository = slackRepository;
+        this.commandJournal = commandJournal;
+        this.stageRecorder = stageRecorder;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.maxPostsPerUrl = maxPostsPerUrl;
+        this.urlLifetimeMillis = TimeUnit.SECONDS.toMillis(urlLifetimeSeconds);
+        this.scheduler = new ScheduledThreadPoolExecutor(threads, new CustomizableThreadFactory("slack-delivery-"));
+        long evictionPeriod = Math.max(urlLifetimeMillis, TimeUnit.SECONDS.toMillis(1));
+        this.scheduler.scheduleWithFixedDelay(this::evictExpired, evictionPeriod, evictionPeriod,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void deliver(String responseUrl, long issuedAt, RichMessage richMessage) {
+        if (System.currentTimeMillis() - issuedAt >= urlLifetimeMillis) {
+            droppedExpired.increment();
+            commandJournal.complete(responseUrl);
+            log.warn("Dropped message '{}': slack response_url '{}' is expired", richMessage.getText(), responseUrl);
+            return;
+        }
+        UrlDelivery delivery = deliveries.computeIfAbsent(responseUrl, url -> new UrlDelivery(url, issuedAt));
+        delivery.queue.add(new PendingMessage(richMessage));
+        inFlight.increment();
+        log.debug("Queued message '{}' for slack response_url '{}'", richMessage.getText(), responseUrl);
+        if (delivery.draining.compareAndSet(false, true)) {
+            scheduler.execute(() -> drain(delivery));
+        }
+    }
+
+    private void drain(UrlDelivery delivery) {
+        do {
+            PendingMessage pending;
+            while ((pending = delivery.queue.peek()) != null) {
+                if (!send(delivery, pending)) {
+                    return;
+                }
+                delivery.queue.poll();
+                commandJournal.complete(delivery.responseUrl);
+                inFlight.decrement();
+            }
+            delivery.draining.set(false);
+        } while (!delivery.queue.isEmpty() && delivery.draining.compareAndSet(false, true));
+    }
+
+    /**
+     * Anything the post throws, errors included, either schedules a retry or drops the message, so the queue
+     * of the response_url is never left marked as draining
+     *
+     * @return false if the message stays at the head of the queue until the scheduled retry
+     */
+    private boolean send(UrlDelivery delivery, PendingMessage pending) {
+        String text = pending.richMessage.getText();
+        if (delivery.isExpired(System.currentTimeMillis())) {
+            droppedExpired.increment();
+            log.warn("Dropped message '{}': slack response_url '{}' is expired", text, delivery.responseUrl);
+            return true;
+        }
+        if (delivery.posts >= maxPostsPerUrl) {
+            droppedLimit.increment();
+            log.warn("Dropped message '{}': slack response_url '{}' already used '{}' times", text,
+                    delivery.responseUrl, delivery.posts);
+            return true;
+        }
+        pending.attempts++;
+        try {
+            slackRepository.sendRichMessage(delivery.responseUrl, pending.richMessage);
+            delivery.posts++;
+            delivered.increment();
+            stageRecorder.record(CommandStage.DELIVER, System.nanoTime() - pending.queuedAt);
+            return true;
+        } catch (RuntimeException ex) {
+            if (isRetryable(ex) && pending.attempts < maxAttempts) {
+                long backoff = backoffMillis(pending.attempts);
+                retries.increment();
+                log.info("Attempt '{}' to send message '{}' to slack response_url '{}' failed: '{}'. Retry in '{}' ms",
+                        pending.attempts, text, delivery.responseUrl, ex.getMessage(), backoff);
+                scheduler.schedule(() -> drain(delivery), backoff, TimeUnit.MILLISECONDS);
+                return false;
+            }
+            droppedFailed.increment();
+            log.warn("Dropped message '{}' after '{}' attempts to send it to slack response_url '{}': '{}'", text,
+                    pending.attempts, delivery.responseUrl, ex.getMessage());
+            return true;
+        } catch (Throwable ex) {
+            droppedFailed.increment();
+            log.error("Dropped message '{}' to slack response_url '{}'", text, delivery.responseUrl, ex);
+            return true;
+        }
+    }
+
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 20));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    private static boolean isRetryable(RuntimeException ex) {
+        if (ex instanceof HttpStatusCodeException) {
+            HttpStatus status = ((HttpStatusCodeException) ex).getStatusCode();
+            return status.is5xxServerError() || status == HttpStatus.TOO_MANY_REQUESTS;
+        }
+        return ex instanceof ResourceAccessException || ex instanceof ServiceBusyException;
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        deliveries.values().removeIf(delivery -> delivery.isExpired(now) && !delivery.draining.get());
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(METRIC_PREFIX + "inFlight", inFlight.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "delivered", delivered.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "retries", retries.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "dropped.expired", droppedExpired.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "dropped.limit", droppedLimit.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "dropped.failed", droppedFailed.sum()));
+        metrics.add(new Metric<>(METRIC_PREFIX + "responseUrls", deliveries.size()));
+        return metrics;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        scheduler.shutdown();
+        if (!scheduler.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Slack delivery terminated with '{}' unsent messages", inFlight.sum());
+            scheduler.shutdownNow();
+        }
+    }
+
+    private final class UrlDelivery {
+        private final String responseUrl;
+        private final long createdAt;
+        private final Queue<PendingMessage> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private int posts;
+
+        private UrlDelivery(String responseUrl, long createdAt) {
+            this.responseUrl = responseUrl;
+            this.createdAt = createdAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - createdAt >= urlLifetimeMillis;
+        }
+    }
+
+    private static final class PendingMessage {
+        private final RichMessage richMessage;
+        private final long queuedAt = System.nanoTime();
+        private int attempts;
+
+        private PendingMessage(RichMessage richMessage) {
+            this.richMessage = richMessage;
+        }
+    }
+}
@@ -1,67 +1,101 @@
 package ua.com.juja.microservices.teams.slackbot.service.impl;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.stereotype.Service;
+import ua.com.juja.microservices.teams.slackbot.command.CommandStage;
+import ua.com.juja.microservices.teams.slackbot.command.StageRecorder;
 import ua.com.juja.microservices.teams.slackbot.exceptions.ApiError;
 import ua.com.juja.microservices.teams.slackbot.exceptions.TeamExchangeException;
+import ua.com.juja.microservices.teams.slackbot.exceptions.UserExchangeException;
 import ua.com.juja.microservices.teams.slackbot.exceptions.WrongCommandFormatException;
 import ua.com.juja.microservices.teams.slackbot.model.teams.ActivateTeamRequest;
 import ua.com.juja.microservices.teams.slackbot.model.teams.DeactivateTeamRequest;
 import ua.com.juja.microservices.teams.slackbot.model.teams.Team;
-import ua.com.juja.microservices.teams.slackbot.model.users.User;
 import ua.com.juja.microservices.teams.slackbot.repository.TeamRepository;
 import ua.com.juja.microservices.teams.slackbot.service.TeamService;
 import ua.com.juja.microservices.teams.slackbot.service.UserService;
+import ua.com.juja.microservices.teams.slackbot.util.IdempotencyCache;
+import ua.com.juja.microservices.teams.slackbot.util.SingleFlight;
 import ua.com.juja.microservices.teams.slackbot.util.SlackNameHandler;
 import ua.com.juja.microservices.teams.slackbot.util.Utils;
 
 import javax.inject.Inject;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
+ * Activation and deactivation are idempotent within a window: a retry of the same command by the same user
+ * gets the result of the first call instead of calling Users and Teams services again. A completed activation
+ * drops the cached deactivations of its members and the other way round, so a team activated again within
+ * the window is activated in Teams service.
+ * Concurrent lookups of the team of the same member, and of the slack names of the same team, share one call.
+ * Calls of Users and Teams services are recorded as {@link CommandStage}s of the slash command.
+ *
  * @author Ivan Shapovalov
  */
 @Slf4j
 @Service
-public class TeamServiceImpl implements TeamService {
+public class TeamServiceImpl implements TeamService, PublicMetrics {
 
     private static final int TEAM_SIZE = 4;
+    private static final String METRIC_PREFIX = "teams.slackbot.idempotency.";
+    private static final String SINGLE_FLIGHT_METRIC_PREFIX = "teams.slackbot.singleflight.";
     private final UserService userService;
     private final TeamRepository teamRepository;
+    private final StageRecorder stageRecorder;
+    private final IdempotencyCache<String, Team> activatedTeams;
+    private final IdempotencyCache<String, Set<String>> deactivatedTeams;
+    private final SingleFlight<String, Team> teamLookups = new SingleFlight<>("team");
+    private final SingleFlight<String, Map<String, String>> teamMembersLookups = new SingleFlight<>("teamMembers");
 
     @Inject
-    public TeamServiceImpl(TeamRepository teamRepository, UserService userService) {
+    public TeamServiceImpl(TeamRepository teamRepository, UserService userService, StageRecorder stageRecorder,
+                           @Value("${teams.slackbot.idempotency.windowSeconds}") long windowSeconds,
+                           @Value("${teams.slackbot.idempotency.maxEntries}") int maxEntries) {
         this.teamRepository = teamRepository;
         this.userService = userService;
+        this.stageRecorder = stageRecorder;
+        long windowMillis = TimeUnit.SECONDS.toMillis(windowSeconds);
+        this.activatedTeams = new IdempotencyCache<>("activateTeam", windowMillis, maxEntries);
+        this.deactivatedTeams = new IdempotencyCache<>("deactivateTeam", windowMillis, maxEntries);
     }
 
     @Override
     public Team activateTeam(String fromUser, String text) {
         Utils.checkNull(text, "Text must not be null!");
         Utils.checkNull(fromUser, "FromUser must not be null!");
+        return activatedTeams.execute(idempotencyKey(fromUser, text), () -> doActivateTeam(fromUser, text));
+    }
+
+    private Team doActivateTeam(String fromUser, String text) {
         Set<String> slackNames = SlackNameHandler.getSlackNamesFromText(text);
         if (slackNames.size() != TEAM_SIZE) {
             throw new WrongCommandFormatException(String.format("We found %d slack names in your command." +
                     " But size of the team must be %s.", slackNames.size(), TEAM_SIZE));
         }
+        Set<String> members = new HashSet<>(slackNames);
         fromUser = SlackNameHandler.addAtToSlackName(fromUser);
         slackNames.add(fromUser);
-        Set<User> users = new HashSet<>(userService.findUsersBySlackNames(new ArrayList<>(slackNames)));
-        Map<String, String> usersMap = users.stream()
-                .collect(Collectors.toMap(User::getSlack, User::getUuid, (e1, e2) -> e1,
-                        LinkedHashMap::new));
+        Map<String, String> usersMap = stageRecorder.time(CommandStage.RESOLVE_USERS,
+                () -> userService.findUuidsBySlackNames(new ArrayList<>(slackNames)));
         String fromUserUuid = usersMap.get(fromUser);
         ActivateTeamRequest activateTeamRequest = new ActivateTeamRequest(fromUserUuid, new HashSet<>
                 (extractMembersFromMap(fromUser, usersMap, TEAM_SIZE)));
-        Team activatedTeam = teamRepository.activateTeam(activateTeamRequest);
+        Team activatedTeam = stageRecorder.time(CommandStage.CALL_TEAMS,
+                () -> teamRepository.activateTeam(activateTeamRequest));
         checkTeamMembersEquality(activateTeamRequest.getMembers(), activatedTeam.getMembers());
+        deactivatedTeams.invalidate(key -> targetsAnyOf(key, members));
         log.info("Team activated: '{}'", activatedTeam.getId());
         return activatedTeam;
     }
@@ -106,39 +140,97 @@ public class TeamServiceImpl implements TeamService {
             throw new WrongCommandFormatException(String.format("We found %d slack names in your command." +
                     " But expect one slack name.", slackNames.size()));
         }
-        List<User> users = userService.findUsersBySlackNames(new ArrayList<>(slackNames));
-        String uuid = users.get(0).getUuid();
-        Team team = teamRepository.getTeam(uuid);
-        List<User> teamUsers = userService.findUsersByUuids(new ArrayList<>(team.getMembers()));
-        Set<String> teamSlackNames = teamUsers.stream()
-                .map(User::getSlack)
-                .collect(Collectors.toSet());
+        Map<String, String> users = stageRecorder.time(CommandStage.RESOLVE_USERS,
+                () -> userService.findUuidsBySlackNames(new ArrayList<>(slackNames)));
+        checkUsersCount(slackNames.size(), users.size());
+        String uuid = users.values().iterator().next();
+        Team team = stageRecorder.time(CommandStage.CALL_TEAMS,
+                () -> teamLookups.execute(uuid, () -> teamRepository.getTeam(uuid)));
+        String teamKey = team.getId() != null ? team.getId() : new TreeSet<>(team.getMembers()).toString();
+        Map<String, String> teamUsers = stageRecorder.time(CommandStage.RESOLVE_NAMES,
+                () -> teamMembersLookups.execute(teamKey,
+                        () -> userService.findSlackNamesByUuids(new ArrayList<>(team.getMembers()))));
+        Set<String> teamSlackNames = new HashSet<>(teamUsers.values());
         log.info("Team got: '{}'", team.getId());
         return teamSlackNames;
     }
 
+    private void checkUsersCount(int requestCount, int responseCount) {
+        if (requestCount != responseCount) {
+            Exception ex = new Exception("Users count is not equals in request and response from Users Service");
+            ApiError apiError = new ApiError(
+                    500, "BotInternalError",
+                    ex.getMessage(),
+                    ex.getMessage(),
+                    ex.getMessage(),
+                    Collections.singletonList("")
+            );
+            throw new UserExchangeException(apiError, ex);
+        }
+    }
+
     @Override
     public Set<String> deactivateTeam(String fromUser, String text) {
+        Utils.checkNull(text, "Text must not be null!");
+        Utils.checkNull(fromUser, "FromUser must not be null!");
+        return deactivatedTeams.execute(idempotencyKey(fromUser, text), () -> doDeactivateTeam(fromUser, text));
+    }
+
+    private Set<String> doDeactivateTeam(String fromUser, String text) {
         Set<String> slackNames = SlackNameHandler.getSlackNamesFromText(text);
         if (slackNames.size() != 1) {
             throw new WrongCommandFormatException(String.format("We found %d slack names in your command." +
                     " But expect one slack name.", slackNames.size()));
         }
+        Set<String> members = new HashSet<>(slackNames);
         fromUser = SlackNameHandler.addAtToSlackName(fromUser);
         slackNames.add(fromUser);
-        List<User> users = userService.findUsersBySlackNames(new ArrayList<>(slackNames));
-        Map<String, String> usersMap = users.stream()
-                .collect(Collectors.toMap(User::getSlack, User::getUuid, (e1, e2) -> e1,
-                        LinkedHashMap::new));
+        Map<String, String> usersMap = stageRecorder.time(CommandStage.RESOLVE_USERS,
+                () -> userService.findUuidsBySlackNames(new ArrayList<>(slackNames)));
         String fromUserUuid = usersMap.get(fromUser);
         String uuid = extractMembersFromMap(fromUser, usersMap, 1).get(0);
         DeactivateTeamRequest deactivateTeamRequest = new DeactivateTeamRequest(fromUserUuid, uuid);
-        Team deactivatedTeam = teamRepository.deactivateTeam(deactivateTeamRequest);
-        List<User> teamUsers = userService.findUsersByUuids(new ArrayList<>(deactivatedTeam.getMembers()));
-        Set<String> teamSlackNames = teamUsers.stream()
-                .map(User::getSlack)
-                .collect(Collectors.toSet());
+        Team deactivatedTeam = stageRecorder.time(CommandStage.CALL_TEAMS,
+                () -> teamRepository.deactivateTeam(deactivateTeamRequest));
+        Map<String, String> teamUsers = stageRecorder.time(CommandStage.RESOLVE_NAMES,
+                () -> userService.findSlackNamesByUuids(new ArrayList<>(deactivatedTeam.getMembers())));
+        Set<String> teamSlackNames = new HashSet<>(teamUsers.values());
+        teamSlackNames.forEach(slackName -> members.add(SlackNameHandler.addAtToSlackName(slackName)));
+        activatedTeams.invalidate(key -> targetsAnyOf(key, members));
         log.info("Team deactivated: '{}'", deactivatedTeam.getId());
         return teamSlackNames;
     }
+
+    /**
+     * Slack names in the text are sorted, so the same team written in another order is the same command
+     */
+    private static String idempotencyKey(String fromUser, String text) {
+        return SlackNameHandler.addAtToSlackName(fromUser) + " " + SlackNameHandler.getSlackNamesFromText(text)
+                .stream()
+                .sorted()
+                .collect(Collectors.joining(" "));
+    }
+
+    /**
+     * @return true if the command of the key is about any of the slack names, its author doesn't count
+     */
+    private static boolean targetsAnyOf(String idempotencyKey, Set<String> slackNames) {
+        String[] parts = idempotencyKey.split(" ");
+        for (int i = 1; i < parts.length; i++) {
+            if (slackNames.contains(parts[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        activatedTeams.addMetrics(metrics, METRIC_PREFIX);
+        deactivatedTeams.addMetrics(metrics, METRIC_PREFIX);
+        teamLookups.addMetrics(metrics, SINGLE_FLIGHT_METRIC_PREFIX);
+        teamMembersLookups.addMetrics(metrics, SINGLE_FLIGHT_METRIC_PREFIX);
+        return metrics;
+    }
 }
@@ -1,37 +1,90 @@
 package ua.com.juja.microservices.teams.slackbot.service.impl;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.stereotype.Service;
+import ua.com.juja.microservices.teams.slackbot.model.users.SlackNamesByUuids;
 import ua.com.juja.microservices.teams.slackbot.model.users.User;
+import ua.com.juja.microservices.teams.slackbot.model.users.UuidsBySlackNames;
 import ua.com.juja.microservices.teams.slackbot.repository.UserRepository;
 import ua.com.juja.microservices.teams.slackbot.service.UserService;
+import ua.com.juja.microservices.teams.slackbot.util.MicroBatcher;
+import ua.com.juja.microservices.teams.slackbot.util.SlackNameHandler;
+import ua.com.juja.microservices.teams.slackbot.util.UserDirectory;
+import ua.com.juja.microservices.teams.slackbot.util.UserDirectorySnapshot;
+import ua.com.juja.microservices.teams.slackbot.util.UserLookupCache;
 import ua.com.juja.microservices.teams.slackbot.util.Utils;
 
 import javax.inject.Inject;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
+ * Slack names and uuids of users are looked up in the user directory, when it is enabled, then in the cache
+ * of both directions, and only the ones found in neither of them are looked up in User repository.
+ * Concurrent lookups in User repository are merged into one request for each direction, when batching is on.
+ *
  * @author Ivan Shapovalov
  */
 @Service
 @Slf4j
-public class UserServiceImpl implements UserService {
+public class UserServiceImpl implements UserService, PublicMetrics, DisposableBean {
 
+    private static final String METRIC_PREFIX = "teams.slackbot.userCache.";
+    private static final String DIRECTORY_METRIC_PREFIX = "teams.slackbot.userDirectory.";
+    private static final String BATCHING_METRIC_PREFIX = "teams.slackbot.userBatching.";
     private final UserRepository userRepository;
+    private final UserLookupCache userLookupCache;
+    private final UserDirectory userDirectory;
+    private final MicroBatcher<String, String> uuidsLookups;
+    private final MicroBatcher<String, String> slackNamesLookups;
 
     @Inject
-    public UserServiceImpl(UserRepository userRepository) {
+    public UserServiceImpl(UserRepository userRepository,
+                           @Value("${teams.slackbot.userCache.ttlSeconds}") long ttlSeconds,
+                           @Value("${teams.slackbot.userCache.maxEntries}") int maxEntries,
+                           @Value("${teams.slackbot.userDirectory.enabled}") boolean directoryEnabled,
+                           @Value("${teams.slackbot.userDirectory.refreshSeconds}") long directoryRefreshSeconds,
+                           @Value("${teams.slackbot.userDirectory.snapshot}") String snapshotFile,
+                           @Value("${teams.slackbot.userDirectory.snapshotSeconds}") long snapshotSeconds,
+                           @Value("${teams.slackbot.userBatching.windowMicros}") long batchingWindowMicros,
+                           @Value("${teams.slackbot.userBatching.maxBatchSize}") int maxBatchSize) {
         this.userRepository = userRepository;
+        this.userLookupCache = new UserLookupCache(TimeUnit.SECONDS.toMillis(ttlSeconds), maxEntries);
+        this.userDirectory = new UserDirectory(directoryEnabled, TimeUnit.SECONDS.toMillis(directoryRefreshSeconds),
+                snapshotFile.isEmpty() ? null : new UserDirectorySnapshot(Paths.get(snapshotFile)),
+                TimeUnit.SECONDS.toMillis(snapshotSeconds), userRepository::findAllSlackNamesByUuids);
+        this.uuidsLookups = new MicroBatcher<>("uuidsBySlackNames", batchingWindowMicros, maxBatchSize,
+                userRepository::findUuidsBySlackNames);
+        this.slackNamesLookups = new MicroBatcher<>("slackNamesByUuids", batchingWindowMicros, maxBatchSize,
+                userRepository::findSlackNamesByUuids);
     }
 
     @Override
     public List<User> findUsersBySlackNames(List<String> slackNames) {
         Utils.checkNull(slackNames, "SlackNames must not be null!");
-        List<User> users = userRepository.findUsersBySlackNames(slackNames);
+        List<User> users;
+        if (hasLookupChain()) {
+            users = uuidsBySlackNames(slackNames, new LinkedHashMap<>(),
+                    missing -> toMap(userRepository.findUsersBySlackNames(missing), User::getSlack, User::getUuid))
+                    .entrySet().stream()
+                    .map(user -> new User(user.getValue(), user.getKey()))
+                    .collect(Collectors.toList());
+        } else {
+            users = userRepository.findUsersBySlackNames(slackNames);
+        }
         log.info("Found '{}' users in User repository", users.size());
         return users;
     }
@@ -39,11 +92,70 @@ public class UserServiceImpl implements UserService {
     @Override
     public List<User> findUsersByUuids(List<String> uuids) {
         Utils.checkNull(uuids, "Uuids must not be null!");
-        List<User> users = userRepository.findUsersByUuids(uuids);
+        List<User> users;
+        if (hasLookupChain()) {
+            users = slackNamesByUuids(uuids, new LinkedHashMap<>(),
+                    missing -> toMap(userRepository.findUsersByUuids(missing), User::getUuid, User::getSlack))
+                    .entrySet().stream()
+                    .map(user -> new User(user.getKey(), user.getValue()))
+                    .collect(Collectors.toList());
+        } else {
+            users = userRepository.findUsersByUuids(uuids);
+        }
         log.info("Found '{}' users in User repository", users.size());
         return users;
     }
 
+    private boolean hasLookupChain() {
+        return userDirectory.isEnabled() || userLookupCache.isEnabled() || uuidsLookups.isEnabled();
+    }
+
+    /**
+     * With batching on, every lookup of a direction goes to its batcher instead of the given repository lookup
+     */
+    private <M extends Map<String, String>> M uuidsBySlackNames(List<String> slackNames, M result,
+                                                                Function<List<String>, Map<String, String>> lookup) {
+        List<String> names = slackNames.stream().map(SlackNameHandler::addAtToSlackName).collect(Collectors.toList());
+        Function<List<String>, Map<String, String>> load = uuidsLookups.isEnabled() ? uuidsLookups::execute : lookup;
+        return userDirectory.uuidsBySlackNames(names, result,
+                missing -> userLookupCache.uuidsBySlackNames(missing, new LinkedHashMap<>(), load));
+    }
+
+    private <M extends Map<String, String>> M slackNamesByUuids(List<String> uuids, M result,
+                                                                Function<List<String>, Map<String, String>> lookup) {
+        Function<List<String>, Map<String, String>> load = slackNamesLookups.isEnabled()
+                ? slackNamesLookups::execute : lookup;
+        return userDirectory.slackNamesByUuids(uuids, result,
+                missing -> userLookupCache.slackNamesByUuids(missing, new LinkedHashMap<>(), load));
+    }
+
+    private static Map<String, String> toMap(List<User> users, Function<User, String> key,
+                                             Function<User, String> value) {
+        Map<String, String> map = new LinkedHashMap<>();
+        users.forEach(user -> map.putIfAbsent(key.apply(user), value.apply(user)));
+        return map;
+    }
+
+    @Override
+    public UuidsBySlackNames findUuidsBySlackNames(List<String> slackNames) {
+        Utils.checkNull(slackNames, "SlackNames must not be null!");
+        UuidsBySlackNames uuids = hasLookupChain()
+                ? uuidsBySlackNames(slackNames, new UuidsBySlackNames(), userRepository::findUuidsBySlackNames)
+                : userRepository.findUuidsBySlackNames(slackNames);
+        log.info("Found '{}' users in User repository", uuids.size());
+        return uuids;
+    }
+
+    @Override
+    public SlackNamesByUuids findSlackNamesByUuids(List<String> uuids) {
+        Utils.checkNull(uuids, "Uuids must not be null!");
+        SlackNamesByUuids slackNames = hasLookupChain()
+                ? slackNamesByUuids(uuids, new SlackNamesByUuids(), userRepository::findSlackNamesByUuids)
+                : userRepository.findSlackNamesByUuids(uuids);
+        log.info("Found '{}' users in User repository", slackNames.size());
+        return slackNames;
+    }
+
     @Override
     public String replaceUuidsBySlackNamesInExceptionMessage(String message) {
         Set<String> uuids = Utils.extractUuidsFromExceptionMessage(message);
@@ -56,4 +168,19 @@ public class UserServiceImpl implements UserService {
         }
         return message;
     }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        userLookupCache.addMetrics(metrics, METRIC_PREFIX);
+        userDirectory.addMetrics(metrics, DIRECTORY_METRIC_PREFIX);
+        uuidsLookups.addMetrics(metrics, BATCHING_METRIC_PREFIX);
+        slackNamesLookups.addMetrics(metrics, BATCHING_METRIC_PREFIX);
+        return metrics;
+    }
+
+    @Override
+    public void destroy() {
+        userDirectory.close();
+    }
 }
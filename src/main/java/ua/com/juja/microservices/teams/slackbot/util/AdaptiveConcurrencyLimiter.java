@@ -0,0 +1,116 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.util.StringUtils;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ServiceBusyException;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Limits concurrent calls to a downstream service by additive increase / multiplicative decrease on observed
+ * round trip time. The limit grows by one after a call which was not slow while at least half of the limit was
+ * in use, and shrinks by 10% after a timeout, a 5xx response or a call slower than rttTolerance times the moving
+ * average of round trip times. Calls over the limit fail fast with {@link ServiceBusyException}.
+ * <p>
+ * The average follows every completed call, so after a lasting slowdown it catches up and the limit grows again.
+ * A hedged attempt cancelled because the other one won only gives its permit back, it tells nothing about
+ * the service.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final int RTT_WINDOW = 100;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+    private final AtomicInteger limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong averageRttNanos = new AtomicLong();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder decreases = new LongAdder();
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                                      double rttTolerance) {
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.rttTolerance = rttTolerance;
+        this.limit = new AtomicInteger(Math.min(maxLimit, Math.max(minLimit, initialLimit)));
+    }
+
+    /**
+     * @throws ServiceBusyException if the limit of concurrent calls is reached
+     */
+    public <T> T execute(Supplier<T> call) {
+        if (!tryAcquire()) {
+            rejected.increment();
+            throw new ServiceBusyException(String.format("Sorry! %s service is overloaded right now, " +
+                    "please retry in a minute.", StringUtils.capitalize(name)));
+        }
+        long startedAt = System.nanoTime();
+        boolean overloaded = false;
+        try {
+            return call.get();
+        } catch (RuntimeException ex) {
+            overloaded = Utils.isServiceFailure(ex);
+            throw ex;
+        } finally {
+            if (Hedger.isCancelled()) {
+                inFlight.decrementAndGet();
+            } else {
+                release(System.nanoTime() - startedAt, overloaded);
+            }
+        }
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit.get()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void release(long rttNanos, boolean overloaded) {
+        int inFlightBefore = inFlight.getAndDecrement();
+        if (overloaded) {
+            decrease();
+            return;
+        }
+        long average = averageRttNanos.getAndAccumulate(rttNanos,
+                (current, sample) -> current == 0 ? sample : current + (sample - current) / RTT_WINDOW);
+        if (average != 0 && rttNanos > rttTolerance * average) {
+            decrease();
+        } else if (inFlightBefore * 2 >= limit.get()) {
+            limit.updateAndGet(current -> Math.min(maxLimit, current + 1));
+        }
+    }
+
+    private void decrease() {
+        decreases.increment();
+        limit.updateAndGet(current -> Math.max(minLimit, (int) (current * BACKOFF_RATIO)));
+    }
+
+    public int getLimit() {
+        return limit.get();
+    }
+
+    public void addMetrics(List<Metric<?>> metrics, String prefix) {
+        metrics.add(new Metric<>(prefix + name + ".limit", limit.get()));
+        metrics.add(new Metric<>(prefix + name + ".inFlight", inFlight.get()));
+        metrics.add(new Metric<>(prefix + name + ".rejected", rejected.sum()));
+        metrics.add(new Metric<>(prefix + name + ".decreases", decreases.sum()));
+        metrics.add(new Metric<>(prefix + name + ".rtt.avg.us", TimeUnit.NANOSECONDS.toMicros(averageRttNanos.get())));
+    }
+}
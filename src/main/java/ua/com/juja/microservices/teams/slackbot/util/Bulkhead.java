@@ -0,0 +1,71 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.util.StringUtils;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ServiceBusyException;
+
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Fixed cap of concurrent calls to one downstream service. Unlike {@link AdaptiveConcurrencyLimiter} it doesn't
+ * follow the service, it guarantees that a hung service holds at most maxConcurrentCalls threads of the bot.
+ * A call waits up to maxWaitMillis for a free slot and then fails with {@link ServiceBusyException}.
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final int maxConcurrentCalls;
+    private final long maxWaitMillis;
+    private final Semaphore permits;
+    private final AtomicInteger peak = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    public Bulkhead(String name, int maxConcurrentCalls, long maxWaitMillis) {
+        this.name = name;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxWaitMillis = maxWaitMillis;
+        this.permits = new Semaphore(maxConcurrentCalls);
+    }
+
+    /**
+     * @throws ServiceBusyException if all slots stay busy for maxWaitMillis
+     */
+    public <T> T execute(Supplier<T> call) {
+        if (!tryAcquire()) {
+            rejected.increment();
+            throw new ServiceBusyException(String.format("Sorry! %s service is overloaded right now, " +
+                    "please retry in a minute.", StringUtils.capitalize(name)));
+        }
+        try {
+            int inUse = maxConcurrentCalls - permits.availablePermits();
+            peak.accumulateAndGet(inUse, Math::max);
+            return call.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean tryAcquire() {
+        try {
+            return permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public void addMetrics(List<Metric<?>> metrics, String prefix) {
+        int inUse = maxConcurrentCalls - permits.availablePermits();
+        metrics.add(new Metric<>(prefix + name + ".maxConcurrentCalls", maxConcurrentCalls));
+        metrics.add(new Metric<>(prefix + name + ".inUse", inUse));
+        metrics.add(new Metric<>(prefix + name + ".peak", peak.get()));
+        metrics.add(new Metric<>(prefix + name + ".saturation", inUse * 100 / maxConcurrentCalls));
+        metrics.add(new Metric<>(prefix + name + ".waiting", permits.getQueueLength()));
+        metrics.add(new Metric<>(prefix + name + ".rejected", rejected.sum()));
+    }
+}
@@ -0,0 +1,269 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.util.StringUtils;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ServiceBusyException;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ServiceUnavailableException;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker for calls to a downstream service. While closed it keeps outcomes of the last windowSize calls
+ * and opens when the share of failed calls (timeouts, connection failures and 5xx responses) or the share of calls
+ * slower than slowCallMillis reaches its threshold. While open, calls fail in microseconds with
+ * {@link ServiceUnavailableException}. After openSeconds it lets a few probe calls through (half-open): if all
+ * of them are fast and successful it closes, otherwise it opens again.
+ * <p>
+ * The state is read without locking on every call, window updates and transitions are made under a lock
+ * and a transition is logged after the lock is released.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final int PROBE_CALLS = 3;
+    private static final byte SUCCESS = 0;
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private final String name;
+    private final int windowSize;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile State state = State.CLOSED;
+    private volatile long openedAt;
+    private final AtomicInteger probePermits = new AtomicInteger();
+    private int probeSuccesses;
+
+    private final byte[] window;
+    private int position;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+
+    /**
+     * @param failureRateThreshold  percent of failed calls in the window which opens the breaker
+     * @param slowCallRateThreshold percent of slow calls in the window which opens the breaker
+     */
+    public CircuitBreaker(String name, int windowSize, int failureRateThreshold, int slowCallRateThreshold,
+                          long slowCallMillis, long openSeconds) {
+        this.name = name;
+        this.windowSize = windowSize;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.openNanos = TimeUnit.SECONDS.toNanos(openSeconds);
+        this.window = new byte[windowSize];
+    }
+
+    /**
+     * @throws ServiceUnavailableException if the breaker is open
+     */
+    public <T> T execute(Supplier<T> call) {
+        if (!tryAcquirePermission()) {
+            rejected.increment();
+            throw new ServiceUnavailableException(String.format("Sorry! %s service is unavailable right now, " +
+                    "please retry in a minute.", StringUtils.capitalize(name)));
+        }
+        long startedAt = System.nanoTime();
+        Byte outcome = null;
+        try {
+            T result = call.get();
+            outcome = SUCCESS;
+            return result;
+        } catch (ServiceBusyException ex) {
+            throw ex;
+        } catch (RuntimeException ex) {
+            outcome = Utils.isServiceFailure(ex) ? FAILURE : SUCCESS;
+            throw ex;
+        } finally {
+            if (outcome == null) {
+                onIgnored();
+            } else {
+                onResult(outcome == SUCCESS && System.nanoTime() - startedAt > slowCallNanos ? SLOW : outcome);
+            }
+        }
+    }
+
+    private boolean tryAcquirePermission() {
+        State current = state;
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            Transition transition = null;
+            lock.lock();
+            try {
+                if (state == State.OPEN) {
+                    transition = transitionTo(State.HALF_OPEN);
+                }
+            } finally {
+                lock.unlock();
+            }
+            log(transition);
+        }
+        while (true) {
+            int permits = probePermits.get();
+            if (permits <= 0) {
+                return state == State.CLOSED;
+            }
+            if (probePermits.compareAndSet(permits, permits - 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void onResult(byte outcome) {
+        Transition transition;
+        lock.lock();
+        try {
+            transition = record(outcome);
+        } finally {
+            lock.unlock();
+        }
+        log(transition);
+    }
+
+    /**
+     * @return the transition made by the outcome, null if the state stays the same
+     */
+    private Transition record(byte outcome) {
+        if (state == State.HALF_OPEN) {
+            if (outcome != SUCCESS) {
+                return transitionTo(State.OPEN);
+            } else if (++probeSuccesses >= PROBE_CALLS) {
+                return transitionTo(State.CLOSED);
+            }
+            return null;
+        }
+        if (state == State.OPEN) {
+            return null;
+        }
+        if (recorded == windowSize) {
+            forget(window[position]);
+        } else {
+            recorded++;
+        }
+        window[position] = outcome;
+        position = (position + 1) % windowSize;
+        if (outcome == FAILURE) {
+            failures++;
+        } else if (outcome == SLOW) {
+            slowCalls++;
+        }
+        if (recorded == windowSize && (failures * 100 >= failureRateThreshold * windowSize
+                || slowCalls * 100 >= slowCallRateThreshold * windowSize)) {
+            return transitionTo(State.OPEN);
+        }
+        return null;
+    }
+
+    private void onIgnored() {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN) {
+                probePermits.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void forget(byte outcome) {
+        if (outcome == FAILURE) {
+            failures--;
+        } else if (outcome == SLOW) {
+            slowCalls--;
+        }
+    }
+
+    /**
+     * Must be called under the lock
+     */
+    private Transition transitionTo(State next) {
+        Transition transition = new Transition(state, next, failures, slowCalls, recorded);
+        position = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+        probeSuccesses = 0;
+        if (next == State.OPEN) {
+            probePermits.set(0);
+            openedAt = System.nanoTime();
+            opened.increment();
+        } else if (next == State.HALF_OPEN) {
+            probePermits.set(PROBE_CALLS);
+        } else {
+            probePermits.set(0);
+            closed.increment();
+        }
+        state = next;
+        return transition;
+    }
+
+    private void log(Transition transition) {
+        if (transition != null) {
+            log.warn("Circuit breaker of {} service changed state from {} to {}, failed calls: {}, slow calls: {} " +
+                    "of {}", name, transition.from, transition.to, transition.failures, transition.slowCalls,
+                    transition.recorded);
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public void addMetrics(List<Metric<?>> metrics, String prefix) {
+        lock.lock();
+        try {
+            metrics.add(new Metric<>(prefix + name + ".state", state.ordinal()));
+            metrics.add(new Metric<>(prefix + name + ".failureRate", recorded == 0 ? 0 : failures * 100 / recorded));
+            metrics.add(new Metric<>(prefix + name + ".slowCallRate",
+                    recorded == 0 ? 0 : slowCalls * 100 / recorded));
+        } finally {
+            lock.unlock();
+        }
+        metrics.add(new Metric<>(prefix + name + ".rejected", rejected.sum()));
+        metrics.add(new Metric<>(prefix + name + ".opened", opened.sum()));
+        metrics.add(new Metric<>(prefix + name + ".closed", closed.sum()));
+    }
+
+    /**
+     * State change with the window it was made on, logged after the lock is released
+     */
+    private static final class Transition {
+        private final State from;
+        private final State to;
+        private final int failures;
+        private final int slowCalls;
+        private final int recorded;
+
+        private Transition(State from, State to, int failures, int slowCalls, int recorded) {
+            this.from = from;
+            this.to = to;
+            this.failures = failures;
+            this.slowCalls = slowCalls;
+            this.recorded = recorded;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Read-only index of users in one {@link ByteBuffer}, looked up by uuid and by slack name in O(1) without
+ * an object per user. A uuid is kept as two longs, slack names are UTF-8 bytes in one arena, and each
+ * direction is an open-addressing table of record numbers, at most half full:
+ * <pre>
+ * header   magic, version, users, table capacity, arena bytes, reserved   24 bytes
+ * records  most and least significant bits of uuid, arena offset         20 bytes per user
+ * tables   record number + 1 by uuid, then by slack name (0 is empty)     2 x 4 bytes per slot
+ * arena    length as unsigned short and UTF-8 bytes of slack name         2 + name bytes per user
+ * </pre>
+ * A user takes at most {@link #MAX_BYTES_PER_USER} bytes plus the UTF-8 bytes of the slack name, 53 to 69
+ * with a 15 byte name, where the two Strings of a user in two HashMaps take about 260.
+ * Only uuids in the canonical lowercase form are indexed, so a uuid read back is the same string.
+ */
+public final class CompactUserIndex {
+
+    public static final int MAX_BYTES_PER_USER = 54;
+    static final int MAGIC = 0x55534458;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+    private static final int RECORD_BYTES = 20;
+    private static final int MAX_NAME_BYTES = 0xFFFF;
+
+    private final ByteBuffer buffer;
+    private final int users;
+    private final int mask;
+    private final int recordsOffset;
+    private final int uuidTableOffset;
+    private final int slackNameTableOffset;
+    private final int arenaOffset;
+
+    /**
+     * Wraps an index built by {@link #build(Map)}, the buffer is not copied
+     *
+     * @throws IllegalArgumentException if the buffer doesn't hold an index of this version
+     */
+    public CompactUserIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not a user index of version " + VERSION);
+        }
+        this.users = buffer.getInt(8);
+        int capacity = buffer.getInt(12);
+        int arenaBytes = buffer.getInt(16);
+        this.mask = capacity - 1;
+        this.recordsOffset = HEADER_BYTES;
+        this.uuidTableOffset = recordsOffset + users * RECORD_BYTES;
+        this.slackNameTableOffset = uuidTableOffset + capacity * 4;
+        this.arenaOffset = slackNameTableOffset + capacity * 4;
+        if (users < 0 || Integer.bitCount(capacity) != 1 || capacity < 2L * users
+                || arenaOffset + (long) arenaBytes != buffer.capacity()) {
+            throw new IllegalArgumentException("Corrupted user index");
+        }
+    }
+
+    /**
+     * @param slackNamesByUuids users, the ones with a uuid in another form than UUID.toString() are skipped
+     */
+    public static CompactUserIndex build(Map<String, String> slackNamesByUuids) {
+        int count = 0;
+        long arenaBytes = 0;
+        byte[][] names = new byte[slackNamesByUuids.size()][];
+        long[] uuids = new long[slackNamesByUuids.size() * 2];
+        for (Map.Entry<String, String> user : slackNamesByUuids.entrySet()) {
+            byte[] name = user.getValue() == null ? null : user.getValue().getBytes(StandardCharsets.UTF_8);
+            if (name != null && name.length <= MAX_NAME_BYTES && isCanonicalUuid(user.getKey())) {
+                uuids[count * 2] = mostSigBits(user.getKey());
+                uuids[count * 2 + 1] = leastSigBits(user.getKey());
+                names[count++] = name;
+                arenaBytes += 2 + name.length;
+            }
+        }
+        int capacity = Integer.highestOneBit(Math.max(1, count) * 2 - 1) << 1;
+        long size = HEADER_BYTES + (long) count * RECORD_BYTES + capacity * 8L + arenaBytes;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many users for one index: " + count);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, count).putInt(12, capacity)
+                .putInt(16, (int) arenaBytes);
+        CompactUserIndex index = new CompactUserIndex(buffer);
+        int arenaPosition = 0;
+        for (int record = 0; record < count; record++) {
+            int recordOffset = index.recordsOffset + record * RECORD_BYTES;
+            buffer.putLong(recordOffset, uuids[record * 2]).putLong(recordOffset + 8, uuids[record * 2 + 1])
+                    .putInt(recordOffset + 16, arenaPosition);
+            buffer.putShort(index.arenaOffset + arenaPosition, (short) names[record].length);
+            for (int i = 0; i < names[record].length; i++) {
+                buffer.put(index.arenaOffset + arenaPosition + 2 + i, names[record][i]);
+            }
+            arenaPosition += 2 + names[record].length;
+            index.insertByUuid(record, uuids[record * 2], uuids[record * 2 + 1]);
+            index.insertBySlackName(record, names[record]);
+        }
+        return index;
+    }
+
+    private void insertByUuid(int record, long mostSigBits, long leastSigBits) {
+        for (int slot = hash(mostSigBits, leastSigBits) & mask; ; slot = (slot + 1) & mask) {
+            int stored = buffer.getInt(uuidTableOffset + slot * 4);
+            if (stored == 0) {
+                buffer.putInt(uuidTableOffset + slot * 4, record + 1);
+                return;
+            }
+            if (uuidEquals(stored - 1, mostSigBits, leastSigBits)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * The first user with a slack name keeps it, as in lookups by slack names in Users service
+     */
+    private void insertBySlackName(int record, byte[] name) {
+        for (int slot = hash(name) & mask; ; slot = (slot + 1) & mask) {
+            int stored = buffer.getInt(slackNameTableOffset + slot * 4);
+            if (stored == 0) {
+                buffer.putInt(slackNameTableOffset + slot * 4, record + 1);
+                return;
+            }
+            if (slackNameEquals(stored - 1, name)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return slack name of the user, null if the uuid isn't indexed
+     */
+    public String slackName(String uuid) {
+        if (users == 0 || !isCanonicalUuid(uuid)) {
+            return null;
+        }
+        long mostSigBits = mostSigBits(uuid);
+        long leastSigBits = leastSigBits(uuid);
+        for (int slot = hash(mostSigBits, leastSigBits) & mask; ; slot = (slot + 1) & mask) {
+            int stored = buffer.getInt(uuidTableOffset + slot * 4);
+            if (stored == 0) {
+                return null;
+            }
+            if (uuidEquals(stored - 1, mostSigBits, leastSigBits)) {
+                int nameOffset = arenaOffset + buffer.getInt(recordsOffset + (stored - 1) * RECORD_BYTES + 16);
+                byte[] name = new byte[buffer.getShort(nameOffset) & 0xFFFF];
+                for (int i = 0; i < name.length; i++) {
+                    name[i] = buffer.get(nameOffset + 2 + i);
+                }
+                return new String(name, StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /**
+     * @return uuid of the user, null if the slack name isn't indexed
+     */
+    public String uuid(String slackName) {
+        if (users == 0) {
+            return null;
+        }
+        byte[] name = slackName.getBytes(StandardCharsets.UTF_8);
+        for (int slot = hash(name) & mask; ; slot = (slot + 1) & mask) {
+            int stored = buffer.getInt(slackNameTableOffset + slot * 4);
+            if (stored == 0) {
+                return null;
+            }
+            if (slackNameEquals(stored - 1, name)) {
+                int recordOffset = recordsOffset + (stored - 1) * RECORD_BYTES;
+                return new UUID(buffer.getLong(recordOffset), buffer.getLong(recordOffset + 8)).toString();
+            }
+        }
+    }
+
+    private boolean uuidEquals(int record, long mostSigBits, long leastSigBits) {
+        int recordOffset = recordsOffset + record * RECORD_BYTES;
+        return buffer.getLong(recordOffset) == mostSigBits && buffer.getLong(recordOffset + 8) == leastSigBits;
+    }
+
+    private boolean slackNameEquals(int record, byte[] name) {
+        int nameOffset = arenaOffset + buffer.getInt(recordsOffset + record * RECORD_BYTES + 16);
+        if ((buffer.getShort(nameOffset) & 0xFFFF) != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (buffer.get(nameOffset + 2 + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return users;
+    }
+
+    public int sizeInBytes() {
+        return buffer.capacity();
+    }
+
+    /**
+     * @return the whole index, position and limit of the buffer are not used
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    private static boolean isCanonicalUuid(String uuid) {
+        if (uuid == null || uuid.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = uuid.charAt(i);
+            boolean dash = i == 8 || i == 13 || i == 18 || i == 23;
+            if (dash ? c != '-' : !(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long mostSigBits(String uuid) {
+        return parseHex(uuid, 0, 8) << 32 | parseHex(uuid, 9, 13) << 16 | parseHex(uuid, 14, 18);
+    }
+
+    private static long leastSigBits(String uuid) {
+        return parseHex(uuid, 19, 23) << 48 | parseHex(uuid, 24, 36);
+    }
+
+    private static long parseHex(String text, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value << 4 | Character.digit(text.charAt(i), 16);
+        }
+        return value;
+    }
+
+    private static int hash(long mostSigBits, long leastSigBits) {
+        return mix(mostSigBits * 31 + leastSigBits);
+    }
+
+    private static int hash(byte[] name) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : name) {
+            hash = (hash ^ b) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static int mix(long hash) {
+        hash = (hash ^ hash >>> 33) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ hash >>> 33) * 0xc4ceb9fe1a85ec53L;
+        return (int) (hash ^ hash >>> 33);
+    }
+}
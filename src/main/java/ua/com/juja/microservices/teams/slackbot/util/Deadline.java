@@ -0,0 +1,75 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import ua.com.juja.microservices.teams.slackbot.exceptions.DeadlineExceededException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Time budget of a slash command. The deadline is bound to the thread which runs the command, so every call to
+ * a downstream service can take the remaining budget as its timeout without passing it through each method.
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long expiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    public static Deadline after(long budgetMillis) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis));
+    }
+
+    /**
+     * @return deadline of the command running in the current thread, null if there is none
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs the call with the deadline bound to the current thread
+     */
+    public static <T> T callWithin(Deadline deadline, Supplier<T> call) {
+        Deadline outer = CURRENT.get();
+        CURRENT.set(deadline);
+        try {
+            return call.get();
+        } finally {
+            if (outer == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(outer);
+            }
+        }
+    }
+
+    /**
+     * @throws DeadlineExceededException if the deadline of the current thread is expired
+     */
+    public static void checkNotExpired() {
+        Deadline deadline = CURRENT.get();
+        if (deadline != null && deadline.isExpired()) {
+            throw new DeadlineExceededException("Sorry! Your command took too long and was cancelled, " +
+                    "please retry in a minute.");
+        }
+    }
+
+    public long remainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAtNanos - System.nanoTime()));
+    }
+
+    /**
+     * Exact remaining budget: a timed wait of remainingNanos ends with the deadline expired
+     */
+    public long remainingNanos() {
+        return Math.max(0, expiresAtNanos - System.nanoTime());
+    }
+
+    public boolean isExpired() {
+        return System.nanoTime() - expiresAtNanos >= 0;
+    }
+}
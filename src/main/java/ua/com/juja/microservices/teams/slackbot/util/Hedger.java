@@ -0,0 +1,306 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Hedged execution of idempotent reads. If a call doesn't answer within the given percentile of latencies of
+ * recent calls, the same call is started once more and the first successful result wins. The other attempt is
+ * cancelled by the abort action it registered with {@link #onCancel(Runnable)}, e.g. abort of the HTTP request.
+ * <p>
+ * Every call earns budgetPercent / 100 of a hedge and a hedge spends one, so hedges are at most budgetPercent
+ * of calls, with bursts of up to {@value #MAX_BUDGET} hedges after a calm period. Latencies are kept for two
+ * windows of {@value #WINDOW_SECONDS} seconds: the delay follows the last complete window and is never shorter
+ * than minDelayMillis. Hedging starts after {@value #MIN_SAMPLES} calls.
+ */
+public class Hedger {
+
+    private static final int MAX_BUDGET = 10;
+    private static final long WINDOW_SECONDS = 60;
+    private static final int MIN_SAMPLES = 20;
+    private static final long MILLI_TOKEN = 1000;
+    private static final ThreadLocal<Attempt<?>> CURRENT_ATTEMPT = new ThreadLocal<>();
+
+    private final String name;
+    private final boolean enabled;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long budgetPerCall;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong budget = new AtomicLong(MAX_BUDGET * MILLI_TOKEN);
+    private final AtomicReference<Window> window = new AtomicReference<>(new Window(null, System.nanoTime()));
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    /**
+     * @param percentile    from 0 to 1
+     * @param budgetPercent hedges per 100 calls
+     * @param maxThreads    attempts running at the same time, the call runs without hedging when all are busy
+     */
+    public Hedger(String name, boolean enabled, double percentile, long minDelayMillis, int budgetPercent,
+                  int maxThreads) {
+        this.name = name;
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        this.budgetPerCall = budgetPercent * MILLI_TOKEN / 100;
+        if (enabled) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("hedge-" + name + "-");
+            threadFactory.setDaemon(true);
+            this.executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(), threadFactory);
+            this.executor.allowCoreThreadTimeOut(true);
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Registers the action which cancels the call running in the current thread, if it is a hedged attempt
+     */
+    public static void onCancel(Runnable abort) {
+        Attempt<?> attempt = CURRENT_ATTEMPT.get();
+        if (attempt != null) {
+            attempt.setAbort(abort);
+        }
+    }
+
+    /**
+     * @return true if the current thread runs an attempt which was cancelled because the other one completed
+     */
+    public static boolean isCancelled() {
+        Attempt<?> attempt = CURRENT_ATTEMPT.get();
+        return attempt != null && attempt.cancelled;
+    }
+
+    /**
+     * @return true if the current thread runs the second attempt of a hedged call
+     */
+    static boolean isHedge() {
+        Attempt<?> attempt = CURRENT_ATTEMPT.get();
+        return attempt != null && attempt.hedge;
+    }
+
+    public <T> T execute(Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        calls.increment();
+        budget.updateAndGet(current -> Math.min(MAX_BUDGET * MILLI_TOKEN, current + budgetPerCall));
+        long startedAt = System.nanoTime();
+        Attempt<T> primary = new Attempt<>(call, false);
+        if (!start(primary)) {
+            return recorded(startedAt, call.get());
+        }
+        Attempt<T> hedge = null;
+        try {
+            long delay = delayNanos();
+            if (delay > 0) {
+                try {
+                    return recorded(startedAt, primary.result.get(delay, TimeUnit.NANOSECONDS));
+                } catch (TimeoutException e) {
+                    hedge = tryHedge(call);
+                } catch (ExecutionException e) {
+                    throw rethrow(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return recorded(startedAt, join(primary.result));
+                }
+            }
+            if (hedge == null) {
+                return recorded(startedAt, join(primary.result));
+            }
+            Attempt<T> winner = join(firstSuccessful(primary, hedge));
+            if (winner == hedge) {
+                hedgeWins.increment();
+            }
+            return recorded(startedAt, winner.result.join());
+        } finally {
+            primary.cancel();
+            if (hedge != null) {
+                hedge.cancel();
+            }
+        }
+    }
+
+    private boolean start(Attempt<?> attempt) {
+        try {
+            executor.execute(attempt);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private <T> Attempt<T> tryHedge(Supplier<T> call) {
+        long available = budget.getAndUpdate(current -> current >= MILLI_TOKEN ? current - MILLI_TOKEN : current);
+        if (available < MILLI_TOKEN) {
+            return null;
+        }
+        Attempt<T> hedge = new Attempt<>(call, true);
+        if (!start(hedge)) {
+            budget.addAndGet(MILLI_TOKEN);
+            return null;
+        }
+        hedges.increment();
+        return hedge;
+    }
+
+    private <T> CompletableFuture<Attempt<T>> firstSuccessful(Attempt<T> primary, Attempt<T> hedge) {
+        CompletableFuture<Attempt<T>> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        Runnable onFailure = () -> {
+            if (failures.incrementAndGet() == 2) {
+                winner.completeExceptionally(failureOf(primary.result));
+            }
+        };
+        primary.result.whenComplete((result, failure) -> {
+            if (failure == null) {
+                winner.complete(primary);
+            } else {
+                onFailure.run();
+            }
+        });
+        hedge.result.whenComplete((result, failure) -> {
+            if (failure == null) {
+                winner.complete(hedge);
+            } else {
+                onFailure.run();
+            }
+        });
+        return winner;
+    }
+
+    private static Throwable failureOf(CompletableFuture<?> failed) {
+        try {
+            failed.join();
+            throw new IllegalStateException("Attempt has not failed");
+        } catch (CompletionException e) {
+            return e.getCause();
+        }
+    }
+
+    private long delayNanos() {
+        Window current = currentWindow();
+        LatencyHistogram latencies = current.previous != null && current.previous.count() >= MIN_SAMPLES
+                ? current.previous : current.latencies;
+        if (latencies.count() < MIN_SAMPLES) {
+            return 0;
+        }
+        return Math.max(minDelayNanos, TimeUnit.MICROSECONDS.toNanos(latencies.percentileMicros(percentile)));
+    }
+
+    private <T> T recorded(long startedAt, T result) {
+        currentWindow().latencies.record(System.nanoTime() - startedAt);
+        return result;
+    }
+
+    private Window currentWindow() {
+        Window current = window.get();
+        long now = System.nanoTime();
+        if (now - current.startedAt < TimeUnit.SECONDS.toNanos(WINDOW_SECONDS)) {
+            return current;
+        }
+        Window next = new Window(current.latencies, now);
+        return window.compareAndSet(current, next) ? next : window.get();
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable failure) {
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return (RuntimeException) failure;
+    }
+
+    public void addMetrics(List<Metric<?>> metrics, String prefix) {
+        metrics.add(new Metric<>(prefix + name + ".calls", calls.sum()));
+        metrics.add(new Metric<>(prefix + name + ".hedges", hedges.sum()));
+        metrics.add(new Metric<>(prefix + name + ".hedgeWins", hedgeWins.sum()));
+        long delayMicros = enabled ? TimeUnit.NANOSECONDS.toMicros(delayNanos()) : 0;
+        metrics.add(new Metric<>(prefix + name + ".delay.us", delayMicros));
+        currentWindow().latencies.addMetrics(metrics, prefix + name + ".");
+    }
+
+    private static class Window {
+        final LatencyHistogram latencies = new LatencyHistogram("latency");
+        final LatencyHistogram previous;
+        final long startedAt;
+
+        Window(LatencyHistogram previous, long startedAt) {
+            this.previous = previous;
+            this.startedAt = startedAt;
+        }
+    }
+
+    private static class Attempt<T> implements Runnable {
+        final Supplier<T> call;
+        final boolean hedge;
+        final Deadline deadline = Deadline.current();
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        volatile Runnable abort;
+        volatile boolean cancelled;
+
+        Attempt(Supplier<T> call, boolean hedge) {
+            this.call = call;
+            this.hedge = hedge;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                result.cancel(false);
+                return;
+            }
+            CURRENT_ATTEMPT.set(this);
+            try {
+                result.complete(deadline == null ? call.get() : Deadline.callWithin(deadline, call));
+            } catch (RuntimeException | Error ex) {
+                result.completeExceptionally(ex);
+            } finally {
+                CURRENT_ATTEMPT.remove();
+            }
+        }
+
+        void setAbort(Runnable abort) {
+            this.abort = abort;
+            if (cancelled) {
+                abort.run();
+            }
+        }
+
+        void cancel() {
+            if (result.isDone()) {
+                return;
+            }
+            cancelled = true;
+            Runnable current = abort;
+            if (current != null) {
+                current.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Runs an action once per key within a time window. A duplicate call waits for the result of the call
+ * in flight, or gets the result of the completed one until the window ends. Failures are not cached:
+ * duplicates in flight get the same exception, later calls run the action again.
+ * <p>
+ * Lookups are lock-free reads of a {@link ConcurrentHashMap}, only the first call for a key locks its bin.
+ * When the cache is full, expired entries are evicted first and then arbitrary completed ones. Calls in flight
+ * are never evicted, when they alone fill the cache the action runs without caching its result.
+ */
+public class IdempotencyCache<K, V> {
+
+    private final String name;
+    private final long windowNanos;
+    private final int maxEntries;
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder bypasses = new LongAdder();
+
+    public IdempotencyCache(String name, long windowMillis, int maxEntries) {
+        this.name = name;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxEntries = maxEntries;
+    }
+
+    public V execute(K key, Supplier<V> action) {
+        long now = System.nanoTime();
+        Entry<V> entry = entries.get(key);
+        if (entry == null || entry.isExpired(now)) {
+            Entry<V> created = new Entry<>();
+            entry = entries.compute(key, (k, current) -> current == null || current.isExpired(now) ? created : current);
+            if (entry == created) {
+                misses.increment();
+                if (!evictIfFull(now)) {
+                    entries.remove(key, created);
+                    bypasses.increment();
+                }
+                return run(key, created, action);
+            }
+        }
+        hits.increment();
+        return await(entry.result);
+    }
+
+    private V run(K key, Entry<V> entry, Supplier<V> action) {
+        try {
+            V value = action.get();
+            entry.expiresAt = System.nanoTime() + windowNanos;
+            entry.completed = true;
+            entry.result.complete(value);
+            return value;
+        } catch (RuntimeException | Error ex) {
+            entries.remove(key, entry);
+            entry.result.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    private V await(CompletableFuture<V> result) {
+        try {
+            return result.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Removes completed results of the matching keys, so the next call runs the action again
+     */
+    public void invalidate(Predicate<? super K> keys) {
+        entries.entrySet().removeIf(entry -> entry.getValue().completed && keys.test(entry.getKey()));
+    }
+
+    /**
+     * @return false if calls in flight alone fill the cache
+     */
+    private boolean evictIfFull(long now) {
+        if (entries.size() <= maxEntries) {
+            return true;
+        }
+        entries.values().removeIf(entry -> entry.isExpired(now));
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            if (iterator.next().completed) {
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+        return entries.size() <= maxEntries;
+    }
+
+    public void addMetrics(List<Metric<?>> metrics, String prefix) {
+        metrics.add(new Metric<>(prefix + name + ".hits", hits.sum()));
+        metrics.add(new Metric<>(prefix + name + ".misses", misses.sum()));
+        metrics.add(new Metric<>(prefix + name + ".evictions", evictions.sum()));
+        metrics.add(new Metric<>(prefix + name + ".bypasses", bypasses.sum()));
+        metrics.add(new Metric<>(prefix + name + ".size", entries.size()));
+    }
+
+    private static final class Entry<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private volatile boolean completed;
+        private volatile long expiresAt;
+
+        private boolean isExpired(long now) {
+            return completed && expiresAt - now <= 0;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import me.ramswaroop.jbot.core.slack.models.RichMessage;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.web.client.HttpClientErrorException;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ApiError;
+import ua.com.juja.microservices.teams.slackbot.model.teams.ActivateTeamRequest;
+import ua.com.juja.microservices.teams.slackbot.model.teams.DeactivateTeamRequest;
+import ua.com.juja.microservices.teams.slackbot.model.teams.Team;
+import ua.com.juja.microservices.teams.slackbot.model.users.User;
+import ua.com.juja.microservices.teams.slackbot.model.users.UserSlackNameRequest;
+import ua.com.juja.microservices.teams.slackbot.model.users.UserUuidRequest;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The one ObjectMapper of the bot, with readers and writers of the exchanged models built up front.
+ * Readers and writers are immutable and thread-safe, so serializers and deserializers are resolved once
+ * instead of on every message. With afterburner, properties are accessed by generated bytecode instead of reflection.
+ * <p>
+ * The same models may be exchanged as Smile, binary JSON of Jackson, through the codec returned by {@link #smile()}.
+ */
+public class JsonCodec {
+
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    private final ObjectMapper objectMapper;
+    private final MediaType[] mediaTypes;
+    private final JsonCodec smile;
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    public JsonCodec(boolean afterburner) {
+        this(new ObjectMapper(), afterburner, new JsonCodec(new ObjectMapper(new SmileFactory()), afterburner, null,
+                APPLICATION_SMILE), MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+    }
+
+    private JsonCodec(ObjectMapper objectMapper, boolean afterburner, JsonCodec smile, MediaType... mediaTypes) {
+        this.objectMapper = objectMapper;
+        this.mediaTypes = mediaTypes;
+        this.smile = smile == null ? this : smile;
+        if (afterburner) {
+            objectMapper.registerModule(new AfterburnerModule());
+        }
+        for (Class<?> type : new Class<?>[]{Team.class, User[].class, ApiError.class}) {
+            readerFor(type);
+        }
+        for (Class<?> type : new Class<?>[]{ActivateTeamRequest.class, DeactivateTeamRequest.class,
+                UserSlackNameRequest.class, UserUuidRequest.class, RichMessage.class}) {
+            writerFor(type);
+        }
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    /**
+     * @return media types read and written by this codec
+     */
+    public MediaType[] getMediaTypes() {
+        return mediaTypes.clone();
+    }
+
+    /**
+     * @return codec of the same models in Smile format
+     */
+    public JsonCodec smile() {
+        return smile;
+    }
+
+    public ObjectReader readerFor(Class<?> type) {
+        return readers.computeIfAbsent(type, objectMapper::readerFor);
+    }
+
+    public ObjectWriter writerFor(Class<?> type) {
+        return writers.computeIfAbsent(type, objectMapper::writerFor);
+    }
+
+    /**
+     * @return converter which reads and writes through the cached readers and writers of this codec
+     */
+    public HttpMessageConverter<Object> httpMessageConverter() {
+        return new CodecHttpMessageConverter(objectMapper);
+    }
+
+    public ApiError convertToApiError(HttpClientErrorException httpClientErrorException) {
+        MediaType contentType = httpClientErrorException.getResponseHeaders() == null ? null
+                : httpClientErrorException.getResponseHeaders().getContentType();
+        JsonCodec codec = APPLICATION_SMILE.isCompatibleWith(contentType) ? smile : this;
+        try {
+            return codec.readerFor(ApiError.class).readValue(httpClientErrorException.getResponseBodyAsByteArray());
+        } catch (IOException e) {
+            return new ApiError(
+                    500, "BotInternalError",
+                    "I'm, sorry. I cannot parse api error message from remote service :(",
+                    "Cannot parse api error message from remote service",
+                    e.getMessage(),
+                    Collections.singletonList(httpClientErrorException.getMessage())
+            );
+        }
+    }
+
+    private class CodecHttpMessageConverter extends AbstractJackson2HttpMessageConverter {
+
+        CodecHttpMessageConverter(ObjectMapper objectMapper) {
+            super(objectMapper, mediaTypes);
+        }
+
+        @Override
+        protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+            return read(clazz, null, inputMessage);
+        }
+
+        @Override
+        public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+            if (!(type instanceof Class)) {
+                return super.read(type, contextClass, inputMessage);
+            }
+            try {
+                return readerFor((Class<?>) type).readValue(inputMessage.getBody());
+            } catch (JsonProcessingException ex) {
+                throw new HttpMessageNotReadableException("Could not read document: " + ex.getMessage(), ex);
+            }
+        }
+
+        @Override
+        protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException {
+            JsonEncoding encoding = getJsonEncoding(outputMessage.getHeaders().getContentType());
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(outputMessage.getBody(), encoding);
+            writerFor(object.getClass()).writeValue(generator, object);
+            generator.flush();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in microseconds. Every power of two is split into 8 buckets,
+ * so a percentile is reported with an error of at most 12.5%. Recording is one atomic increment
+ * and never blocks, percentiles are computed from a non-atomic snapshot of the buckets.
+ * Other non-negative values, as sizes, are recorded with {@link #recordValue(long)} and reported in their unit.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final String name;
+    private final String unitSuffix;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this(name, "us");
+    }
+
+    /**
+     * @param unit suffix of the reported values, empty for none
+     */
+    public LatencyHistogram(String name, String unit) {
+        this.name = name;
+        this.unitSuffix = unit.isEmpty() ? "" : "." + unit;
+    }
+
+    public void record(long nanos) {
+        recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordValue(long value) {
+        long recorded = Math.max(0, value);
+        buckets.incrementAndGet(bucketOf(recorded));
+        count.increment();
+        total.add(recorded);
+        long max = maxValue.get();
+        while (recorded > max && !maxValue.compareAndSet(max, recorded)) {
+            max = maxValue.get();
+        }
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * @param quantile from 0 to 1
+     * @return upper bound of the bucket which holds the quantile, in microseconds or the unit of recorded values,
+     * 0 if nothing is recorded
+     */
+    public long percentileMicros(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), maxValue.get());
+            }
+        }
+        return maxValue.get();
+    }
+
+    public void addMetrics(List<Metric<?>> metrics, String prefix) {
+        long recorded = count.sum();
+        metrics.add(new Metric<>(prefix + name + ".count", recorded));
+        metrics.add(new Metric<>(prefix + name + ".avg" + unitSuffix, recorded == 0 ? 0 : total.sum() / recorded));
+        metrics.add(new Metric<>(prefix + name + ".p50" + unitSuffix, percentileMicros(0.5)));
+        metrics.add(new Metric<>(prefix + name + ".p99" + unitSuffix, percentileMicros(0.99)));
+        metrics.add(new Metric<>(prefix + name + ".max" + unitSuffix, maxValue.get()));
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lowerBound = (SUB_BUCKETS + bucket % SUB_BUCKETS) * width;
+        return lowerBound + width - 1;
+    }
+}
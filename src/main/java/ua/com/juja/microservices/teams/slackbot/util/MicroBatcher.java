@@ -0,0 +1,175 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Merges concurrent lookups of keys into one call. The first lookup opens a batch and, while other lookups
+ * are in progress, waits for the window or until the batch holds maxBatchSize keys; a lookup alone makes
+ * its call at once. The call is made with the keys of all lookups of the batch in the thread of the first
+ * lookup, so it keeps its {@link Deadline}. The other lookups wait for the result and take their keys from it,
+ * a failed call fails every lookup of the batch with the same exception.
+ * <p>
+ * A longer window merges more lookups into one call and adds more latency to each of them, the batch size
+ * and wait histograms show both sides. Window 0 or maxBatchSize below 2 turns batching off.
+ */
+public class MicroBatcher<K, V> {
+
+    private final String name;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Function<List<K>, Map<K, V>> call;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition full = lock.newCondition();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder calls = new LongAdder();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LatencyHistogram batchSizes;
+    private final LatencyHistogram waits;
+    private Batch<K, V> open;
+
+    public MicroBatcher(String name, long windowMicros, int maxBatchSize, Function<List<K>, Map<K, V>> call) {
+        this.name = name;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatchSize = maxBatchSize;
+        this.call = call;
+        this.batchSizes = new LatencyHistogram(name + ".batchSize", "");
+        this.waits = new LatencyHistogram(name + ".wait");
+    }
+
+    public boolean isEnabled() {
+        return windowNanos > 0 && maxBatchSize > 1;
+    }
+
+    /**
+     * @return values of the found keys in the order of keys
+     */
+    public Map<K, V> execute(List<K> keys) {
+        if (!isEnabled()) {
+            return call.apply(keys);
+        }
+        lookups.increment();
+        active.incrementAndGet();
+        try {
+            Batch<K, V> batch = join(keys);
+            if (batch.leader == Thread.currentThread()) {
+                call(batch);
+            }
+            return valuesOf(keys, batch.result.join());
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw ex;
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    /**
+     * Adds keys to the open batch. The leader of a new batch waits until it is full or the window passes,
+     * unless no other lookup is in progress
+     */
+    private Batch<K, V> join(List<K> keys) {
+        long joinedAt = System.nanoTime();
+        lock.lock();
+        try {
+            Batch<K, V> batch = open;
+            if (batch == null) {
+                batch = new Batch<>(Thread.currentThread());
+                open = batch;
+            }
+            batch.keys.addAll(keys);
+            batch.joinedAt.add(joinedAt);
+            if (batch.keys.size() >= maxBatchSize) {
+                open = null;
+                full.signalAll();
+            }
+            if (batch.leader == Thread.currentThread()) {
+                if (active.get() > 1) {
+                    awaitFullOrWindow(batch);
+                } else if (open == batch) {
+                    open = null;
+                }
+            }
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitFullOrWindow(Batch<K, V> batch) {
+        long remaining = windowNanos;
+        try {
+            while (open == batch && remaining > 0) {
+                remaining = full.awaitNanos(remaining);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (open == batch) {
+            open = null;
+        }
+    }
+
+    private void call(Batch<K, V> batch) {
+        long calledAt = System.nanoTime();
+        batch.joinedAt.forEach(joinedAt -> waits.record(calledAt - joinedAt));
+        batchSizes.recordValue(batch.keys.size());
+        calls.increment();
+        try {
+            batch.result.complete(call.apply(new ArrayList<>(batch.keys)));
+        } catch (RuntimeException | Error ex) {
+            batch.result.completeExceptionally(ex);
+        }
+    }
+
+    private Map<K, V> valuesOf(List<K> keys, Map<K, V> found) {
+        Map<K, V> values = new LinkedHashMap<>();
+        for (K key : keys) {
+            V value = found.get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    public void addMetrics(List<Metric<?>> metrics, String prefix) {
+        metrics.add(new Metric<>(prefix + name + ".lookups", lookups.sum()));
+        metrics.add(new Metric<>(prefix + name + ".calls", calls.sum()));
+        batchSizes.addMetrics(metrics, prefix);
+        waits.addMetrics(metrics, prefix);
+    }
+
+    /**
+     * Keys are changed under the lock only while the batch is open
+     */
+    private static final class Batch<K, V> {
+        private final Thread leader;
+        private final Set<K> keys = new LinkedHashSet<>();
+        private final List<Long> joinedAt = new ArrayList<>();
+        private final CompletableFuture<Map<K, V>> result = new CompletableFuture<>();
+
+        private Batch(Thread leader) {
+            this.leader = leader;
+        }
+    }
+}
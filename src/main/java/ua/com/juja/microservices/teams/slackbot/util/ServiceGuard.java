@@ -0,0 +1,69 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.web.client.ResourceAccessException;
+import ua.com.juja.microservices.teams.slackbot.exceptions.DeadlineExceededException;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Every call to a downstream service goes through its circuit breaker, bulkhead and adaptive concurrency limiter.
+ * The breaker fails fast while the service is down, the bulkhead caps threads held by the service and the limiter
+ * keeps the number of concurrent calls within what the service handles quickly. Idempotent reads may be hedged
+ * inside of the breaker, so it sees only the response which won, while each attempt takes its own bulkhead and
+ * limiter permits, so hedges never push concurrency past their caps. A timeout caused by the end of the command's
+ * time budget is reported as {@link DeadlineExceededException}.
+ */
+public class ServiceGuard {
+
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final Hedger hedger;
+
+    public ServiceGuard(CircuitBreaker circuitBreaker, Bulkhead bulkhead,
+                        AdaptiveConcurrencyLimiter concurrencyLimiter, Hedger hedger) {
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.hedger = hedger;
+    }
+
+    /**
+     * @throws DeadlineExceededException if the command is out of its time budget before the call or when the call
+     *                                   times out
+     */
+    public <T> T call(Supplier<T> call) {
+        Deadline.checkNotExpired();
+        return circuitBreaker.execute(() -> withPermits(call));
+    }
+
+    /**
+     * Only for calls which may be sent twice
+     */
+    public <T> T hedgedCall(Supplier<T> call) {
+        Deadline.checkNotExpired();
+        return circuitBreaker.execute(() -> hedger.execute(() -> withPermits(call)));
+    }
+
+    private <T> T withPermits(Supplier<T> call) {
+        return bulkhead.execute(() -> concurrencyLimiter.execute(() -> withinDeadline(call)));
+    }
+
+    private static <T> T withinDeadline(Supplier<T> call) {
+        try {
+            return call.get();
+        } catch (ResourceAccessException ex) {
+            Deadline.checkNotExpired();
+            throw ex;
+        }
+    }
+
+    public void addMetrics(List<Metric<?>> metrics) {
+        concurrencyLimiter.addMetrics(metrics, "teams.slackbot.concurrency.");
+        circuitBreaker.addMetrics(metrics, "teams.slackbot.circuitBreaker.");
+        bulkhead.addMetrics(metrics, "teams.slackbot.bulkhead.");
+        hedger.addMetrics(metrics, "teams.slackbot.hedging.");
+    }
+}
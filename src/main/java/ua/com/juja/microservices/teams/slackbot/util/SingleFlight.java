@@ -0,0 +1,82 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls with the same key: the first caller makes the call, callers which come
+ * while it is in flight wait for its result or exception, but no longer than their own {@link Deadline}.
+ * Nothing is kept after the call completes.
+ */
+public class SingleFlight<K, V> {
+
+    private final String name;
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder saved = new LongAdder();
+
+    public SingleFlight(String name) {
+        this.name = name;
+    }
+
+    public V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> existing = inFlight.get(key);
+        if (existing == null) {
+            CompletableFuture<V> created = new CompletableFuture<>();
+            existing = inFlight.putIfAbsent(key, created);
+            if (existing == null) {
+                calls.increment();
+                return call(key, created, call);
+            }
+        }
+        saved.increment();
+        Deadline deadline = Deadline.current();
+        try {
+            return deadline == null ? existing.get() : existing.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            Deadline.checkNotExpired();
+            throw new ResourceAccessException("Timed out waiting for " + name + " call in flight");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ResourceAccessException("Interrupted while waiting for " + name + " call in flight");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw new CompletionException(ex.getCause());
+        }
+    }
+
+    private V call(K key, CompletableFuture<V> result, Supplier<V> call) {
+        try {
+            V value = call.get();
+            result.complete(value);
+            return value;
+        } catch (RuntimeException | Error ex) {
+            result.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, result);
+        }
+    }
+
+    public void addMetrics(List<Metric<?>> metrics, String prefix) {
+        metrics.add(new Metric<>(prefix + name + ".calls", calls.sum()));
+        metrics.add(new Metric<>(prefix + name + ".saved", saved.sum()));
+        metrics.add(new Metric<>(prefix + name + ".inFlight", inFlight.size()));
+    }
+}
@@ -0,0 +1,51 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket. Instead of a token count it keeps the moment when the bucket is full again
+ * (generic cell rate algorithm), so taking a token is one CAS of a single long. A bucket which is full again
+ * holds no state worth keeping and can be dropped.
+ */
+public class TokenBucket {
+
+    private final long refillNanos;
+    private final long capacityNanos;
+    private final AtomicLong fullAt;
+
+    /**
+     * @param capacity        tokens available at once, i.e. the allowed burst
+     * @param tokensPerMinute sustained rate
+     * @throws IllegalArgumentException if capacity or tokensPerMinute is not positive
+     */
+    public TokenBucket(int capacity, int tokensPerMinute, long now) {
+        if (capacity <= 0 || tokensPerMinute <= 0) {
+            throw new IllegalArgumentException("Token bucket capacity and tokens per minute must be positive, got "
+                    + capacity + " and " + tokensPerMinute);
+        }
+        this.refillNanos = TimeUnit.MINUTES.toNanos(1) / tokensPerMinute;
+        this.capacityNanos = capacity * refillNanos;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * @param now {@link System#nanoTime()}
+     */
+    public boolean tryAcquire(long now) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current - now, 0) + now + refillNanos;
+            if (next - now > capacityNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    public boolean isFull(long now) {
+        return fullAt.get() - now <= 0;
+    }
+}
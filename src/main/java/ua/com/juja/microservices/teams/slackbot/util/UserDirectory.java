@@ -0,0 +1,177 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * All users of Users service in a {@link CompactUserIndex}, loaded in the background and reloaded every
+ * refresh interval. Lookups are answered from the index, keys which aren't in it, as users who joined after
+ * the last load, and all keys until the first load completes are passed to the next lookup.
+ * A failed load keeps the previous index.
+ * <p>
+ * With a {@link UserDirectorySnapshot} the index is written to it every snapshot interval, when users were
+ * reloaded since the last write, and on close. On start the snapshot is mapped and answers lookups right away,
+ * until the first load from Users service replaces it.
+ */
+@Slf4j
+public class UserDirectory implements AutoCloseable {
+
+    private final Supplier<Map<String, String>> loader;
+    private final UserDirectorySnapshot snapshot;
+    private final ScheduledExecutorService refresher;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+    private final LongAdder snapshotWrites = new LongAdder();
+    private final LongAdder snapshotFailures = new LongAdder();
+    private volatile CompactUserIndex index;
+    private volatile CompactUserIndex written;
+
+    /**
+     * @param snapshot       null to keep users in memory only
+     * @param snapshotMillis 0 to write the snapshot on close only
+     * @param loader         slack names by uuids of all users
+     */
+    public UserDirectory(boolean enabled, long refreshMillis, UserDirectorySnapshot snapshot, long snapshotMillis,
+                         Supplier<Map<String, String>> loader) {
+        this.loader = loader;
+        this.snapshot = snapshot;
+        if (enabled) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("user-directory-");
+            threadFactory.setDaemon(true);
+            refresher = Executors.newSingleThreadScheduledExecutor(threadFactory);
+            if (snapshot != null) {
+                mapSnapshot();
+            }
+            if (snapshot != null && snapshotMillis > 0) {
+                refresher.scheduleWithFixedDelay(this::writeSnapshot, snapshotMillis, snapshotMillis,
+                        TimeUnit.MILLISECONDS);
+            }
+            refresher.scheduleWithFixedDelay(this::refresh, 0, refreshMillis, TimeUnit.MILLISECONDS);
+        } else {
+            refresher = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return refresher != null;
+    }
+
+    public void refresh() {
+        try {
+            CompactUserIndex loaded = CompactUserIndex.build(loader.get());
+            index = loaded;
+            refreshes.increment();
+            log.info("User directory loaded '{}' users in '{}' bytes", loaded.size(), loaded.sizeInBytes());
+        } catch (RuntimeException ex) {
+            refreshFailures.increment();
+            log.warn("User directory wasn't loaded, previous users are kept: {}", ex.getMessage());
+        }
+    }
+
+    private void mapSnapshot() {
+        try {
+            CompactUserIndex mapped = snapshot.map();
+            index = mapped;
+            written = mapped;
+        } catch (IOException ex) {
+            snapshotFailures.increment();
+            log.warn("User directory snapshot is skipped: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Writes users to the snapshot, if they were reloaded since the last write
+     */
+    public synchronized void writeSnapshot() {
+        CompactUserIndex current = index;
+        if (snapshot == null || current == null || current == written) {
+            return;
+        }
+        try {
+            snapshot.write(current);
+            written = current;
+            snapshotWrites.increment();
+            log.debug("User directory snapshot of '{}' users written", current.size());
+        } catch (IOException ex) {
+            snapshotFailures.increment();
+            log.warn("User directory snapshot wasn't written: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * @param next looks up the slack names which aren't in the directory
+     * @return result with uuids of the found slack names in the order of slackNames
+     */
+    public <M extends Map<String, String>> M uuidsBySlackNames(List<String> slackNames, M result,
+                                                               Function<List<String>, Map<String, String>> next) {
+        return lookup(slackNames, result, next, false);
+    }
+
+    /**
+     * @param next looks up the uuids which aren't in the directory
+     * @return result with slack names of the found uuids in the order of uuids
+     */
+    public <M extends Map<String, String>> M slackNamesByUuids(List<String> uuids, M result,
+                                                               Function<List<String>, Map<String, String>> next) {
+        return lookup(uuids, result, next, true);
+    }
+
+    private <M extends Map<String, String>> M lookup(List<String> keys, M result,
+                                                     Function<List<String>, Map<String, String>> next,
+                                                     boolean byUuid) {
+        CompactUserIndex current = index;
+        String[] values = new String[keys.size()];
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = current == null ? null : byUuid ? current.slackName(keys.get(i)) : current.uuid(keys.get(i));
+            if (values[i] == null) {
+                missing.add(keys.get(i));
+            }
+        }
+        hits.add(values.length - missing.size());
+        misses.add(missing.size());
+        Map<String, String> found = missing.isEmpty() ? null : next.apply(missing);
+        for (int i = 0; i < values.length; i++) {
+            String value = values[i] != null || found == null ? values[i] : found.get(keys.get(i));
+            if (value != null) {
+                result.putIfAbsent(keys.get(i), value);
+            }
+        }
+        return result;
+    }
+
+    public void addMetrics(List<Metric<?>> metrics, String prefix) {
+        CompactUserIndex current = index;
+        metrics.add(new Metric<>(prefix + "users", current == null ? 0 : current.size()));
+        metrics.add(new Metric<>(prefix + "bytes", current == null ? 0 : current.sizeInBytes()));
+        metrics.add(new Metric<>(prefix + "hits", hits.sum()));
+        metrics.add(new Metric<>(prefix + "misses", misses.sum()));
+        metrics.add(new Metric<>(prefix + "refreshes", refreshes.sum()));
+        metrics.add(new Metric<>(prefix + "refreshFailures", refreshFailures.sum()));
+        metrics.add(new Metric<>(prefix + "snapshot.writes", snapshotWrites.sum()));
+        metrics.add(new Metric<>(prefix + "snapshot.failures", snapshotFailures.sum()));
+        metrics.add(new Metric<>(prefix + "snapshot.serving", current != null && refreshes.sum() == 0 ? 1 : 0));
+    }
+
+    @Override
+    public void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            writeSnapshot();
+        }
+    }
+}
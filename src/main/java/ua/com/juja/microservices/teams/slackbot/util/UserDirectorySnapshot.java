@@ -0,0 +1,99 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * File with a {@link CompactUserIndex}, which is mapped and used as it is, so reading it takes the same time
+ * for any number of users, except for the checksum. The file is
+ * {@code [magic][format version][index length][crc32 of index][written at millis][index]}, the index has its
+ * own version. A snapshot is written to a temporary file which then replaces the previous snapshot,
+ * so a crash while writing leaves the previous one.
+ */
+@Slf4j
+public class UserDirectorySnapshot {
+
+    static final int MAGIC = 0x55534453;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 24;
+
+    private final Path file;
+
+    public UserDirectorySnapshot(Path file) {
+        this.file = file;
+    }
+
+    public void write(CompactUserIndex index) throws IOException {
+        ByteBuffer content = index.buffer().duplicate();
+        content.clear();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                .putInt(MAGIC)
+                .putInt(FORMAT_VERSION)
+                .putInt(content.remaining())
+                .putInt(checksum(content.duplicate()))
+                .putLong(System.currentTimeMillis());
+        header.flip();
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path written = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(written, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining() || content.hasRemaining()) {
+                channel.write(new ByteBuffer[]{header, content});
+            }
+            channel.force(true);
+        }
+        Files.move(written, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return index backed by the mapped file, null if there is no snapshot
+     * @throws IOException if the snapshot is of another version, truncated or corrupted
+     */
+    public CompactUserIndex map() throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (mapped.capacity() < HEADER_BYTES || mapped.getInt(0) != MAGIC) {
+            throw new IOException("Not a user directory snapshot: " + file);
+        }
+        if (mapped.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("User directory snapshot " + file + " is of unknown version " + mapped.getInt(4));
+        }
+        if (mapped.getInt(8) != mapped.capacity() - HEADER_BYTES) {
+            throw new IOException("User directory snapshot " + file + " is truncated");
+        }
+        mapped.position(HEADER_BYTES);
+        ByteBuffer content = mapped.slice();
+        if (checksum(content.duplicate()) != mapped.getInt(12)) {
+            throw new IOException("User directory snapshot " + file + " is corrupted");
+        }
+        CompactUserIndex index;
+        try {
+            index = new CompactUserIndex(content);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("User directory snapshot " + file + " holds an unreadable index", ex);
+        }
+        log.info("Mapped user directory snapshot '{}' of '{}' users written '{}' seconds ago", file, index.size(),
+                (System.currentTimeMillis() - mapped.getLong(16)) / 1000);
+        return index;
+    }
+
+    private static int checksum(ByteBuffer content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return (int) crc.getValue();
+    }
+}
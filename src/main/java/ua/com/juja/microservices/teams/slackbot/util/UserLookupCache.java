@@ -0,0 +1,163 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Slack name to uuid mapping of users, cached in both directions. A lookup in either direction loads only
+ * the missing keys, and every loaded user fills both directions, so resolving slack names also caches
+ * the uuids for the way back. Users live for ttl, unknown keys are not cached.
+ * <p>
+ * When more than maxEntries users are cached, expired ones are evicted first and then arbitrary ones.
+ * maxEntries 0 turns the cache off, every key is loaded.
+ */
+public class UserLookupCache {
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final ConcurrentMap<String, Entry> uuidsBySlackNames = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Entry> slackNamesByUuids = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LatencyHistogram loads = new LatencyHistogram("load");
+
+    public UserLookupCache(long ttlMillis, int maxEntries) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxEntries = maxEntries;
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * @param loader loads uuids by slack names which aren't cached
+     * @return result with uuids of the found slack names in the order of slackNames
+     */
+    public <M extends Map<String, String>> M uuidsBySlackNames(List<String> slackNames, M result,
+                                                               Function<List<String>, Map<String, String>> loader) {
+        return lookup(slackNames, result, loader, uuidsBySlackNames, false);
+    }
+
+    /**
+     * @param loader loads slack names by uuids which aren't cached
+     * @return result with slack names of the found uuids in the order of uuids
+     */
+    public <M extends Map<String, String>> M slackNamesByUuids(List<String> uuids, M result,
+                                                               Function<List<String>, Map<String, String>> loader) {
+        return lookup(uuids, result, loader, slackNamesByUuids, true);
+    }
+
+    private <M extends Map<String, String>> M lookup(List<String> keys, M result,
+                                                     Function<List<String>, Map<String, String>> loader,
+                                                     ConcurrentMap<String, Entry> cached, boolean byUuid) {
+        long now = System.nanoTime();
+        String[] values = new String[keys.size()];
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            String key = keys.get(i);
+            Entry entry = cached.get(key);
+            if (entry != null && !entry.isExpired(now)) {
+                hits.increment();
+                values[i] = entry.value;
+            } else if (!missing.contains(key)) {
+                misses.increment();
+                missing.add(key);
+            }
+        }
+        Map<String, String> loaded = missing.isEmpty() ? null : load(missing, loader, byUuid);
+        for (int i = 0; i < values.length; i++) {
+            String value = values[i] != null || loaded == null ? values[i] : loaded.get(keys.get(i));
+            if (value != null) {
+                result.putIfAbsent(keys.get(i), value);
+            }
+        }
+        return result;
+    }
+
+    private Map<String, String> load(List<String> keys, Function<List<String>, Map<String, String>> loader,
+                                     boolean byUuid) {
+        long started = System.nanoTime();
+        Map<String, String> loaded = loader.apply(keys);
+        long now = System.nanoTime();
+        loads.record(now - started);
+        if (isEnabled()) {
+            loaded.forEach((key, value) -> {
+                if (byUuid) {
+                    put(value, key, now);
+                } else {
+                    put(key, value, now);
+                }
+            });
+            evictIfFull(now);
+        }
+        return loaded;
+    }
+
+    private void put(String slackName, String uuid, long now) {
+        long expiresAt = now + ttlNanos;
+        Entry previousUuid = uuidsBySlackNames.put(slackName, new Entry(uuid, expiresAt));
+        Entry previousSlackName = slackNamesByUuids.put(uuid, new Entry(slackName, expiresAt));
+        if (previousUuid != null && !previousUuid.value.equals(uuid)) {
+            remove(slackNamesByUuids, previousUuid.value, slackName);
+        }
+        if (previousSlackName != null && !previousSlackName.value.equals(slackName)) {
+            remove(uuidsBySlackNames, previousSlackName.value, uuid);
+        }
+    }
+
+    private static void remove(ConcurrentMap<String, Entry> cached, String key, String value) {
+        cached.computeIfPresent(key, (k, entry) -> entry.value.equals(value) ? null : entry);
+    }
+
+    private void evictIfFull(long now) {
+        if (slackNamesByUuids.size() <= maxEntries) {
+            return;
+        }
+        uuidsBySlackNames.values().removeIf(entry -> entry.isExpired(now));
+        slackNamesByUuids.values().removeIf(entry -> entry.isExpired(now));
+        Iterator<Map.Entry<String, Entry>> iterator = slackNamesByUuids.entrySet().iterator();
+        while (slackNamesByUuids.size() > maxEntries && iterator.hasNext()) {
+            Map.Entry<String, Entry> evicted = iterator.next();
+            iterator.remove();
+            remove(uuidsBySlackNames, evicted.getValue().value, evicted.getKey());
+            evictions.increment();
+        }
+    }
+
+    public void addMetrics(List<Metric<?>> metrics, String prefix) {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        metrics.add(new Metric<>(prefix + "hits", hitCount));
+        metrics.add(new Metric<>(prefix + "misses", missCount));
+        metrics.add(new Metric<>(prefix + "hitRatio",
+                hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount)));
+        metrics.add(new Metric<>(prefix + "evictions", evictions.sum()));
+        metrics.add(new Metric<>(prefix + "size", slackNamesByUuids.size()));
+        loads.addMetrics(metrics, prefix);
+    }
+
+    private static final class Entry {
+        private final String value;
+        private final long expiresAt;
+
+        private Entry(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return expiresAt - now <= 0;
+        }
+    }
+}
@@ -1,17 +1,24 @@
 package ua.com.juja.microservices.teams.slackbot.util;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
-import org.springframework.web.client.HttpClientErrorException;
-import ua.com.juja.microservices.teams.slackbot.exceptions.ApiError;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
 
 import java.io.IOException;
+import java.net.URI;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 /**
@@ -31,21 +38,55 @@ public class Utils {
         return headers;
     }
 
-    public static ApiError convertToApiError(HttpClientErrorException httpClientErrorException) {
-        ObjectMapper mapper = new ObjectMapper();
+    /**
+     * Waits for the result of an async exchange and rethrows its failure the same way as RestTemplate does,
+     * so callers keep handling HttpClientErrorException and ResourceAccessException as for blocking calls.
+     * Waits no longer than the deadline of the current command.
+     */
+    public static <T> T awaitResponse(ListenableFuture<T> future, String url) {
+        Hedger.onCancel(() -> future.cancel(true));
+        Deadline deadline = Deadline.current();
         try {
-            return mapper.readValue(httpClientErrorException.getResponseBodyAsString(), ApiError.class);
-        } catch (IOException e) {
-            return new ApiError(
-                    500, "BotInternalError",
-                    "I'm, sorry. I cannot parse api error message from remote service :(",
-                    "Cannot parse api error message from remote service",
-                    e.getMessage(),
-                    Collections.singletonList(httpClientErrorException.getMessage())
-            );
+            return deadline == null ? future.get() : future.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            Deadline.checkNotExpired();
+            throw new ResourceAccessException("Timed out waiting for response from " + url);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ResourceAccessException("Interrupted while waiting for response from " + url);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw new ResourceAccessException("I/O error on request to " + url + ": " + cause.getMessage(),
+                        (IOException) cause);
+            }
+            throw new RestClientException("Request to " + url + " failed", cause);
         }
     }
 
+    /**
+     * @return true if the exception means that the downstream service is down or overloaded: a connection
+     * failure, a timeout or a 5xx response
+     */
+    public static boolean isServiceFailure(RuntimeException ex) {
+        return ex instanceof ResourceAccessException || ex instanceof HttpServerErrorException;
+    }
+
+    /**
+     * @return route of HttpClient connections to the service at the url, so per-route pool limits can be set
+     */
+    public static HttpRoute routeOf(String url) {
+        URI uri = URI.create(url);
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() > 0 ? uri.getPort() : secure ? 443 : 80;
+        return new HttpRoute(new HttpHost(uri.getHost(), port, uri.getScheme()), null, secure);
+    }
+
     private static String listToStringWithDelimeter(Set<String> list, String delimeter) {
         return list.stream().collect(Collectors.joining(delimeter));
     }
@@ -59,7 +100,7 @@ public class Utils {
         String[] messageParts = message.split(messageDelimeter);
         Set<String> uuids = Collections.emptySet();
         if (messageParts.length > 1) {
-            uuids = new HashSet<>(Arrays.asList(messageParts[1].split(",")));
+            uuids = new LinkedHashSet<>(Arrays.asList(messageParts[1].split(",")));
         }
         return uuids;
     }
@@ -5,11 +5,13 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import me.ramswaroop.jbot.core.slack.models.RichMessage;
 import net.javacrumbs.jsonunit.core.Option;
 import net.javacrumbs.jsonunit.core.util.ResourceUtils;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpMethod;
@@ -22,22 +24,27 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.web.client.RestTemplate;
 import ua.com.juja.microservices.teams.slackbot.TeamSlackBotApplication;
+import ua.com.juja.microservices.teams.slackbot.command.CommandExecutor;
 import ua.com.juja.microservices.teams.slackbot.model.teams.Team;
 import ua.com.juja.microservices.teams.slackbot.model.users.User;
+import ua.com.juja.microservices.teams.slackbot.service.SlackDeliveryService;
 import ua.com.juja.microservices.utils.SlackUrlUtils;
 import ua.com.juja.microservices.utils.TestUtils;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static net.javacrumbs.jsonunit.fluent.JsonFluentAssert.assertThatJson;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
@@ -52,9 +59,15 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @RunWith(SpringRunner.class)
 @SpringBootTest(classes = {TeamSlackBotApplication.class})
 @AutoConfigureMockMvc
-@TestPropertySource(value = {"classpath:application.properties", "classpath:messages/message.properties"})
+@TestPropertySource(value = {"classpath:application.properties", "classpath:messages/message.properties"},
+        properties = {"teams.slackbot.delivery.maxPostsPerUrl=1000",
+                "teams.slackbot.dataDir=${java.io.tmpdir}/teams-slackbot-test/${random.value}",
+                "teams.slackbot.idempotency.windowSeconds=0", "teams.slackbot.rateLimit.user.capacity=0",
+                "teams.slackbot.hedging.enabled=false", "teams.slackbot.userCache.maxEntries=0"})
 public class TeamsSlackBotIntegrationTest {
 
+    private static final long DELAYED_RESPONSE_TIMEOUT = 2000;
+
     private static User user1;
     private static User user2;
     private static User user3;
@@ -101,8 +114,16 @@ public class TeamsSlackBotIntegrationTest {
     @Inject
     private RestTemplate restTemplate;
     @Inject
+    @Named("slackRestTemplate")
+    private RestTemplate slackRestTemplate;
+    @Inject
     private MockMvc mvc;
+    @Inject
+    private CommandExecutor commandExecutor;
+    @Inject
+    private SlackDeliveryService slackDeliveryService;
     private MockRestServiceServer mockServer;
+    private MockRestServiceServer slackMockServer;
 
     @BeforeClass
     public static void oneTimeSetUp() {
@@ -117,6 +138,27 @@ public class TeamsSlackBotIntegrationTest {
     @Before
     public void setup() {
         mockServer = MockRestServiceServer.bindTo(restTemplate).build();
+        slackMockServer = MockRestServiceServer.bindTo(slackRestTemplate).build();
+    }
+
+    @After
+    public void verifyDelayedResponses() throws InterruptedException {
+        assertTrue("Delayed parts of commands are not completed in time",
+                commandExecutor.awaitDrained(DELAYED_RESPONSE_TIMEOUT, TimeUnit.MILLISECONDS));
+        long deadline = System.currentTimeMillis() + DELAYED_RESPONSE_TIMEOUT;
+        while (messagesInFlight() > 0) {
+            assertTrue("Delayed responses are not delivered in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        mockServer.verify();
+        slackMockServer.verify();
+    }
+
+    private long messagesInFlight() {
+        return ((PublicMetrics) slackDeliveryService).metrics().stream()
+                .filter(metric -> metric.getName().equals("teams.slackbot.delivery.inFlight"))
+                .mapToLong(metric -> metric.getValue().longValue())
+                .sum();
     }
 
     @Test
@@ -214,11 +256,11 @@ public class TeamsSlackBotIntegrationTest {
             throws Exception {
         final String commandText = String.format("%s %s %s %s",
                 user1.getSlack(), user2.getSlack(), user3.getSlack(), user4.getSlack());
-        final List<User> usersInCommand = Arrays.asList(user1, user2, user3, user4);
+        final List<User> usersInCommand = Arrays.asList(user1, user2, user3, user4, userFrom);
         String responseUrl = "http://example.com";
         mockSuccessUsersServiceFindUsersBySlackNames(usersInCommand);
         String teamsJsonRequestBody = TestUtils.convertToString(ResourceUtils.resource
-                ("request/requestTeamRepositoryActivateTeamIfUsersNotInActiveTeamAndFromUserInText.json"));
+                ("request/requestTeamRepositoryActivateTeamIfUsersNotInActiveTeamAndFromUserNotInText.json"));
         Set<String> uuids = new LinkedHashSet<>(Arrays.asList(user1.getUuid(), user2.getUuid(),
                 user3.getUuid(), "illegal-uuid"));
         Team activatedTeam = new Team(uuids);
@@ -241,9 +283,9 @@ public class TeamsSlackBotIntegrationTest {
                 user1.getSlack(), user2.getSlack(), user3.getSlack(), user4.getSlack());
         final List<User> usersInCommand = Arrays.asList(user1, user2, user3, user4);
         String responseUrl = "http://example.com";
-        mockSuccessUsersServiceFindUsersBySlackNames(usersInCommand);
+        mockSuccessUsersServiceFindUsersBySlackNames(Arrays.asList(user1, user2, user3, user4, userFrom));
         String teamsJsonRequestBody = TestUtils.convertToString(ResourceUtils.resource
-                ("request/requestTeamRepositoryActivateTeamIfUsersNotInActiveTeamAndFromUserInText.json"));
+                ("request/requestTeamRepositoryActivateTeamIfUsersNotInActiveTeamAndFromUserNotInText.json"));
         String teamsJsonResponseBody = TestUtils.convertToString(ResourceUtils.resource
                 ("response/responseTeamRepositoryActivateTeamIfUsersInActiveTeamThrowsException.json"));
         mockFailTeamsServiceReturnsTeamException(HttpMethod.POST, teamsActivateTeamUrl, teamsJsonRequestBody,
@@ -285,7 +327,7 @@ public class TeamsSlackBotIntegrationTest {
             throws Exception {
         final String commandText = String.format("%s %s %s %s",
                 user1.getSlack(), user2.getSlack(), user3.getSlack(), user4.getSlack());
-        final List<User> usersInCommand = Arrays.asList(user1, user2, user3, user4);
+        final List<User> usersInCommand = Arrays.asList(user1, user2, user3, user4, userFrom);
         String responseUrl = "http://example.com";
         mockFailUsersServiceFindUsersBySlackNamesReturnsError(usersInCommand);
         mockSlackResponseUrl(responseUrl, new RichMessage("very big and scare error"));
@@ -300,13 +342,13 @@ public class TeamsSlackBotIntegrationTest {
     @Test
     public void onReceiveSlashCommandDeactivateTeamWhenAllCorrectShouldReturnOkMessage() throws Exception {
         final String commandText = user1.getSlack();
-        final List<User> usersInCommand = Collections.singletonList(user1);
+        final List<User> usersInCommand = Arrays.asList(user1, userFrom);
         String responseUrl = "http://example.com";
         mockSuccessUsersServiceFindUsersBySlackNames(usersInCommand);
         List<User> users = Arrays.asList(user1, user2, user3, user4);
         Team deactivatedTeam = new Team(users.stream().map(User::getUuid).collect(Collectors.toSet()));
-        mockSuccessTeamsServiceReturnsTeam(HttpMethod.PUT, teamsDeactivateTeamUrl + "/" + user1.getUuid(), "",
-                deactivatedTeam);
+        mockSuccessTeamsServiceReturnsTeam(HttpMethod.PUT, teamsDeactivateTeamUrl,
+                deactivateTeamRequestBody(userFrom, user1), deactivatedTeam);
         mockSuccessUsersServiceFindUsersByUuids(users);
         mockSlackResponseUrl(responseUrl, new RichMessage(
                 String.format(DEACTIVATE_TEAM_DELAYED_MESSAGE,
@@ -339,13 +381,13 @@ public class TeamsSlackBotIntegrationTest {
     public void onReceiveSlashCommandDeactivateTeamWhenTeamsServiceReturnErrorShouldReturnErrorMessage() throws
             Exception {
         final String commandText = user1.getSlack();
-        final List<User> usersInCommand = Collections.singletonList(user1);
+        final List<User> usersInCommand = Arrays.asList(user1, userFrom);
         String responseUrl = "http://example.com";
         mockSuccessUsersServiceFindUsersBySlackNames(usersInCommand);
         String teamsJsonResponseBody = TestUtils.convertToString(ResourceUtils.resource
                 ("response/responseTeamRepositoryGetAndDeactivateTeamIfUsersNotInActiveTeamThrowsException.json"));
-        mockFailTeamsServiceReturnsTeamException(HttpMethod.PUT, teamsDeactivateTeamUrl + "/" + user1.getUuid(), "",
-                teamsJsonResponseBody);
+        mockFailTeamsServiceReturnsTeamException(HttpMethod.PUT, teamsDeactivateTeamUrl,
+                deactivateTeamRequestBody(userFrom, user1), teamsJsonResponseBody);
         mockSlackResponseUrl(responseUrl,
                 new RichMessage("You cannot get/deactivate team if the user not a member of any " +
                         "team!"));
@@ -360,14 +402,14 @@ public class TeamsSlackBotIntegrationTest {
     @Test
     public void onReceiveSlashCommandGetMyTeamWhenAllCorrectShouldReturnOkMessage() throws Exception {
         final String from = userFrom.getSlack();
-        final List<User> usersInFromUser = Collections.singletonList(user1);
+        final List<User> usersInFromUser = Collections.singletonList(userFrom);
         String responseUrl = "http://example.com";
         mockSuccessUsersServiceFindUsersBySlackNames(usersInFromUser);
-        List<User> users = Arrays.asList(user1, user2, user3, user4);
+        List<User> users = Arrays.asList(userFrom, user2, user3, user4);
         String slackNames = users.stream()
-                .map(User::getSlack).collect(Collectors.joining(" "));
+                .map(User::getSlack).sorted().collect(Collectors.joining(" "));
         Team team = new Team(users.stream().map(User::getUuid).collect(Collectors.toSet()));
-        mockSuccessTeamsServiceReturnsTeam(HttpMethod.GET, teamsGetTeamUrl + "/" + user1.getUuid(), "", team);
+        mockSuccessTeamsServiceReturnsTeam(HttpMethod.GET, teamsGetTeamUrl + "/" + userFrom.getUuid(), "", team);
         mockSuccessUsersServiceFindUsersByUuids(users);
         mockSlackResponseUrl(responseUrl, new RichMessage(
                 String.format(GET_MY_TEAM_DELAYED_MESSAGE,
@@ -384,11 +426,11 @@ public class TeamsSlackBotIntegrationTest {
     public void onReceiveSlashCommandGetMyTeamWhenUserServiceReturnErrorShouldReturnErrorMessage()
             throws Exception {
         final String from = userFrom.getSlack();
-        final List<User> usersInFromUser = Collections.singletonList(user1);
+        final List<User> usersInFromUser = Collections.singletonList(userFrom);
         String responseUrl = "http://example.com";
-        mockSuccessUsersServiceFindUsersBySlackNames(usersInFromUser);
+        mockFailUsersServiceFindUsersBySlackNamesReturnsError(usersInFromUser);
         mockSlackResponseUrl(responseUrl,
-                new RichMessage("Oops something went wrong :("));
+                new RichMessage("very big and scare error"));
 
         mvc.perform(MockMvcRequestBuilders.post(SlackUrlUtils.getUrlTemplate(teamsSlackbotGetMyTeamUrl),
                 SlackUrlUtils.getUriVars("slashCommandToken", "/command", from, responseUrl))
@@ -402,9 +444,9 @@ public class TeamsSlackBotIntegrationTest {
     onReceiveSlashCommandGetMyTeamWhenUserServiceFindUsersBySlackNamesReturnsWrongUsersCountShouldReturnErrorMessage()
             throws Exception {
         final String from = userFrom.getSlack();
-        final List<User> usersInFromUser = Collections.singletonList(user1);
+        final List<User> usersInFromUser = Collections.singletonList(userFrom);
         String responseUrl = "http://example.com";
-        mockSuccessUsersServiceFindUsersBySlackNames(usersInFromUser);
+        mockSuccessUsersServiceFindUsersBySlackNames(usersInFromUser, Collections.emptyList());
         mockSlackResponseUrl(responseUrl,
                 new RichMessage("Users count is not equals in request and response from Users Service"));
 
@@ -419,12 +461,12 @@ public class TeamsSlackBotIntegrationTest {
     public void onReceiveSlashCommandGetMyTeamWhenTeamsServiceReturnErrorShouldReturnErrorMessage() throws
             Exception {
         final String from = userFrom.getSlack();
-        final List<User> usersInFromUser = Collections.singletonList(user1);
+        final List<User> usersInFromUser = Collections.singletonList(userFrom);
         String responseUrl = "http://example.com";
         mockSuccessUsersServiceFindUsersBySlackNames(usersInFromUser);
         String teamsJsonResponseBody = TestUtils.convertToString(ResourceUtils.resource
                 ("response/responseTeamRepositoryGetAndDeactivateTeamIfUsersNotInActiveTeamThrowsException.json"));
-        mockFailTeamsServiceReturnsTeamException(HttpMethod.GET, teamsGetTeamUrl + "/" + user1.getUuid(), "",
+        mockFailTeamsServiceReturnsTeamException(HttpMethod.GET, teamsGetTeamUrl + "/" + userFrom.getUuid(), "",
                 teamsJsonResponseBody);
         mockSlackResponseUrl(responseUrl,
                 new RichMessage("You cannot get/deactivate team if the user not a member of any team!"));
@@ -530,6 +572,11 @@ public class TeamsSlackBotIntegrationTest {
     }
 
     private void mockSuccessUsersServiceFindUsersBySlackNames(List<User> users) throws JsonProcessingException {
+        mockSuccessUsersServiceFindUsersBySlackNames(users, users);
+    }
+
+    private void mockSuccessUsersServiceFindUsersBySlackNames(List<User> users, List<User> foundUsers)
+            throws JsonProcessingException {
         List<String> slackNames = users.stream().map(User::getSlack).collect(Collectors.toList());
 
         ObjectMapper mapper = new ObjectMapper();
@@ -538,7 +585,11 @@ public class TeamsSlackBotIntegrationTest {
                 .andExpect(method(HttpMethod.POST))
                 .andExpect(MockRestRequestMatchers.content().contentType(APPLICATION_JSON_UTF8))
                 .andExpect(MockRestRequestMatchers.content().string(String.format("{\"slackNames\":%s}", mapper.writeValueAsString(slackNames))))
-                .andRespond(withSuccess(mapper.writeValueAsString(users), MediaType.APPLICATION_JSON_UTF8));
+                .andRespond(withSuccess(mapper.writeValueAsString(foundUsers), MediaType.APPLICATION_JSON_UTF8));
+    }
+
+    private static String deactivateTeamRequestBody(User from, User member) {
+        return String.format("{\"from\":\"%s\",\"uuid\":\"%s\"}", from.getUuid(), member.getUuid());
     }
 
     private void mockSuccessUsersServiceFindUsersByUuids(List<User> users) throws JsonProcessingException {
@@ -581,7 +632,7 @@ public class TeamsSlackBotIntegrationTest {
 
     private void mockSlackResponseUrl(String expectedURI, RichMessage delayedMessage) {
         ObjectMapper mapper = new ObjectMapper();
-        mockServer.expect(requestTo(expectedURI))
+        slackMockServer.expect(requestTo(expectedURI))
                 .andExpect(method(HttpMethod.POST))
                 .andExpect(request -> assertThat(request.getHeaders().getContentType().toString(),
                         containsString("application/json")))
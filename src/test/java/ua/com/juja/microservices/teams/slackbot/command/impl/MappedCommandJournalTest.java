@@ -0,0 +1,156 @@
+package ua.com.juja.microservices.teams.slackbot.command.impl;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ua.com.juja.microservices.teams.slackbot.command.AcceptedCommand;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MappedCommandJournalTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+    private static final long URL_LIFETIME_SECONDS = 1800;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String directory;
+
+    @Before
+    public void setup() {
+        directory = folder.getRoot().getAbsolutePath();
+    }
+
+    @Test
+    public void takeUnfinishedAfterRestartShouldReturnNotCompletedCommandsInOrder() throws Exception {
+        long now = System.currentTimeMillis();
+        AcceptedCommand first = command("http://example.com/1", now - 2);
+        AcceptedCommand second = command("http://example.com/2", now - 1);
+        AcceptedCommand third = command("http://example.com/3", now);
+        MappedCommandJournal journal = createJournal();
+        journal.append(first);
+        journal.append(second);
+        journal.append(third);
+        journal.complete(second.getResponseUrl());
+
+        MappedCommandJournal restarted = createJournal();
+
+        assertThat(restarted.takeUnfinished(), is(Arrays.asList(first, third)));
+        assertThat(restarted.takeUnfinished(), is(Collections.emptyList()));
+    }
+
+    @Test
+    public void takeUnfinishedAfterRestartShouldSkipCommandsWithExpiredResponseUrl() throws Exception {
+        long expiredAt = System.currentTimeMillis() - URL_LIFETIME_SECONDS * 1000;
+        AcceptedCommand expired = command("http://example.com/1", expiredAt);
+        AcceptedCommand valid = command("http://example.com/2", System.currentTimeMillis());
+        MappedCommandJournal journal = createJournal();
+        journal.append(expired);
+        journal.append(valid);
+
+        MappedCommandJournal restarted = createJournal();
+
+        assertThat(restarted.takeUnfinished(), is(Collections.singletonList(valid)));
+    }
+
+    @Test
+    public void appendWhenSegmentIsFullShouldRotateAndKeepOnlyUnfinishedCommands() throws Exception {
+        MappedCommandJournal journal = createJournal();
+        AcceptedCommand unfinished = command("http://example.com/unfinished", System.currentTimeMillis());
+        journal.append(unfinished);
+        for (int i = 0; i < 100; i++) {
+            String responseUrl = "http://example.com/" + i;
+            journal.append(command(responseUrl, System.currentTimeMillis()));
+            journal.complete(responseUrl);
+        }
+
+        assertThat(segmentFiles().length, is(1));
+        MappedCommandJournal restarted = createJournal();
+
+        assertThat(restarted.takeUnfinished(), is(Collections.singletonList(unfinished)));
+    }
+
+    @Test
+    public void appendAndCompleteFromManyThreadsWhileRotatingShouldNotLeaveCompletedCommands() throws Exception {
+        MappedCommandJournal journal = createJournal();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] workers = new Future<?>[4];
+            for (int worker = 0; worker < workers.length; worker++) {
+                String prefix = "http://example.com/" + worker + "/";
+                workers[worker] = executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        journal.append(command(prefix + i, System.currentTimeMillis()));
+                        journal.complete(prefix + i);
+                    }
+                });
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(segmentFiles().length, is(1));
+        MappedCommandJournal restarted = createJournal();
+
+        assertThat(restarted.takeUnfinished(), is(Collections.emptyList()));
+    }
+
+    @Test
+    public void takeUnfinishedWhenLastRecordIsTornShouldIgnoreIt() throws Exception {
+        AcceptedCommand first = command("http://example.com/1", System.currentTimeMillis());
+        AcceptedCommand second = command("http://example.com/2", System.currentTimeMillis());
+        MappedCommandJournal journal = createJournal();
+        journal.append(first);
+        journal.append(second);
+        corruptLastByteOfRecords(segmentFiles()[0]);
+
+        MappedCommandJournal restarted = createJournal();
+
+        assertThat(restarted.takeUnfinished(), is(Collections.singletonList(first)));
+    }
+
+    private MappedCommandJournal createJournal() throws IOException {
+        return new MappedCommandJournal(directory, SEGMENT_SIZE, URL_LIFETIME_SECONDS);
+    }
+
+    private File[] segmentFiles() {
+        return folder.getRoot().listFiles((dir, name) -> name.endsWith(".journal"));
+    }
+
+    private static AcceptedCommand command(String responseUrl, long acceptedAt) {
+        return new AcceptedCommand("activateTeam", "@slack-from", "@slack1 @slack2 @slack3 @slack4", responseUrl,
+                acceptedAt);
+    }
+
+    private static void corruptLastByteOfRecords(File segment) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            long position = file.length() - 1;
+            while (position > 0 && readByte(file, position) == 0) {
+                position--;
+            }
+            int lastByte = readByte(file, position);
+            file.seek(position);
+            file.writeByte(lastByte ^ 0xFF);
+        }
+    }
+
+    private static int readByte(RandomAccessFile file, long position) throws IOException {
+        file.seek(position);
+        return file.readUnsignedByte();
+    }
+}
@@ -0,0 +1,117 @@
+package ua.com.juja.microservices.teams.slackbot.command.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ExceptionsHandler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+public class ThreadPoolCommandExecutorTest {
+
+    private ExceptionsHandler exceptionsHandler;
+    private ThreadPoolCommandExecutor commandExecutor;
+
+    @Before
+    public void setup() {
+        exceptionsHandler = mock(ExceptionsHandler.class);
+        commandExecutor = new ThreadPoolCommandExecutor(exceptionsHandler, 1, 1, 60);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        commandExecutor.destroy();
+    }
+
+    @Test
+    public void executeWhenWorkerAndQueueAreBusyShouldRejectCommand() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        assertTrue(commandExecutor.execute("url1", () -> {
+            started.countDown();
+            awaitQuietly(release);
+        }));
+        started.await(1, TimeUnit.SECONDS);
+        assertTrue(commandExecutor.execute("url2", () -> {
+        }));
+        assertFalse(commandExecutor.execute("url3", () -> {
+        }));
+
+        assertThat(metricValue("teams.slackbot.executor.queue.depth"), is(1L));
+        assertThat(metricValue("teams.slackbot.executor.rejected"), is(1L));
+        release.countDown();
+    }
+
+    @Test
+    public void executeWhenCommandThrowsExceptionShouldPassItToExceptionsHandler() throws Exception {
+        RuntimeException exception = new RuntimeException("delayed");
+
+        commandExecutor.execute("url", () -> {
+            throw exception;
+        });
+
+        verify(exceptionsHandler, timeout(1000)).handleDelayedException(exception);
+        verify(exceptionsHandler).setResponseUrl("url");
+        verifyNoMoreInteractions(exceptionsHandler);
+    }
+
+    @Test
+    public void awaitDrainedShouldWaitUntilQueuedCommandsComplete() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch completed = new CountDownLatch(2);
+
+        commandExecutor.execute("url1", () -> {
+            awaitQuietly(release);
+            completed.countDown();
+        });
+        commandExecutor.execute("url2", completed::countDown);
+
+        assertFalse(commandExecutor.awaitDrained(50, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(commandExecutor.awaitDrained(1, TimeUnit.SECONDS));
+        assertThat(completed.getCount(), is(0L));
+    }
+
+    @Test
+    public void awaitDrainedWhenCommandIsRejectedShouldNotWaitForIt() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        commandExecutor.execute("url1", () -> awaitQuietly(release));
+        commandExecutor.execute("url2", () -> {
+        });
+        assertFalse(commandExecutor.execute("url3", () -> {
+        }));
+
+        release.countDown();
+
+        assertTrue(commandExecutor.awaitDrained(1, TimeUnit.SECONDS));
+    }
+
+    private long metricValue(String name) {
+        return commandExecutor.metrics().stream()
+                .filter(metric -> metric.getName().equals(name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new)
+                .longValue();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
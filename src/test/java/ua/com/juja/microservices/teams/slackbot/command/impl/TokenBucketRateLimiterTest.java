@@ -0,0 +1,74 @@
+package ua.com.juja.microservices.teams.slackbot.command.impl;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketRateLimiterTest {
+
+    private TokenBucketRateLimiter rateLimiter;
+
+    @Test
+    public void tryAcquireWhenUserExceedsLimitShouldRejectOnlyThisUser() {
+        rateLimiter = new TokenBucketRateLimiter(2, 1, 0, 1, 100);
+
+        assertTrue(rateLimiter.tryAcquire("getTeam", "@slack1"));
+        assertTrue(rateLimiter.tryAcquire("getMyTeam", "@slack1"));
+        assertFalse(rateLimiter.tryAcquire("getTeam", "@slack1"));
+        assertTrue(rateLimiter.tryAcquire("getTeam", "@slack2"));
+
+        assertThat(metricValue("teams.slackbot.rateLimit.allowed"), is(3L));
+        assertThat(metricValue("teams.slackbot.rateLimit.rejected.user"), is(1L));
+        assertThat(metricValue("teams.slackbot.rateLimit.users"), is(2L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWhenUserLimitIsOnWithoutRefillShouldThrowException() {
+        new TokenBucketRateLimiter(2, 0, 0, 1, 100);
+    }
+
+    @Test
+    public void tryAcquireWhenLimitsAreOffShouldIgnoreTheirRates() {
+        rateLimiter = new TokenBucketRateLimiter(0, 0, 0, 0, 100);
+
+        assertTrue(rateLimiter.tryAcquire("getTeam", "@slack1"));
+    }
+
+    @Test
+    public void tryAcquireWhenCommandExceedsLimitShouldRejectItForAllUsers() {
+        rateLimiter = new TokenBucketRateLimiter(0, 1, 2, 1, 100);
+
+        assertTrue(rateLimiter.tryAcquire("getTeam", "@slack1"));
+        assertTrue(rateLimiter.tryAcquire("getTeam", "@slack2"));
+        assertFalse(rateLimiter.tryAcquire("getTeam", "@slack3"));
+        assertTrue(rateLimiter.tryAcquire("getMyTeam", "@slack3"));
+
+        assertThat(metricValue("teams.slackbot.rateLimit.rejected.command"), is(1L));
+        assertThat(metricValue("teams.slackbot.rateLimit.users"), is(0L));
+    }
+
+    @Test
+    public void tryAcquireWhenThereAreTooManyUsersShouldKeepBucketsBounded() {
+        rateLimiter = new TokenBucketRateLimiter(1, 1, 0, 1, 10);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(rateLimiter.tryAcquire("getTeam", "@slack" + i));
+        }
+
+        assertThat(metricValue("teams.slackbot.rateLimit.users"), is(10L));
+        assertThat(metricValue("teams.slackbot.rateLimit.evictions"), is(90L));
+    }
+
+    private long metricValue(String name) {
+        return rateLimiter.metrics().stream()
+                .filter(metric -> metric.getName().equals(name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new)
+                .longValue();
+    }
+}
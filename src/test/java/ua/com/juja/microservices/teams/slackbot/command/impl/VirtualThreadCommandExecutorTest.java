@@ -0,0 +1,53 @@
+package ua.com.juja.microservices.teams.slackbot.command.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ExceptionsHandler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+public class VirtualThreadCommandExecutorTest {
+
+    private VirtualThreadCommandExecutor commandExecutor;
+
+    @Before
+    public void setup() {
+        assumeTrue("Virtual threads require Java 21+", VirtualThreadCommandExecutor.isSupported());
+        commandExecutor = new VirtualThreadCommandExecutor(mock(ExceptionsHandler.class), 2);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (commandExecutor != null) {
+            commandExecutor.destroy();
+        }
+    }
+
+    @Test
+    public void executeWhenMaxInFlightReachedShouldRejectCommand() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        Runnable blockingCommand = () -> {
+            started.countDown();
+            try {
+                release.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        assertTrue(commandExecutor.execute("url1", blockingCommand));
+        assertTrue(commandExecutor.execute("url2", blockingCommand));
+        assertFalse(commandExecutor.execute("url3", blockingCommand));
+
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        release.countDown();
+    }
+}
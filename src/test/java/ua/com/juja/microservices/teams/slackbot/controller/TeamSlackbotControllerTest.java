@@ -1,20 +1,29 @@
 package ua.com.juja.microservices.teams.slackbot.controller;
 
 import me.ramswaroop.jbot.core.slack.models.RichMessage;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
-import org.springframework.web.client.RestTemplate;
+import ua.com.juja.microservices.teams.slackbot.command.AcceptedCommand;
+import ua.com.juja.microservices.teams.slackbot.command.CommandExecutor;
+import ua.com.juja.microservices.teams.slackbot.command.CommandJournal;
+import ua.com.juja.microservices.teams.slackbot.command.RateLimiter;
+import ua.com.juja.microservices.teams.slackbot.command.impl.HistogramStageRecorder;
+import ua.com.juja.microservices.teams.slackbot.command.impl.StagedCommandPipeline;
+import ua.com.juja.microservices.teams.slackbot.command.impl.TeamCommandRegistry;
 import ua.com.juja.microservices.teams.slackbot.exceptions.ExceptionsHandler;
 import ua.com.juja.microservices.teams.slackbot.model.teams.Team;
+import ua.com.juja.microservices.teams.slackbot.service.SlackDeliveryService;
 import ua.com.juja.microservices.teams.slackbot.service.TeamService;
 import ua.com.juja.microservices.utils.SlackUrlUtils;
 
@@ -26,9 +35,14 @@ import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -41,11 +55,16 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  */
 @RunWith(SpringRunner.class)
 @WebMvcTest(TeamSlackbotController.class)
+@Import({StagedCommandPipeline.class, TeamCommandRegistry.class, HistogramStageRecorder.class})
 @TestPropertySource(value = {"classpath:application.properties", "classpath:messages/message.properties"})
 public class TeamSlackbotControllerTest {
 
     @Value("${message.sorry}")
     private String SORRY_MESSAGE;
+    @Value("${message.busy}")
+    private String BUSY_MESSAGE;
+    @Value("${message.rate.limited}")
+    private String RATE_LIMITED_MESSAGE;
     @Value("${message.activate.team.instant}")
     private String ACTIVATE_TEAM_INSTANT_MESSAGE;
     @Value("${message.activate.team.delayed}")
@@ -82,7 +101,28 @@ public class TeamSlackbotControllerTest {
     private ExceptionsHandler exceptionsHandler;
 
     @MockBean
-    private RestTemplate restTemplate;
+    private SlackDeliveryService slackDeliveryService;
+
+    @MockBean
+    private CommandExecutor commandExecutor;
+
+    @MockBean
+    private CommandJournal commandJournal;
+
+    @MockBean
+    private RateLimiter rateLimiter;
+
+    @Inject
+    private TeamSlackbotController controller;
+
+    @Before
+    public void setup() {
+        when(commandExecutor.execute(anyString(), any(Runnable.class))).thenAnswer(invocation -> {
+            ((Runnable) invocation.getArguments()[1]).run();
+            return true;
+        });
+        when(rateLimiter.tryAcquire(anyString(), anyString())).thenReturn(true);
+    }
 
     @Test
     public void onReceiveAllSlashCommandsWhenIncorrectTokenShouldReturnSorryMessage() throws Exception {
@@ -104,8 +144,7 @@ public class TeamSlackbotControllerTest {
                 e.printStackTrace();
             }
         });
-        verify(exceptionsHandler, times(4)).setResponseUrl(responseUrl);
-        verifyNoMoreInteractions(teamService, exceptionsHandler);
+        verifyNoMoreInteractions(teamService, exceptionsHandler, commandJournal);
     }
 
     @Test
@@ -128,8 +167,7 @@ public class TeamSlackbotControllerTest {
                 e.printStackTrace();
             }
         });
-        verify(exceptionsHandler, times(4)).setResponseUrl(responseUrl);
-        verifyNoMoreInteractions(teamService, exceptionsHandler);
+        verifyNoMoreInteractions(teamService, exceptionsHandler, commandJournal);
     }
 
     @Test
@@ -140,7 +178,6 @@ public class TeamSlackbotControllerTest {
         Team activatedTeam = new Team(members);
         String responseUrl = "http://example.com";
         when(teamService.activateTeam(from, commandText)).thenReturn(activatedTeam);
-        when(restTemplate.postForObject(eq(responseUrl), any(RichMessage.class), eq(String.class))).thenReturn("");
 
         mvc.perform(MockMvcRequestBuilders.post(SlackUrlUtils.getUrlTemplate(teamsSlackbotActivateTeamUrl),
                 SlackUrlUtils.getUriVars("slashCommandToken", "/command", commandText, responseUrl))
@@ -149,11 +186,17 @@ public class TeamSlackbotControllerTest {
                 .andExpect(content().string(ACTIVATE_TEAM_INSTANT_MESSAGE));
 
         verify(exceptionsHandler).setResponseUrl(responseUrl);
+        verify(exceptionsHandler).setResponseUrl(eq(responseUrl), anyLong());
+        ArgumentCaptor<AcceptedCommand> commandCaptor = ArgumentCaptor.forClass(AcceptedCommand.class);
+        verify(commandJournal).append(commandCaptor.capture());
+        assertThat(commandCaptor.getValue().getFromUser(), is(from));
+        assertThat(commandCaptor.getValue().getText(), is(commandText));
+        assertThat(commandCaptor.getValue().getResponseUrl(), is(responseUrl));
         verify(teamService).activateTeam(from, commandText);
         ArgumentCaptor<RichMessage> captor = ArgumentCaptor.forClass(RichMessage.class);
-        verify(restTemplate).postForObject(eq(responseUrl), captor.capture(), eq(String.class));
+        verify(slackDeliveryService).deliver(eq(responseUrl), anyLong(), captor.capture());
         assertTrue(captor.getValue().getText().contains(String.format(ACTIVATE_TEAM_DELAYED_MESSAGE, commandText)));
-        verifyNoMoreInteractions(teamService, exceptionsHandler, restTemplate);
+        verifyNoMoreInteractions(teamService, exceptionsHandler, slackDeliveryService);
     }
 
     @Test
@@ -162,7 +205,6 @@ public class TeamSlackbotControllerTest {
         Set<String> slackNames = new LinkedHashSet<>(Arrays.asList("@slack1", "@slack2", "@slack3", "@slack4"));
         String responseUrl = "http://example.com";
         when(teamService.getTeam(commandText)).thenReturn(slackNames);
-        when(restTemplate.postForObject(eq(responseUrl), any(RichMessage.class), eq(String.class))).thenReturn("");
 
         mvc.perform(MockMvcRequestBuilders.post(SlackUrlUtils.getUrlTemplate(teamsSlackbotGetTeamUrl),
                 SlackUrlUtils.getUriVars("slashCommandToken", "/teams",
@@ -172,12 +214,13 @@ public class TeamSlackbotControllerTest {
                 .andExpect(content().string(String.format(GET_TEAM_INSTANT_MESSAGE, "@slack2")));
 
         verify(exceptionsHandler).setResponseUrl(responseUrl);
+        verify(exceptionsHandler).setResponseUrl(eq(responseUrl), anyLong());
         verify(teamService).getTeam(commandText);
         ArgumentCaptor<RichMessage> captor = ArgumentCaptor.forClass(RichMessage.class);
-        verify(restTemplate).postForObject(eq(responseUrl), captor.capture(), eq(String.class));
+        verify(slackDeliveryService).deliver(eq(responseUrl), anyLong(), captor.capture());
         assertTrue(captor.getValue().getText().contains(String.format(GET_TEAM_DELAYED_MESSAGE, commandText,
                 slackNames.stream().collect(Collectors.joining(" ")))));
-        verifyNoMoreInteractions(teamService, exceptionsHandler, restTemplate);
+        verifyNoMoreInteractions(teamService, exceptionsHandler, slackDeliveryService);
     }
 
     @Test
@@ -187,7 +230,6 @@ public class TeamSlackbotControllerTest {
         Set<String> slackNames = new LinkedHashSet<>(Arrays.asList("@slack1", "@slack2", "@slack3", "@slack4"));
         String responseUrl = "http://example.com";
         when(teamService.getTeam(fromUserWithAt)).thenReturn(slackNames);
-        when(restTemplate.postForObject(eq(responseUrl), any(RichMessage.class), eq(String.class))).thenReturn("");
 
         mvc.perform(MockMvcRequestBuilders.post(SlackUrlUtils.getUrlTemplate(teamsSlackbotGetMyTeamUrl),
                 SlackUrlUtils.getUriVars("slashCommandToken", "/myteam",
@@ -197,12 +239,13 @@ public class TeamSlackbotControllerTest {
                 .andExpect(content().string(String.format(GET_MY_TEAM_INSTANT_MESSAGE, fromUserWithAt)));
 
         verify(exceptionsHandler).setResponseUrl(responseUrl);
+        verify(exceptionsHandler).setResponseUrl(eq(responseUrl), anyLong());
         verify(teamService).getTeam(fromUserWithAt);
         ArgumentCaptor<RichMessage> captor = ArgumentCaptor.forClass(RichMessage.class);
-        verify(restTemplate).postForObject(eq(responseUrl), captor.capture(), eq(String.class));
+        verify(slackDeliveryService).deliver(eq(responseUrl), anyLong(), captor.capture());
         assertTrue(captor.getValue().getText().contains(String.format(GET_MY_TEAM_DELAYED_MESSAGE,
                 fromUserWithAt, slackNames.stream().collect(Collectors.joining(" ")))));
-        verifyNoMoreInteractions(teamService, exceptionsHandler, restTemplate);
+        verifyNoMoreInteractions(teamService, exceptionsHandler, slackDeliveryService);
     }
 
     @Test
@@ -212,7 +255,6 @@ public class TeamSlackbotControllerTest {
         Set<String> slackNames = new LinkedHashSet<>(Collections.singletonList("@slack1"));
         String responseUrl = "http://example.com";
         when(teamService.deactivateTeam(from, commandText)).thenReturn(slackNames);
-        when(restTemplate.postForObject(eq(responseUrl), any(RichMessage.class), eq(String.class))).thenReturn("");
 
         mvc.perform(MockMvcRequestBuilders.post(SlackUrlUtils.getUrlTemplate(teamsSlackbotDeactivateTeamUrl),
                 SlackUrlUtils.getUriVars("slashCommandToken", "/teams-deactivate",
@@ -222,11 +264,98 @@ public class TeamSlackbotControllerTest {
                 .andExpect(content().string(String.format(DEACTIVATE_TEAM_INSTANT_MESSAGE, "@slack1")));
 
         verify(exceptionsHandler).setResponseUrl(responseUrl);
+        verify(exceptionsHandler).setResponseUrl(eq(responseUrl), anyLong());
+        verify(teamService).deactivateTeam(from, commandText);
+        ArgumentCaptor<RichMessage> captor = ArgumentCaptor.forClass(RichMessage.class);
+        verify(slackDeliveryService).deliver(eq(responseUrl), anyLong(), captor.capture());
+        assertTrue(captor.getValue().getText().contains(String.format(DEACTIVATE_TEAM_DELAYED_MESSAGE,
+                slackNames.stream().collect(Collectors.joining(" ")))));
+        verifyNoMoreInteractions(teamService, exceptionsHandler, slackDeliveryService);
+    }
+
+    @Test
+    public void onReceiveAllSlashCommandsWhenExecutorIsBusyShouldReturnBusyMessage() throws Exception {
+        final String commandText = "@slack1";
+        String responseUrl = "http://example.com";
+        doReturn(false).when(commandExecutor).execute(anyString(), any(Runnable.class));
+        List<String> urls = Arrays.asList(
+                teamsSlackbotActivateTeamUrl,
+                teamsSlackbotDeactivateTeamUrl,
+                teamsSlackbotGetTeamUrl,
+                teamsSlackbotGetMyTeamUrl);
+        for (String url : urls) {
+            mvc.perform(MockMvcRequestBuilders.post(SlackUrlUtils.getUrlTemplate(url),
+                    SlackUrlUtils.getUriVars("slashCommandToken", "/command", commandText, responseUrl))
+                    .contentType(MediaType.APPLICATION_FORM_URLENCODED))
+                    .andExpect(status().isOk())
+                    .andExpect(content().string(BUSY_MESSAGE));
+        }
+        verify(exceptionsHandler, times(4)).setResponseUrl(responseUrl);
+        verify(commandExecutor, times(4)).execute(eq(responseUrl), any(Runnable.class));
+        verify(commandJournal, times(4)).append(any(AcceptedCommand.class));
+        verify(commandJournal, times(4)).complete(responseUrl);
+        verifyNoMoreInteractions(teamService, exceptionsHandler, slackDeliveryService, commandJournal);
+    }
+
+    @Test
+    public void onReceiveSlashCommandWhenRateLimitIsExceededShouldReturnRateLimitedMessage() throws Exception {
+        final String from = "@slack-from";
+        final String commandText = "@slack1";
+        String responseUrl = "http://example.com";
+        when(rateLimiter.tryAcquire("getTeam", from)).thenReturn(false);
+
+        mvc.perform(MockMvcRequestBuilders.post(SlackUrlUtils.getUrlTemplate(teamsSlackbotGetTeamUrl),
+                SlackUrlUtils.getUriVars("slashCommandToken", "/teams", commandText, responseUrl))
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED))
+                .andExpect(status().isOk())
+                .andExpect(content().string(RATE_LIMITED_MESSAGE));
+
+        verify(rateLimiter).tryAcquire("getTeam", from);
+        verifyNoMoreInteractions(teamService, commandExecutor, commandJournal, slackDeliveryService);
+    }
+
+    @Test
+    public void onReceiveSlashCommandWhenEndpointIsUnknownShouldReturnNotFound() throws Exception {
+        String responseUrl = "http://example.com";
+
+        mvc.perform(MockMvcRequestBuilders.post(SlackUrlUtils.getUrlTemplate("/v1/commands/unknown"),
+                SlackUrlUtils.getUriVars("slashCommandToken", "/unknown", "@slack1", responseUrl))
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED))
+                .andExpect(status().isNotFound());
+
+        verifyNoMoreInteractions(teamService, exceptionsHandler, commandExecutor, commandJournal);
+    }
+
+    @Test
+    public void replayUnfinishedCommandsWhenCommandIsUnknownShouldCompleteIt() throws Exception {
+        String responseUrl = "http://example.com";
+        when(commandJournal.takeUnfinished()).thenReturn(Collections.singletonList(
+                new AcceptedCommand("unknown", "@slack-from", "", responseUrl, System.currentTimeMillis())));
+
+        controller.replayUnfinishedCommands();
+
+        verify(commandJournal).complete(responseUrl);
+        verifyNoMoreInteractions(teamService, commandExecutor, slackDeliveryService);
+    }
+
+    @Test
+    public void replayUnfinishedCommandsShouldExecuteCommandsFromJournal() throws Exception {
+        final String from = "@slack-from";
+        final String commandText = "@slack1";
+        Set<String> slackNames = new LinkedHashSet<>(Collections.singletonList("@slack1"));
+        String responseUrl = "http://example.com";
+        long acceptedAt = System.currentTimeMillis() - 60_000;
+        when(commandJournal.takeUnfinished()).thenReturn(Collections.singletonList(
+                new AcceptedCommand("deactivateTeam", from, commandText, responseUrl, acceptedAt)));
+        when(teamService.deactivateTeam(from, commandText)).thenReturn(slackNames);
+
+        controller.replayUnfinishedCommands();
+
         verify(teamService).deactivateTeam(from, commandText);
         ArgumentCaptor<RichMessage> captor = ArgumentCaptor.forClass(RichMessage.class);
-        verify(restTemplate).postForObject(eq(responseUrl), captor.capture(), eq(String.class));
+        verify(slackDeliveryService).deliver(eq(responseUrl), eq(acceptedAt), captor.capture());
         assertTrue(captor.getValue().getText().contains(String.format(DEACTIVATE_TEAM_DELAYED_MESSAGE,
                 slackNames.stream().collect(Collectors.joining(" ")))));
-        verifyNoMoreInteractions(teamService, exceptionsHandler, restTemplate);
+        verifyNoMoreInteractions(teamService, slackDeliveryService);
     }
-}
\ No newline at end of file
+}
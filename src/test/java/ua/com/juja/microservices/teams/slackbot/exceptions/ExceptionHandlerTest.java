@@ -9,15 +9,24 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
+import ua.com.juja.microservices.teams.slackbot.command.CommandJournal;
+import ua.com.juja.microservices.teams.slackbot.command.impl.HistogramStageRecorder;
+import ua.com.juja.microservices.teams.slackbot.command.impl.StagedCommandPipeline;
+import ua.com.juja.microservices.teams.slackbot.command.impl.TeamCommandRegistry;
+import ua.com.juja.microservices.teams.slackbot.command.impl.TokenBucketRateLimiter;
+import ua.com.juja.microservices.teams.slackbot.command.impl.ThreadPoolCommandExecutor;
 import ua.com.juja.microservices.teams.slackbot.controller.TeamSlackbotController;
+import ua.com.juja.microservices.teams.slackbot.repository.SlackRepository;
 import ua.com.juja.microservices.teams.slackbot.service.TeamService;
 import ua.com.juja.microservices.teams.slackbot.service.UserService;
+import ua.com.juja.microservices.teams.slackbot.service.impl.SlackDeliveryServiceImpl;
 import ua.com.juja.microservices.utils.SlackUrlUtils;
 
 import javax.inject.Inject;
@@ -27,6 +36,7 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -38,9 +48,13 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  */
 @RunWith(SpringRunner.class)
 @WebMvcTest(TeamSlackbotController.class)
+@Import({ThreadPoolCommandExecutor.class, SlackDeliveryServiceImpl.class, StagedCommandPipeline.class,
+        TeamCommandRegistry.class, HistogramStageRecorder.class, TokenBucketRateLimiter.class})
+@TestPropertySource(properties = "teams.slackbot.delivery.maxPostsPerUrl=1000")
 public class ExceptionHandlerTest {
 
     private final static String ACTIVATE_TEAM_MESSAGE = "Thanks, Activate Team job started!";
+    private final static int DELAYED_RESPONSE_TIMEOUT = 1000;
 
     @Value("${teams.slackbot.endpoint.activateTeam}")
     private String teamsSlackbotActivateTeamUrl;
@@ -49,9 +63,11 @@ public class ExceptionHandlerTest {
     @MockBean
     private TeamService teamService;
     @MockBean
-    private RestTemplate restTemplate;
+    private SlackRepository slackRepository;
     @MockBean
     private UserService userService;
+    @MockBean
+    private CommandJournal commandJournal;
 
     @Before
     public void setup() {
@@ -75,7 +91,7 @@ public class ExceptionHandlerTest {
 
         TeamExchangeException exception = new TeamExchangeException(apiError, new RuntimeException("exception"));
         when(teamService.activateTeam(from, activateTeamCommandText)).thenThrow(exception);
-        when(restTemplate.postForObject(eq(responseUrl), any(RichMessage.class), eq(String.class))).thenReturn("");
+        when(slackRepository.sendRichMessage(eq(responseUrl), any(RichMessage.class))).thenReturn("");
         when(userService.replaceUuidsBySlackNamesInExceptionMessage(messageWithUuids)).thenReturn(messageWithSlackNames);
 
         mvc.perform(MockMvcRequestBuilders.post(SlackUrlUtils.getUrlTemplate(teamsSlackbotActivateTeamUrl),
@@ -85,12 +101,12 @@ public class ExceptionHandlerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().string(ACTIVATE_TEAM_MESSAGE));
 
-        verify(teamService).activateTeam(from, activateTeamCommandText);
-        verify(userService).replaceUuidsBySlackNamesInExceptionMessage(messageWithUuids);
+        verify(teamService, timeout(DELAYED_RESPONSE_TIMEOUT)).activateTeam(from, activateTeamCommandText);
+        verify(userService, timeout(DELAYED_RESPONSE_TIMEOUT)).replaceUuidsBySlackNamesInExceptionMessage(messageWithUuids);
         ArgumentCaptor<RichMessage> captor = ArgumentCaptor.forClass(RichMessage.class);
-        verify(restTemplate).postForObject(eq(responseUrl), captor.capture(), eq(String.class));
+        verify(slackRepository, timeout(DELAYED_RESPONSE_TIMEOUT)).sendRichMessage(eq(responseUrl), captor.capture());
         assertTrue(captor.getValue().getText().contains(messageWithSlackNames));
-        verifyNoMoreInteractions(teamService, restTemplate, userService);
+        verifyNoMoreInteractions(teamService, slackRepository, userService);
     }
 
     @Test
@@ -107,7 +123,7 @@ public class ExceptionHandlerTest {
         );
         UserExchangeException exception = new UserExchangeException(apiError, new RuntimeException("exception"));
         when(teamService.activateTeam(from, activateTeamCommandText)).thenThrow(exception);
-        when(restTemplate.postForObject(eq(responseUrl), any(RichMessage.class), eq(String.class))).thenReturn("");
+        when(slackRepository.sendRichMessage(eq(responseUrl), any(RichMessage.class))).thenReturn("");
 
         mvc.perform(MockMvcRequestBuilders.post(SlackUrlUtils.getUrlTemplate(teamsSlackbotActivateTeamUrl),
                 SlackUrlUtils.getUriVars("slashCommandToken", "/teams-activate", activateTeamCommandText,
@@ -116,11 +132,11 @@ public class ExceptionHandlerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().string(ACTIVATE_TEAM_MESSAGE));
 
-        verify(teamService).activateTeam(from, activateTeamCommandText);
+        verify(teamService, timeout(DELAYED_RESPONSE_TIMEOUT)).activateTeam(from, activateTeamCommandText);
         ArgumentCaptor<RichMessage> captor = ArgumentCaptor.forClass(RichMessage.class);
-        verify(restTemplate).postForObject(eq(responseUrl), captor.capture(), eq(String.class));
+        verify(slackRepository, timeout(DELAYED_RESPONSE_TIMEOUT)).sendRichMessage(eq(responseUrl), captor.capture());
         assertTrue(captor.getValue().getText().contains(apiError.getExceptionMessage()));
-        verifyNoMoreInteractions(teamService, restTemplate);
+        verifyNoMoreInteractions(teamService, slackRepository);
     }
 
     @Test
@@ -130,7 +146,7 @@ public class ExceptionHandlerTest {
         final String responseUrl = "example.com";
         WrongCommandFormatException exception = new WrongCommandFormatException("wrong command");
         when(teamService.activateTeam(from, activateTeamCommandText)).thenThrow(exception);
-        when(restTemplate.postForObject(eq(responseUrl), any(RichMessage.class), eq(String.class))).thenReturn("");
+        when(slackRepository.sendRichMessage(eq(responseUrl), any(RichMessage.class))).thenReturn("");
 
         mvc.perform(MockMvcRequestBuilders.post(SlackUrlUtils.getUrlTemplate(teamsSlackbotActivateTeamUrl),
                 SlackUrlUtils.getUriVars("slashCommandToken", "/teams-activate", activateTeamCommandText,
@@ -139,11 +155,11 @@ public class ExceptionHandlerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().string(ACTIVATE_TEAM_MESSAGE));
 
-        verify(teamService).activateTeam(from, activateTeamCommandText);
+        verify(teamService, timeout(DELAYED_RESPONSE_TIMEOUT)).activateTeam(from, activateTeamCommandText);
         ArgumentCaptor<RichMessage> captor = ArgumentCaptor.forClass(RichMessage.class);
-        verify(restTemplate).postForObject(eq(responseUrl), captor.capture(), eq(String.class));
+        verify(slackRepository, timeout(DELAYED_RESPONSE_TIMEOUT)).sendRichMessage(eq(responseUrl), captor.capture());
         assertTrue(captor.getValue().getText().contains("wrong command"));
-        verifyNoMoreInteractions(teamService, restTemplate);
+        verifyNoMoreInteractions(teamService, slackRepository);
     }
 
     @Test
@@ -153,7 +169,7 @@ public class ExceptionHandlerTest {
         final String responseUrl = "example.com";
         ResourceAccessException exception = new ResourceAccessException("Some service unavailable");
         when(teamService.activateTeam(from, activateTeamCommandText)).thenThrow(exception);
-        when(restTemplate.postForObject(eq(responseUrl), any(RichMessage.class), eq(String.class))).thenReturn("");
+        when(slackRepository.sendRichMessage(eq(responseUrl), any(RichMessage.class))).thenReturn("");
 
         mvc.perform(MockMvcRequestBuilders.post(SlackUrlUtils.getUrlTemplate(teamsSlackbotActivateTeamUrl),
                 SlackUrlUtils.getUriVars("slashCommandToken", "/teams-activate", activateTeamCommandText,
@@ -162,11 +178,80 @@ public class ExceptionHandlerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().string(ACTIVATE_TEAM_MESSAGE));
 
-        verify(teamService).activateTeam(from, activateTeamCommandText);
+        verify(teamService, timeout(DELAYED_RESPONSE_TIMEOUT)).activateTeam(from, activateTeamCommandText);
         ArgumentCaptor<RichMessage> captor = ArgumentCaptor.forClass(RichMessage.class);
-        verify(restTemplate).postForObject(eq(responseUrl), captor.capture(), eq(String.class));
+        verify(slackRepository, timeout(DELAYED_RESPONSE_TIMEOUT)).sendRichMessage(eq(responseUrl), captor.capture());
         assertTrue(captor.getValue().getText().contains("Some service unavailable"));
-        verifyNoMoreInteractions(teamService, restTemplate);
+        verifyNoMoreInteractions(teamService, slackRepository);
+    }
+
+    @Test
+    public void handleServiceBusyException() throws Exception {
+        final String from = "@slack-from";
+        final String activateTeamCommandText = "@a @b @c @d";
+        final String responseUrl = "example.com";
+        ServiceBusyException exception = new ServiceBusyException("Teams service is overloaded");
+        when(teamService.activateTeam(from, activateTeamCommandText)).thenThrow(exception);
+        when(slackRepository.sendRichMessage(eq(responseUrl), any(RichMessage.class))).thenReturn("");
+
+        mvc.perform(MockMvcRequestBuilders.post(SlackUrlUtils.getUrlTemplate(teamsSlackbotActivateTeamUrl),
+                SlackUrlUtils.getUriVars("slashCommandToken", "/teams-activate", activateTeamCommandText,
+                        "example.com"))
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED))
+                .andExpect(status().isOk())
+                .andExpect(content().string(ACTIVATE_TEAM_MESSAGE));
+
+        verify(teamService, timeout(DELAYED_RESPONSE_TIMEOUT)).activateTeam(from, activateTeamCommandText);
+        ArgumentCaptor<RichMessage> captor = ArgumentCaptor.forClass(RichMessage.class);
+        verify(slackRepository, timeout(DELAYED_RESPONSE_TIMEOUT)).sendRichMessage(eq(responseUrl), captor.capture());
+        assertTrue(captor.getValue().getText().contains("Teams service is overloaded"));
+        verifyNoMoreInteractions(teamService, slackRepository);
+    }
+
+    @Test
+    public void handleServiceUnavailableException() throws Exception {
+        final String from = "@slack-from";
+        final String activateTeamCommandText = "@a @b @c @d";
+        final String responseUrl = "example.com";
+        ServiceUnavailableException exception = new ServiceUnavailableException("Teams service is unavailable");
+        when(teamService.activateTeam(from, activateTeamCommandText)).thenThrow(exception);
+        when(slackRepository.sendRichMessage(eq(responseUrl), any(RichMessage.class))).thenReturn("");
+
+        mvc.perform(MockMvcRequestBuilders.post(SlackUrlUtils.getUrlTemplate(teamsSlackbotActivateTeamUrl),
+                SlackUrlUtils.getUriVars("slashCommandToken", "/teams-activate", activateTeamCommandText,
+                        "example.com"))
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED))
+                .andExpect(status().isOk())
+                .andExpect(content().string(ACTIVATE_TEAM_MESSAGE));
+
+        verify(teamService, timeout(DELAYED_RESPONSE_TIMEOUT)).activateTeam(from, activateTeamCommandText);
+        ArgumentCaptor<RichMessage> captor = ArgumentCaptor.forClass(RichMessage.class);
+        verify(slackRepository, timeout(DELAYED_RESPONSE_TIMEOUT)).sendRichMessage(eq(responseUrl), captor.capture());
+        assertTrue(captor.getValue().getText().contains("Teams service is unavailable"));
+        verifyNoMoreInteractions(teamService, slackRepository);
+    }
+
+    @Test
+    public void handleDeadlineExceededException() throws Exception {
+        final String from = "@slack-from";
+        final String activateTeamCommandText = "@a @b @c @d";
+        final String responseUrl = "example.com";
+        DeadlineExceededException exception = new DeadlineExceededException("Your command took too long");
+        when(teamService.activateTeam(from, activateTeamCommandText)).thenThrow(exception);
+        when(slackRepository.sendRichMessage(eq(responseUrl), any(RichMessage.class))).thenReturn("");
+
+        mvc.perform(MockMvcRequestBuilders.post(SlackUrlUtils.getUrlTemplate(teamsSlackbotActivateTeamUrl),
+                SlackUrlUtils.getUriVars("slashCommandToken", "/teams-activate", activateTeamCommandText,
+                        "example.com"))
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED))
+                .andExpect(status().isOk())
+                .andExpect(content().string(ACTIVATE_TEAM_MESSAGE));
+
+        verify(teamService, timeout(DELAYED_RESPONSE_TIMEOUT)).activateTeam(from, activateTeamCommandText);
+        ArgumentCaptor<RichMessage> captor = ArgumentCaptor.forClass(RichMessage.class);
+        verify(slackRepository, timeout(DELAYED_RESPONSE_TIMEOUT)).sendRichMessage(eq(responseUrl), captor.capture());
+        assertTrue(captor.getValue().getText().contains("Your command took too long"));
+        verifyNoMoreInteractions(teamService, slackRepository);
     }
 
     @Test
@@ -176,7 +261,7 @@ public class ExceptionHandlerTest {
         final String responseUrl = "example.com";
         RuntimeException exception = new RuntimeException("other command");
         when(teamService.activateTeam(from, activateTeamCommandText)).thenThrow(exception);
-        when(restTemplate.postForObject(eq(responseUrl), any(RichMessage.class), eq(String.class))).thenReturn("");
+        when(slackRepository.sendRichMessage(eq(responseUrl), any(RichMessage.class))).thenReturn("");
 
         mvc.perform(MockMvcRequestBuilders.post(SlackUrlUtils.getUrlTemplate(teamsSlackbotActivateTeamUrl),
                 SlackUrlUtils.getUriVars("slashCommandToken", "/teams-activate", activateTeamCommandText,
@@ -185,11 +270,11 @@ public class ExceptionHandlerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().string(ACTIVATE_TEAM_MESSAGE));
 
-        verify(teamService).activateTeam(from, activateTeamCommandText);
+        verify(teamService, timeout(DELAYED_RESPONSE_TIMEOUT)).activateTeam(from, activateTeamCommandText);
         ArgumentCaptor<RichMessage> captor = ArgumentCaptor.forClass(RichMessage.class);
-        verify(restTemplate).postForObject(eq(responseUrl), captor.capture(), eq(String.class));
+        verify(slackRepository, timeout(DELAYED_RESPONSE_TIMEOUT)).sendRichMessage(eq(responseUrl), captor.capture());
         assertTrue(captor.getValue().getText().contains("other command"));
-        verifyNoMoreInteractions(teamService, restTemplate);
+        verifyNoMoreInteractions(teamService, slackRepository);
     }
 
     @Test
@@ -212,7 +297,7 @@ public class ExceptionHandlerTest {
         TeamExchangeException teamException = new TeamExchangeException(apiError, new RuntimeException("exception"));
         UserExchangeException userException = new UserExchangeException(apiError, new RuntimeException("exception"));
         when(teamService.activateTeam(from, activateTeamCommandText)).thenThrow(teamException);
-        when(restTemplate.postForObject(eq(responseUrl), any(RichMessage.class), eq(String.class))).thenReturn("");
+        when(slackRepository.sendRichMessage(eq(responseUrl), any(RichMessage.class))).thenReturn("");
         when(userService.replaceUuidsBySlackNamesInExceptionMessage(messageWithUuids)).thenThrow(userException);
 
         mvc.perform(MockMvcRequestBuilders.post(SlackUrlUtils.getUrlTemplate(teamsSlackbotActivateTeamUrl),
@@ -222,12 +307,12 @@ public class ExceptionHandlerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().string(ACTIVATE_TEAM_MESSAGE));
 
-        verify(teamService).activateTeam(from, activateTeamCommandText);
-        verify(userService).replaceUuidsBySlackNamesInExceptionMessage(anyString());
+        verify(teamService, timeout(DELAYED_RESPONSE_TIMEOUT)).activateTeam(from, activateTeamCommandText);
+        verify(userService, timeout(DELAYED_RESPONSE_TIMEOUT)).replaceUuidsBySlackNamesInExceptionMessage(anyString());
         ArgumentCaptor<RichMessage> captor = ArgumentCaptor.forClass(RichMessage.class);
-        verify(restTemplate).postForObject(eq(responseUrl), captor.capture(), eq(String.class));
+        verify(slackRepository, timeout(DELAYED_RESPONSE_TIMEOUT)).sendRichMessage(eq(responseUrl), captor.capture());
         assertTrue(captor.getValue().getText().contains(apiError.getClientMessage()));
-        verifyNoMoreInteractions(teamService, restTemplate, userService);
+        verifyNoMoreInteractions(teamService, slackRepository, userService);
     }
 
     @Test
@@ -251,7 +336,7 @@ public class ExceptionHandlerTest {
         Exception exception = new RuntimeException("exception");
         when(teamService.activateTeam(from, activateTeamCommandText)).thenThrow(teamException);
         when(userService.replaceUuidsBySlackNamesInExceptionMessage(messageWithUuids)).thenReturn(messageWithSlackNames);
-        when(restTemplate.postForObject(eq(responseUrl), any(RichMessage.class), eq(String.class))).thenThrow(exception);
+        when(slackRepository.sendRichMessage(eq(responseUrl), any(RichMessage.class))).thenThrow(exception);
 
         mvc.perform(MockMvcRequestBuilders.post(SlackUrlUtils.getUrlTemplate(teamsSlackbotActivateTeamUrl),
                 SlackUrlUtils.getUriVars("slashCommandToken", "/teams-activate", activateTeamCommandText,
@@ -260,11 +345,11 @@ public class ExceptionHandlerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().string(ACTIVATE_TEAM_MESSAGE));
 
-        verify(teamService).activateTeam(from, activateTeamCommandText);
-        verify(userService).replaceUuidsBySlackNamesInExceptionMessage(messageWithUuids);
+        verify(teamService, timeout(DELAYED_RESPONSE_TIMEOUT)).activateTeam(from, activateTeamCommandText);
+        verify(userService, timeout(DELAYED_RESPONSE_TIMEOUT)).replaceUuidsBySlackNamesInExceptionMessage(messageWithUuids);
         ArgumentCaptor<RichMessage> captor = ArgumentCaptor.forClass(RichMessage.class);
-        verify(restTemplate).postForObject(eq(responseUrl), captor.capture(), eq(String.class));
+        verify(slackRepository, timeout(DELAYED_RESPONSE_TIMEOUT)).sendRichMessage(eq(responseUrl), captor.capture());
         assertTrue(captor.getValue().getText().contains(messageWithSlackNames));
-        verifyNoMoreInteractions(teamService, restTemplate, userService);
+        verifyNoMoreInteractions(teamService, slackRepository, userService);
     }
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+package ua.com.juja.microservices.teams.slackbot.filter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ua.com.juja.microservices.teams.slackbot.command.CommandStage;
+import ua.com.juja.microservices.teams.slackbot.command.StageRecorder;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class SlashCommandFilterTest {
+
+    private static final String SORRY_MESSAGE = "sorry";
+
+    private StageRecorder stageRecorder;
+    private SlashCommandFilter filter;
+
+    @Before
+    public void setup() {
+        stageRecorder = mock(StageRecorder.class);
+        filter = new SlashCommandFilter(stageRecorder, "slashCommandToken", SORRY_MESSAGE);
+    }
+
+    @Test
+    public void doFilterWhenRequestIsCorrectShouldPassItToController() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request("slashCommandToken", "@slack-from", "http://example.com"), response, chain);
+
+        assertThat(chain.getRequest(), is(notNullValue()));
+        assertThat(response.getContentAsString(), is(""));
+        assertThat(metricValue("teams.slackbot.filter.accepted"), is(1L));
+        verify(stageRecorder).record(eq(CommandStage.VALIDATE), anyLong());
+    }
+
+    @Test
+    public void doFilterWhenTokenOrParameterIsWrongShouldReturnSorryMessage() throws Exception {
+        MockHttpServletRequest[] requests = {
+                request("wrongToken", "@slack-from", "http://example.com"),
+                request("slashCommandTokenLonger", "@slack-from", "http://example.com"),
+                request(null, "@slack-from", "http://example.com"),
+                request("slashCommandToken", "", "http://example.com"),
+                request("slashCommandToken", "@slack-from", null)};
+
+        for (MockHttpServletRequest request : requests) {
+            MockFilterChain chain = new MockFilterChain();
+            MockHttpServletResponse response = new MockHttpServletResponse();
+
+            filter.doFilter(request, response, chain);
+
+            assertThat(chain.getRequest(), is(nullValue()));
+            assertThat(response.getStatus(), is(200));
+            assertThat(response.getContentAsString(), is(SORRY_MESSAGE));
+        }
+        assertThat(metricValue("teams.slackbot.filter.rejected"), is(5L));
+        verify(stageRecorder, times(5)).record(eq(CommandStage.VALIDATE), anyLong());
+    }
+
+    private static MockHttpServletRequest request(String token, String fromUser, String responseUrl) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/v1/commands/teams");
+        request.setContentType("application/x-www-form-urlencoded");
+        if (token != null) {
+            request.addParameter("token", token);
+        }
+        request.addParameter("user_name", fromUser);
+        if (responseUrl != null) {
+            request.addParameter("response_url", responseUrl);
+        }
+        request.addParameter("text", "@slack1");
+        return request;
+    }
+
+    private long metricValue(String name) {
+        return filter.metrics().stream()
+                .filter(metric -> metric.getName().equals(name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new)
+                .longValue();
+    }
+}
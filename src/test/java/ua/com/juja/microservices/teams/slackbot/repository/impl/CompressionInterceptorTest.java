@@ -0,0 +1,130 @@
+package ua.com.juja.microservices.teams.slackbot.repository.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+import ua.com.juja.microservices.teams.slackbot.model.users.User;
+import ua.com.juja.microservices.teams.slackbot.model.users.UserUuidRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+public class CompressionInterceptorTest {
+
+    private static final String USERS_URL = "http://users/v1/users/usersByUuids";
+    private static final String USERS = "[{\"uuid\":\"uuid1\",\"slack\":\"@slack1\"}," +
+            "{\"uuid\":\"uuid2\",\"slack\":\"@slack2\"}]";
+
+    private CompressionInterceptor interceptor;
+    private RestTemplate restTemplate;
+    private MockRestServiceServer mockServer;
+
+    @Before
+    public void setup() {
+        interceptor = new CompressionInterceptor(16, "http://users");
+        restTemplate = new RestTemplate();
+        restTemplate.setInterceptors(Collections.singletonList(interceptor));
+        mockServer = MockRestServiceServer.bindTo(restTemplate).build();
+    }
+
+    @Test
+    public void gzippedResponseShouldBeDecompressedWhileRead() throws IOException {
+        byte[] compressed = gzip(USERS);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        mockServer.expect(requestTo(USERS_URL))
+                .andExpect(header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andRespond(withSuccess(compressed, MediaType.APPLICATION_JSON_UTF8).headers(headers));
+
+        User[] users = restTemplate.getForObject(USERS_URL, User[].class);
+
+        mockServer.verify();
+        assertThat(users.length, is(2));
+        assertThat(users[1].getSlack(), is("@slack2"));
+        assertThat(metricValue("teams.slackbot.compression.response.compressed"), is(1L));
+        assertThat(metricValue("teams.slackbot.compression.response.wireBytes"), is((long) compressed.length));
+        assertThat(metricValue("teams.slackbot.compression.response.bytes"),
+                is((long) USERS.getBytes(StandardCharsets.UTF_8).length));
+    }
+
+    @Test
+    public void largeRequestToUsersServiceShouldBeGzipped() {
+        UserUuidRequest request = new UserUuidRequest(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4"));
+        mockServer.expect(requestTo(USERS_URL))
+                .andExpect(header(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(sent -> assertThat(gunzip(((MockClientHttpRequest) sent).getBodyAsBytes()),
+                        containsString("\"uuid4\"")))
+                .andRespond(withSuccess(USERS, MediaType.APPLICATION_JSON_UTF8));
+
+        User[] users = restTemplate.postForObject(USERS_URL, request, User[].class);
+
+        mockServer.verify();
+        assertThat(users.length, is(2));
+        assertThat(metricValue("teams.slackbot.compression.request.compressed"), is(1L));
+        assertThat(metricValue("teams.slackbot.compression.response.compressed"), is(0L));
+        assertTrue(metricValue("teams.slackbot.compression.request.bytes") > 16);
+    }
+
+    @Test
+    public void requestToOtherServiceShouldNotBeCompressed() {
+        mockServer.expect(requestTo("http://teams/v1/teams"))
+                .andExpect(sent -> assertThat(sent.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING),
+                        nullValue()))
+                .andRespond(withSuccess(USERS, MediaType.APPLICATION_JSON_UTF8));
+
+        restTemplate.postForObject("http://teams/v1/teams", Collections.singletonMap("members",
+                Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")), String.class);
+
+        mockServer.verify();
+        assertThat(metricValue("teams.slackbot.compression.request.compressed"), is(0L));
+    }
+
+    private long metricValue(String name) {
+        return interceptor.metrics().stream()
+                .filter(metric -> metric.getName().equals(name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new)
+                .longValue();
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = gzip.read(buffer)) != -1) {
+                text.write(buffer, 0, read);
+            }
+        }
+        return new String(text.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
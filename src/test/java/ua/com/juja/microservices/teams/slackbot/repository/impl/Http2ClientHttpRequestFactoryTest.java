@@ -0,0 +1,82 @@
+package ua.com.juja.microservices.teams.slackbot.repository.impl;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+import ua.com.juja.microservices.utils.HttpStubServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class Http2ClientHttpRequestFactoryTest {
+
+    private static final String BODY = "{\"uuid\":\"a-uuid\"}";
+
+    private Http2ClientHttpRequestFactory factory;
+    private HttpStubServer server;
+
+    @After
+    public void tearDown() {
+        factory.destroy();
+        server.close();
+    }
+
+    @Test
+    public void concurrentRequestsShouldBeMultiplexedOverOneConnection() throws Exception {
+        server = new HttpStubServer(true, BODY, 50);
+        factory = new Http2ClientHttpRequestFactory(true, 1, 1, 100, 1000, 5000, 60,
+                new SimpleClientHttpRequestFactory());
+        RestTemplate restTemplate = new RestTemplate(factory);
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        try {
+            List<CompletableFuture<String>> responses = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                responses.add(CompletableFuture.supplyAsync(
+                        () -> restTemplate.getForObject(server.url() + "/v1/teams/users/uuid", String.class),
+                        executor));
+            }
+            for (CompletableFuture<String> response : responses) {
+                assertThat(response.get(5, TimeUnit.SECONDS), is(BODY));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(server.connections(), is(1));
+        assertThat(metricValue("teams.slackbot.http2.streams"), is(10));
+        assertThat(metricValue("teams.slackbot.http2.activeStreams"), is(0));
+        assertThat(metricValue("teams.slackbot.http2.fallbacks"), is(0));
+    }
+
+    @Test
+    public void requestsToHttp1ServiceShouldFallBackToFallbackFactory() {
+        server = new HttpStubServer(false, BODY, 0);
+        factory = new Http2ClientHttpRequestFactory(true, 1, 1, 100, 1000, 5000, 60,
+                new SimpleClientHttpRequestFactory());
+        RestTemplate restTemplate = new RestTemplate(factory);
+
+        assertThat(restTemplate.getForObject(server.url() + "/v1/users", String.class), is(BODY));
+        assertThat(restTemplate.getForObject(server.url() + "/v1/users", String.class), is(BODY));
+
+        assertThat(metricValue("teams.slackbot.http2.fallbacks"), is(2));
+        assertThat(metricValue("teams.slackbot.http2.connections"), is(0));
+    }
+
+    private int metricValue(String name) {
+        return factory.metrics().stream()
+                .filter(metric -> metric.getName().equals(name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new)
+                .intValue();
+    }
+}
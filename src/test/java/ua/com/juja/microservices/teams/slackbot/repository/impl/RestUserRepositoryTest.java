@@ -15,7 +15,9 @@ import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.client.MockRestServiceServer;
 import org.springframework.web.client.RestTemplate;
 import ua.com.juja.microservices.teams.slackbot.exceptions.UserExchangeException;
+import ua.com.juja.microservices.teams.slackbot.model.users.SlackNamesByUuids;
 import ua.com.juja.microservices.teams.slackbot.model.users.User;
+import ua.com.juja.microservices.teams.slackbot.model.users.UuidsBySlackNames;
 import ua.com.juja.microservices.teams.slackbot.repository.UserRepository;
 import ua.com.juja.microservices.utils.TestUtils;
 
@@ -23,7 +25,9 @@ import javax.inject.Inject;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static net.javacrumbs.jsonunit.core.util.ResourceUtils.resource;
 import static org.hamcrest.CoreMatchers.containsString;
@@ -57,6 +61,8 @@ public class RestUserRepositoryTest {
     private String usersFindUsersBySlackNamesUrl;
     @Value("${users.endpoint.usersByUuids}")
     private String usersFindUsersByUuidsUrl;
+    @Value("${users.endpoint.allUsers}")
+    private String usersFindAllUsersUrl;
 
     @BeforeClass
     public static void oneTimeSetup() {
@@ -164,4 +170,59 @@ public class RestUserRepositoryTest {
 
         userRepository.findUsersByUuids(uuids);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void findUuidsBySlackNamesIfUserServerReturnsUsersCorrectly() throws IOException {
+        List<String> slackNames = new ArrayList<>(Arrays.asList("slack1", "@slack2", "slack3", "@slack4"));
+        Map<String, String> expected = new LinkedHashMap<>();
+        Arrays.asList(user1, user2, user3, user4).forEach(user -> expected.put(user.getSlack(), user.getUuid()));
+        String jsonContentRequest = TestUtils.convertToString(ResourceUtils.resource
+                ("request/requestUserRepositoryGetUsersBySlacknames.json"));
+        String jsonContentExpectedResponse = TestUtils.convertToString(
+                resource("response/responseUserRepositoryGetUsersBySlacknames.json"));
+        mockServer.expect(requestTo(usersFindUsersBySlackNamesUrl))
+                .andExpect(method(HttpMethod.POST))
+                .andExpect(content().contentType(APPLICATION_JSON_UTF8))
+                .andExpect(content().string(jsonContentRequest))
+                .andRespond(withSuccess(jsonContentExpectedResponse, MediaType.APPLICATION_JSON_UTF8));
+
+        UuidsBySlackNames actual = userRepository.findUuidsBySlackNames(slackNames);
+
+        assertThat(actual, is(expected));
+        assertThat(new ArrayList<>(actual.keySet()), is(new ArrayList<>(expected.keySet())));
+    }
+
+    @Test
+    public void findSlackNamesByUuidsShouldSkipUnknownFieldsAndKeepFirstUserOfUuid() {
+        List<String> uuids = Arrays.asList(user1.getUuid(), user2.getUuid());
+        String response = "[{\"uuid\":\"uuid1\",\"name\":{\"first\":\"Ivan\"},\"slack\":\"@slack1\"}," +
+                "{\"skype\":[\"skype2\"],\"slack\":\"@slack2\",\"uuid\":\"uuid2\"}," +
+                "{\"uuid\":\"uuid1\",\"slack\":\"@slack-duplicate\"}]";
+        mockServer.expect(requestTo(usersFindUsersByUuidsUrl))
+                .andExpect(method(HttpMethod.POST))
+                .andRespond(withSuccess(response, MediaType.APPLICATION_JSON_UTF8));
+
+        SlackNamesByUuids actual = userRepository.findSlackNamesByUuids(uuids);
+
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put(user1.getUuid(), user1.getSlack());
+        expected.put(user2.getUuid(), user2.getSlack());
+        assertThat(actual, is(expected));
+    }
+
+    @Test
+    public void findAllSlackNamesByUuidsShouldGetAllUsers() {
+        String response = "[{\"uuid\":\"uuid1\",\"slack\":\"@slack1\"},{\"uuid\":\"uuid2\",\"slack\":\"@slack2\"}]";
+        mockServer.expect(requestTo(usersFindAllUsersUrl))
+                .andExpect(method(HttpMethod.GET))
+                .andRespond(withSuccess(response, MediaType.APPLICATION_JSON_UTF8));
+
+        SlackNamesByUuids actual = userRepository.findAllSlackNamesByUuids();
+
+        mockServer.verify();
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put(user1.getUuid(), user1.getSlack());
+        expected.put(user2.getUuid(), user2.getSlack());
+        assertThat(actual, is(expected));
+    }
+}
@@ -0,0 +1,114 @@
+package ua.com.juja.microservices.teams.slackbot.repository.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+import ua.com.juja.microservices.teams.slackbot.model.teams.DeactivateTeamRequest;
+import ua.com.juja.microservices.teams.slackbot.model.teams.Team;
+import ua.com.juja.microservices.teams.slackbot.util.JsonCodec;
+import ua.com.juja.microservices.teams.slackbot.util.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.content;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+public class WireFormatNegotiatorTest {
+
+    private static final String URL = "http://teams/v1/teams";
+    private static final String TEAM = "{\"members\":[\"uuid1\",\"uuid2\",\"uuid3\",\"uuid4\"],\"id\":\"team-id\"}";
+
+    private final JsonCodec jsonCodec = new JsonCodec(false);
+    private final WireFormatNegotiator negotiator = new WireFormatNegotiator("teams", true);
+    private final HttpEntity<DeactivateTeamRequest> request = new HttpEntity<>(
+            new DeactivateTeamRequest("uuid-from", "uuid1"), Utils.setupJsonHttpHeaders());
+    private RestTemplate restTemplate;
+    private MockRestServiceServer mockServer;
+    private byte[] smileTeam;
+
+    @Before
+    public void setup() throws Exception {
+        restTemplate = new RestTemplate(Arrays.asList(jsonCodec.httpMessageConverter(),
+                jsonCodec.smile().httpMessageConverter()));
+        mockServer = MockRestServiceServer.bindTo(restTemplate).build();
+        smileTeam = jsonCodec.smile().writerFor(Team.class).writeValueAsBytes(
+                new Team(new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4"))));
+    }
+
+    @Test
+    public void serviceWhichAnswersInSmileShouldBeSentSmileBodies() {
+        mockServer.expect(requestTo(URL))
+                .andExpect(header(HttpHeaders.ACCEPT, "application/x-jackson-smile, application/json;q=0.9"))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8))
+                .andRespond(withSuccess(smileTeam, JsonCodec.APPLICATION_SMILE));
+        mockServer.expect(requestTo(URL))
+                .andExpect(content().contentType(JsonCodec.APPLICATION_SMILE))
+                .andRespond(withSuccess(TEAM, MediaType.APPLICATION_JSON_UTF8));
+        mockServer.expect(requestTo(URL))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8))
+                .andRespond(withSuccess(TEAM, MediaType.APPLICATION_JSON_UTF8));
+
+        for (int i = 0; i < 3; i++) {
+            Team team = deactivateTeam();
+            assertThat(team.getMembers().size(), is(4));
+        }
+
+        mockServer.verify();
+        assertThat(metricValue("requests.smile"), is(1L));
+        assertThat(metricValue("requests.json"), is(2L));
+        assertThat(metricValue("responses.smile"), is(1L));
+        assertThat(metricValue("smile"), is(0L));
+    }
+
+    @Test
+    public void smileBodyRejectedByServiceShouldBeResentAsJson() {
+        mockServer.expect(requestTo(URL))
+                .andRespond(withSuccess(smileTeam, JsonCodec.APPLICATION_SMILE));
+        mockServer.expect(requestTo(URL))
+                .andExpect(content().contentType(JsonCodec.APPLICATION_SMILE))
+                .andRespond(withStatus(HttpStatus.UNSUPPORTED_MEDIA_TYPE));
+        mockServer.expect(requestTo(URL))
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(content().string(containsString("\"uuid\":\"uuid1\"")))
+                .andRespond(withSuccess(TEAM, MediaType.APPLICATION_JSON_UTF8));
+
+        deactivateTeam();
+        Team team = deactivateTeam();
+
+        mockServer.verify();
+        assertThat(team.getId(), is("team-id"));
+        assertThat(metricValue("fallbacks"), is(1L));
+    }
+
+    private Team deactivateTeam() {
+        return negotiator.exchange(URL, request,
+                entity -> restTemplate.exchange(URL, HttpMethod.PUT, entity, Team.class)).getBody();
+    }
+
+    private long metricValue(String name) {
+        List<Metric<?>> metrics = new ArrayList<>();
+        negotiator.addMetrics(metrics);
+        return metrics.stream()
+                .filter(metric -> metric.getName().equals("teams.slackbot.wireFormat.teams." + name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new)
+                .longValue();
+    }
+}
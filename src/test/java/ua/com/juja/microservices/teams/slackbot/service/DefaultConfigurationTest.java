@@ -0,0 +1,97 @@
+package ua.com.juja.microservices.teams.slackbot.service;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import ua.com.juja.microservices.teams.slackbot.model.teams.ActivateTeamRequest;
+import ua.com.juja.microservices.teams.slackbot.model.teams.Team;
+import ua.com.juja.microservices.teams.slackbot.model.users.User;
+import ua.com.juja.microservices.teams.slackbot.model.users.UuidsBySlackNames;
+import ua.com.juja.microservices.teams.slackbot.repository.TeamRepository;
+import ua.com.juja.microservices.teams.slackbot.repository.UserRepository;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+/**
+ * Services with the shipped user directory, user cache, user batching and idempotency settings,
+ * which the other tests turn off
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class DefaultConfigurationTest {
+
+    @MockBean
+    private TeamRepository teamRepository;
+    @MockBean
+    private UserRepository userRepository;
+    @Inject
+    private TeamService teamService;
+    @Inject
+    private UserService userService;
+
+    @Test
+    public void findUuidsBySlackNamesTwiceShouldLoadUsersOnceThroughBatcherAndThenFromCache() {
+        List<User> users = Arrays.asList(new User("uuid1", "@cached1"), new User("uuid2", "@cached2"));
+        given(userRepository.findUuidsBySlackNames(anyListOf(String.class))).willReturn(uuidsBySlackNames(users));
+        long batchedLookups = metricValue(userService, "teams.slackbot.userBatching.uuidsBySlackNames.lookups");
+
+        UuidsBySlackNames first = userService.findUuidsBySlackNames(Arrays.asList("@cached1", "@cached2"));
+        UuidsBySlackNames second = userService.findUuidsBySlackNames(Arrays.asList("@cached2", "@cached1"));
+
+        assertThat(first, is(uuidsBySlackNames(users)));
+        assertThat(second, is(uuidsBySlackNames(users)));
+        verify(userRepository).findUuidsBySlackNames(Arrays.asList("@cached1", "@cached2"));
+        verifyNoMoreInteractions(userRepository);
+        assertThat(metricValue(userService, "teams.slackbot.userDirectory.hits"), is(0L));
+        assertThat(metricValue(userService, "teams.slackbot.userCache.hits"), is(2L));
+        assertThat(metricValue(userService, "teams.slackbot.userBatching.uuidsBySlackNames.lookups"),
+                is(batchedLookups + 1));
+    }
+
+    @Test
+    public void activateTeamWhenCommandIsRepeatedShouldActivateTeamOnce() {
+        List<User> users = Arrays.asList(new User("uuid-a", "@member-a"), new User("uuid-b", "@member-b"),
+                new User("uuid-c", "@member-c"), new User("uuid-d", "@member-d"), new User("uuid-f", "@from"));
+        given(userRepository.findUuidsBySlackNames(anyListOf(String.class))).willReturn(uuidsBySlackNames(users));
+        Team expected = new Team("uuid-f", new LinkedHashSet<>(Arrays.asList("uuid-a", "uuid-b", "uuid-c",
+                "uuid-d")));
+        given(teamRepository.activateTeam(any(ActivateTeamRequest.class))).willReturn(expected);
+
+        Team first = teamService.activateTeam("@from", "@member-a @member-b @member-c @member-d");
+        Team repeated = teamService.activateTeam("@from", "@member-d @member-c @member-b @member-a");
+
+        assertThat(first, is(expected));
+        assertThat(repeated, is(expected));
+        verify(teamRepository).activateTeam(any(ActivateTeamRequest.class));
+        verify(userRepository).findUuidsBySlackNames(anyListOf(String.class));
+        verifyNoMoreInteractions(teamRepository, userRepository);
+        assertThat(metricValue(teamService, "teams.slackbot.idempotency.activateTeam.hits"), is(1L));
+    }
+
+    private static UuidsBySlackNames uuidsBySlackNames(List<User> users) {
+        UuidsBySlackNames uuids = new UuidsBySlackNames();
+        users.forEach(user -> uuids.put(user.getSlack(), user.getUuid()));
+        return uuids;
+    }
+
+    private static long metricValue(Object service, String name) {
+        return ((PublicMetrics) service).metrics().stream()
+                .filter(metric -> metric.getName().equals(name))
+                .mapToLong(metric -> metric.getValue().longValue())
+                .sum();
+    }
+}
@@ -0,0 +1,187 @@
+package ua.com.juja.microservices.teams.slackbot.service;
+
+import me.ramswaroop.jbot.core.slack.models.RichMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import ua.com.juja.microservices.teams.slackbot.command.CommandJournal;
+import ua.com.juja.microservices.teams.slackbot.command.CommandStage;
+import ua.com.juja.microservices.teams.slackbot.command.StageRecorder;
+import ua.com.juja.microservices.teams.slackbot.repository.SlackRepository;
+import ua.com.juja.microservices.teams.slackbot.service.impl.SlackDeliveryServiceImpl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+public class SlackDeliveryServiceImplTest {
+
+    private static final int DELIVERY_TIMEOUT = 1000;
+    private static final String RESPONSE_URL = "http://example.com";
+
+    private SlackRepository slackRepository;
+    private CommandJournal commandJournal;
+    private StageRecorder stageRecorder;
+    private SlackDeliveryServiceImpl slackDeliveryService;
+
+    @Before
+    public void setup() {
+        slackRepository = mock(SlackRepository.class);
+        commandJournal = mock(CommandJournal.class);
+        stageRecorder = mock(StageRecorder.class);
+        slackDeliveryService = createDeliveryService(5, 1800);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        slackDeliveryService.destroy();
+    }
+
+    @Test
+    public void deliverShouldSendMessagesForTheSameResponseUrlInOrder() throws Exception {
+        List<String> texts = Arrays.asList("first", "second", "third", "fourth");
+        when(slackRepository.sendRichMessage(eq(RESPONSE_URL), any(RichMessage.class)))
+                .thenThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE))
+                .thenReturn("ok");
+
+        texts.forEach(text -> slackDeliveryService.deliver(RESPONSE_URL, System.currentTimeMillis(),
+                new RichMessage(text)));
+
+        ArgumentCaptor<RichMessage> captor = ArgumentCaptor.forClass(RichMessage.class);
+        verify(slackRepository, timeout(DELIVERY_TIMEOUT).times(5)).sendRichMessage(eq(RESPONSE_URL),
+                captor.capture());
+        assertThat(captor.getAllValues().stream().map(RichMessage::getText).collect(Collectors.toList()),
+                is(Arrays.asList("first", "first", "second", "third", "fourth")));
+        awaitDelivery();
+        assertThat(metricValue("teams.slackbot.delivery.delivered"), is(4L));
+        assertThat(metricValue("teams.slackbot.delivery.retries"), is(1L));
+        verify(commandJournal, times(4)).complete(RESPONSE_URL);
+        verify(stageRecorder, times(4)).record(eq(CommandStage.DELIVER), anyLong());
+    }
+
+    @Test
+    public void deliverWhenSlackKeepsFailingShouldDropMessageAfterMaxAttempts() throws Exception {
+        when(slackRepository.sendRichMessage(eq(RESPONSE_URL), any(RichMessage.class)))
+                .thenThrow(new HttpServerErrorException(HttpStatus.BAD_GATEWAY));
+
+        slackDeliveryService.deliver(RESPONSE_URL, System.currentTimeMillis(), new RichMessage("text"));
+
+        verify(slackRepository, timeout(DELIVERY_TIMEOUT).times(3)).sendRichMessage(eq(RESPONSE_URL),
+                any(RichMessage.class));
+        awaitDelivery();
+        assertThat(metricValue("teams.slackbot.delivery.retries"), is(2L));
+        assertThat(metricValue("teams.slackbot.delivery.dropped.failed"), is(1L));
+        verify(commandJournal).complete(RESPONSE_URL);
+    }
+
+    @Test
+    public void deliverWhenSlackRejectsMessageShouldNotRetry() throws Exception {
+        when(slackRepository.sendRichMessage(eq(RESPONSE_URL), any(RichMessage.class)))
+                .thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+
+        slackDeliveryService.deliver(RESPONSE_URL, System.currentTimeMillis(), new RichMessage("text"));
+
+        awaitDelivery();
+        verify(slackRepository).sendRichMessage(eq(RESPONSE_URL), any(RichMessage.class));
+        assertThat(metricValue("teams.slackbot.delivery.retries"), is(0L));
+        assertThat(metricValue("teams.slackbot.delivery.dropped.failed"), is(1L));
+    }
+
+    @Test
+    public void deliverWhenResponseUrlIsUsedUpShouldDropMessage() throws Exception {
+        slackDeliveryService.destroy();
+        slackDeliveryService = createDeliveryService(2, 1800);
+
+        slackDeliveryService.deliver(RESPONSE_URL, System.currentTimeMillis(), new RichMessage("first"));
+        slackDeliveryService.deliver(RESPONSE_URL, System.currentTimeMillis(), new RichMessage("second"));
+        slackDeliveryService.deliver(RESPONSE_URL, System.currentTimeMillis(), new RichMessage("third"));
+        slackDeliveryService.deliver("http://other.com", System.currentTimeMillis(), new RichMessage("other"));
+
+        awaitDelivery();
+        verify(slackRepository, times(2)).sendRichMessage(eq(RESPONSE_URL), any(RichMessage.class));
+        verify(slackRepository).sendRichMessage(eq("http://other.com"), any(RichMessage.class));
+        assertThat(metricValue("teams.slackbot.delivery.dropped.limit"), is(1L));
+    }
+
+    @Test
+    public void deliverWhenResponseUrlIsExpiredShouldDropMessage() throws Exception {
+        slackDeliveryService.destroy();
+        slackDeliveryService = createDeliveryService(5, 0);
+
+        slackDeliveryService.deliver(RESPONSE_URL, System.currentTimeMillis(), new RichMessage("text"));
+
+        awaitDelivery();
+        verifyNoMoreInteractions(slackRepository);
+        assertThat(metricValue("teams.slackbot.delivery.dropped.expired"), is(1L));
+    }
+
+    @Test
+    public void deliverWhenResponseUrlWasIssuedBeforeItsLifetimeShouldDropMessageWithoutSending() throws Exception {
+        long issuedAt = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(1800);
+
+        slackDeliveryService.deliver(RESPONSE_URL, issuedAt, new RichMessage("late"));
+
+        awaitDelivery();
+        verifyNoMoreInteractions(slackRepository);
+        verify(commandJournal).complete(RESPONSE_URL);
+        assertThat(metricValue("teams.slackbot.delivery.dropped.expired"), is(1L));
+        assertThat(metricValue("teams.slackbot.delivery.responseUrls"), is(0L));
+    }
+
+    @Test
+    public void deliverWhenSendThrowsErrorShouldDropMessageAndKeepDeliveringToResponseUrl() throws Exception {
+        when(slackRepository.sendRichMessage(eq(RESPONSE_URL), any(RichMessage.class)))
+                .thenThrow(new AssertionError("unexpected request"))
+                .thenReturn("ok");
+
+        slackDeliveryService.deliver(RESPONSE_URL, System.currentTimeMillis(), new RichMessage("first"));
+        awaitDelivery();
+        slackDeliveryService.deliver(RESPONSE_URL, System.currentTimeMillis(), new RichMessage("second"));
+
+        awaitDelivery();
+        verify(slackRepository, times(2)).sendRichMessage(eq(RESPONSE_URL), any(RichMessage.class));
+        verify(commandJournal, times(2)).complete(RESPONSE_URL);
+        assertThat(metricValue("teams.slackbot.delivery.dropped.failed"), is(1L));
+        assertThat(metricValue("teams.slackbot.delivery.delivered"), is(1L));
+    }
+
+    private SlackDeliveryServiceImpl createDeliveryService(int maxPostsPerUrl, long urlLifetimeSeconds) {
+        return new SlackDeliveryServiceImpl(slackRepository, commandJournal, stageRecorder, 2, 3, 10, 20,
+                maxPostsPerUrl, urlLifetimeSeconds);
+    }
+
+    private void awaitDelivery() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + DELIVERY_TIMEOUT;
+        while (metricValue("teams.slackbot.delivery.inFlight") > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(metricValue("teams.slackbot.delivery.inFlight"), is(0L));
+    }
+
+    private long metricValue(String name) {
+        return slackDeliveryService.metrics().stream()
+                .filter(metric -> metric.getName().equals(name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new)
+                .longValue();
+    }
+}
@@ -8,16 +8,22 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.MockitoAnnotations;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
+import ua.com.juja.microservices.teams.slackbot.command.StageRecorder;
 import ua.com.juja.microservices.teams.slackbot.exceptions.TeamExchangeException;
 import ua.com.juja.microservices.teams.slackbot.exceptions.WrongCommandFormatException;
 import ua.com.juja.microservices.teams.slackbot.model.teams.ActivateTeamRequest;
 import ua.com.juja.microservices.teams.slackbot.model.teams.DeactivateTeamRequest;
 import ua.com.juja.microservices.teams.slackbot.model.teams.Team;
+import ua.com.juja.microservices.teams.slackbot.model.users.SlackNamesByUuids;
 import ua.com.juja.microservices.teams.slackbot.model.users.User;
+import ua.com.juja.microservices.teams.slackbot.model.users.UuidsBySlackNames;
 import ua.com.juja.microservices.teams.slackbot.repository.TeamRepository;
+import ua.com.juja.microservices.teams.slackbot.service.impl.TeamServiceImpl;
 
 import javax.inject.Inject;
 import java.util.Arrays;
@@ -25,6 +31,9 @@ import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.Matchers.is;
@@ -34,6 +43,8 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -43,6 +54,7 @@ import static org.mockito.Mockito.when;
  */
 @RunWith(SpringRunner.class)
 @SpringBootTest
+@TestPropertySource(properties = "teams.slackbot.idempotency.windowSeconds=0")
 public class TeamServiceTest {
     private static final int TEAM_SIZE = 4;
     private static User user1;
@@ -58,6 +70,8 @@ public class TeamServiceTest {
     private UserService userService;
     @Inject
     private TeamService teamService;
+    @Inject
+    private StageRecorder stageRecorder;
 
     @BeforeClass
     public static void oneTimeSetUp() {
@@ -81,14 +95,14 @@ public class TeamServiceTest {
         Set<String> uuids = new LinkedHashSet<>(Arrays.asList(
                 user1.getUuid(), user2.getUuid(), user3.getUuid(), userFrom.getUuid()));
         List<User> users = Arrays.asList(user1, user2, user3, userFrom);
-        when(userService.findUsersBySlackNames(anyListOf(String.class))).thenReturn(users);
+        when(userService.findUuidsBySlackNames(anyListOf(String.class))).thenReturn(uuidsBySlackNames(users));
         Team expected = new Team(userFrom.getUuid(), uuids);
         given(teamRepository.activateTeam(any(ActivateTeamRequest.class))).willReturn(expected);
 
         Team actual = teamService.activateTeam(userFrom.getSlack(), text);
 
         assertEquals(expected, actual);
-        verify(userService).findUsersBySlackNames(anyListOf(String.class));
+        verify(userService).findUuidsBySlackNames(anyListOf(String.class));
         ArgumentCaptor<ActivateTeamRequest> captor = ArgumentCaptor.forClass(ActivateTeamRequest.class);
         verify(teamRepository).activateTeam(captor.capture());
         assertTrue(captor.getValue().getMembers().equals(uuids));
@@ -104,14 +118,14 @@ public class TeamServiceTest {
         Set<String> uuids = new LinkedHashSet<>(Arrays.asList(
                 user1.getUuid(), user2.getUuid(), user3.getUuid(), user4.getUuid()));
         List<User> users = Arrays.asList(user1, user2, user3, user4, userFrom);
-        when(userService.findUsersBySlackNames(anyListOf(String.class))).thenReturn(users);
+        when(userService.findUuidsBySlackNames(anyListOf(String.class))).thenReturn(uuidsBySlackNames(users));
         Team expected = new Team(uuids);
         given(teamRepository.activateTeam(any(ActivateTeamRequest.class))).willReturn(expected);
 
         Team actual = teamService.activateTeam(from, text);
 
         assertEquals(expected, actual);
-        verify(userService).findUsersBySlackNames(anyListOf(String.class));
+        verify(userService).findUuidsBySlackNames(anyListOf(String.class));
         ArgumentCaptor<ActivateTeamRequest> captor = ArgumentCaptor.forClass(ActivateTeamRequest.class);
         verify(teamRepository).activateTeam(captor.capture());
         assertTrue(captor.getValue().getMembers().equals(uuids));
@@ -119,6 +133,63 @@ public class TeamServiceTest {
         verifyNoMoreInteractions(userService, teamRepository);
     }
 
+    @Test
+    public void activateTeamWhenDuplicateCommandIsInFlightShouldActivateTeamOnce() throws Exception {
+        String from = userFrom.getSlack();
+        String text = String.format("%s %s %s %s",
+                user1.getSlack(), user2.getSlack(), user3.getSlack(), user4.getSlack());
+        String reorderedText = String.format("%s %s %s %s",
+                user4.getSlack(), user3.getSlack(), user2.getSlack(), user1.getSlack());
+        Set<String> uuids = new LinkedHashSet<>(Arrays.asList(
+                user1.getUuid(), user2.getUuid(), user3.getUuid(), user4.getUuid()));
+        List<User> users = Arrays.asList(user1, user2, user3, user4, userFrom);
+        when(userService.findUuidsBySlackNames(anyListOf(String.class))).thenReturn(uuidsBySlackNames(users));
+        Team expected = new Team(uuids);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        given(teamRepository.activateTeam(any(ActivateTeamRequest.class))).willAnswer(invocation -> {
+            started.countDown();
+            release.await(1, TimeUnit.SECONDS);
+            return expected;
+        });
+
+        CompletableFuture<Team> first = CompletableFuture.supplyAsync(() -> teamService.activateTeam(from, text));
+        started.await(1, TimeUnit.SECONDS);
+        CompletableFuture<Team> duplicate = CompletableFuture.supplyAsync(
+                () -> teamService.activateTeam(from, reorderedText));
+        Thread.sleep(50);
+        release.countDown();
+
+        assertEquals(expected, first.get(1, TimeUnit.SECONDS));
+        assertEquals(expected, duplicate.get(1, TimeUnit.SECONDS));
+        verify(userService).findUuidsBySlackNames(anyListOf(String.class));
+        verify(teamRepository).activateTeam(any(ActivateTeamRequest.class));
+        verifyNoMoreInteractions(userService, teamRepository);
+    }
+
+    @Test
+    public void activateTeamAfterDeactivationWithinIdempotencyWindowShouldActivateTeamAgain() {
+        TeamService idempotentTeamService = new TeamServiceImpl(teamRepository, userService, stageRecorder, 60, 100);
+        String from = userFrom.getSlack();
+        String text = String.format("%s %s %s %s",
+                user1.getSlack(), user2.getSlack(), user3.getSlack(), user4.getSlack());
+        List<User> teamUsers = Arrays.asList(user1, user2, user3, user4);
+        Team team = new Team(teamUsers.stream().map(User::getUuid).collect(Collectors.toSet()));
+        when(userService.findUuidsBySlackNames(anyListOf(String.class))).thenReturn(
+                uuidsBySlackNames(Arrays.asList(user1, user2, user3, user4, userFrom)));
+        when(userService.findSlackNamesByUuids(anyListOf(String.class))).thenReturn(slackNamesByUuids(teamUsers));
+        given(teamRepository.activateTeam(any(ActivateTeamRequest.class))).willReturn(team);
+        given(teamRepository.deactivateTeam(any(DeactivateTeamRequest.class))).willReturn(team);
+
+        idempotentTeamService.activateTeam(from, text);
+        idempotentTeamService.deactivateTeam(from, user1.getSlack());
+        idempotentTeamService.activateTeam(from, text);
+        idempotentTeamService.deactivateTeam(from, user1.getSlack());
+
+        verify(teamRepository, times(2)).activateTeam(any(ActivateTeamRequest.class));
+        verify(teamRepository, times(2)).deactivateTeam(any(DeactivateTeamRequest.class));
+    }
+
     @Test
     public void activateTeamIfMembersSizeNotEqualsFourThrowsException() {
         String from = userFrom.getSlack();
@@ -144,7 +215,7 @@ public class TeamServiceTest {
                 user1.getUuid(), user2.getUuid(), user3.getUuid(), "uuid5"
         ));
         List<User> users = Arrays.asList(user1, user2, user3, user4, userFrom);
-        when(userService.findUsersBySlackNames(slackNames)).thenReturn(users);
+        when(userService.findUuidsBySlackNames(slackNames)).thenReturn(uuidsBySlackNames(users));
         Team activatedTeam = new Team(responseMembers);
         given(teamRepository.activateTeam(any(ActivateTeamRequest.class))).willReturn(activatedTeam);
 
@@ -154,7 +225,7 @@ public class TeamServiceTest {
         try {
             teamService.activateTeam(from, text);
         } finally {
-            verify(userService).findUsersBySlackNames(slackNames);
+            verify(userService).findUuidsBySlackNames(slackNames);
             ArgumentCaptor<ActivateTeamRequest> captor = ArgumentCaptor.forClass(ActivateTeamRequest.class);
             verify(teamRepository).activateTeam(captor.capture());
             assertTrue(captor.getValue().getMembers().equals(requestMembers));
@@ -189,19 +260,51 @@ public class TeamServiceTest {
         Set<String> expected = new LinkedHashSet<>(Arrays.asList(user1.getSlack(), user2.getSlack(), user3.getSlack(),
                 user4.getSlack()));
         Team team = new Team(uuids);
-        given(userService.findUsersBySlackNames(slackNamesInText)).willReturn(users);
+        given(userService.findUuidsBySlackNames(slackNamesInText)).willReturn(uuidsBySlackNames(users));
         given(teamRepository.getTeam(user1.getUuid())).willReturn(team);
-        given(userService.findUsersByUuids(anyListOf(String.class))).willReturn(teamUsers);
+        given(userService.findSlackNamesByUuids(anyListOf(String.class))).willReturn(slackNamesByUuids(teamUsers));
 
         Set<String> actual = teamService.getTeam(text);
 
         assertEquals(expected, actual);
-        verify(userService).findUsersBySlackNames(slackNamesInText);
+        verify(userService).findUuidsBySlackNames(slackNamesInText);
         verify(teamRepository).getTeam(user1.getUuid());
-        verify(userService).findUsersByUuids(anyListOf(String.class));
+        verify(userService).findSlackNamesByUuids(anyListOf(String.class));
         verifyNoMoreInteractions(teamRepository, userService);
     }
 
+    @Test
+    public void getTeamWhenTeamMembersLookUpTheirTeamConcurrentlyShouldFindTeamMembersOnce() throws Exception {
+        List<User> teamUsers = Arrays.asList(user1, user2, user3, user4);
+        Set<String> uuids = teamUsers.stream().map(User::getUuid).collect(Collectors.toSet());
+        Team team = new Team(uuids);
+        CountDownLatch release = new CountDownLatch(1);
+        teamUsers.forEach(user -> given(userService.findUuidsBySlackNames(Collections.singletonList(user.getSlack())))
+                .willReturn(uuidsBySlackNames(Collections.singletonList(user))));
+        given(teamRepository.getTeam(anyString())).willReturn(team);
+        given(userService.findSlackNamesByUuids(anyListOf(String.class))).willAnswer(invocation -> {
+            release.await(1, TimeUnit.SECONDS);
+            return slackNamesByUuids(teamUsers);
+        });
+
+        List<CompletableFuture<Set<String>>> lookups = teamUsers.stream()
+                .map(user -> CompletableFuture.supplyAsync(() -> teamService.getTeam(user.getSlack())))
+                .collect(Collectors.toList());
+        long deadline = System.currentTimeMillis() + 1000;
+        while (metricValue("teams.slackbot.singleflight.teamMembers.saved") < 3
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        Set<String> expected = teamUsers.stream().map(User::getSlack).collect(Collectors.toSet());
+        for (CompletableFuture<Set<String>> lookup : lookups) {
+            assertEquals(expected, lookup.get(1, TimeUnit.SECONDS));
+        }
+        verify(teamRepository, times(4)).getTeam(anyString());
+        verify(userService).findSlackNamesByUuids(anyListOf(String.class));
+    }
+
     @Test
     public void getTeamIfMoreThanOneSlackNameInTextThrowsException() {
         String text = String.format("%s %s", user1.getSlack(), user2.getSlack());
@@ -232,21 +335,21 @@ public class TeamServiceTest {
         List<User> users = Collections.singletonList(userFrom);
         Set<String> expected = new LinkedHashSet<>(Arrays.asList(
                 user1.getSlack(), user2.getSlack(), user3.getSlack(), user4.getSlack()));
-        given(userService.findUsersBySlackNames(slackNames)).willReturn(users);
+        given(userService.findUuidsBySlackNames(slackNames)).willReturn(uuidsBySlackNames(users));
         List<User> teamUsers = Arrays.asList(user1, user2, user3, user4);
-        given(userService.findUsersByUuids(anyListOf(String.class))).willReturn(teamUsers);
+        given(userService.findSlackNamesByUuids(anyListOf(String.class))).willReturn(slackNamesByUuids(teamUsers));
         Team team = new Team(teamUsers.stream().map(User::getUuid).collect(Collectors.toSet()));
         given(teamRepository.deactivateTeam(any(DeactivateTeamRequest.class))).willReturn(team);
 
         Set<String> actual = teamService.deactivateTeam(from, text);
 
         assertThat(actual, is(expected));
-        verify(userService).findUsersBySlackNames(slackNames);
+        verify(userService).findUuidsBySlackNames(slackNames);
         ArgumentCaptor<DeactivateTeamRequest> captor = ArgumentCaptor.forClass(DeactivateTeamRequest.class);
         verify(teamRepository).deactivateTeam(captor.capture());
         assertTrue(captor.getValue().getFrom().equals(userFrom.getUuid()));
         assertTrue(captor.getValue().getUuid().equals(userFrom.getUuid()));
-        verify(userService).findUsersByUuids(anyListOf(String.class));
+        verify(userService).findSlackNamesByUuids(anyListOf(String.class));
         verifyNoMoreInteractions(teamRepository, userService);
     }
 
@@ -256,9 +359,9 @@ public class TeamServiceTest {
         String text = user1.getSlack();
         List<String> slackNames = Arrays.asList(text, "@" + from);
         List<User> users = Arrays.asList(userFrom, user1);
-        given(userService.findUsersBySlackNames(slackNames)).willReturn(users);
+        given(userService.findUuidsBySlackNames(slackNames)).willReturn(uuidsBySlackNames(users));
         List<User> teamUsers = Arrays.asList(user1, user2, user3, user4);
-        given(userService.findUsersByUuids(anyListOf(String.class))).willReturn(teamUsers);
+        given(userService.findSlackNamesByUuids(anyListOf(String.class))).willReturn(slackNamesByUuids(teamUsers));
         Set<String> expected = new LinkedHashSet<>(Arrays.asList(
                 user1.getSlack(), user2.getSlack(), user3.getSlack(), user4.getSlack()));
         Team team = new Team(teamUsers.stream().map(User::getUuid).collect(Collectors.toSet()));
@@ -267,12 +370,12 @@ public class TeamServiceTest {
         Set<String> actual = new LinkedHashSet<>(teamService.deactivateTeam(from, text));
 
         assertThat(actual, is(expected));
-        verify(userService).findUsersBySlackNames(slackNames);
+        verify(userService).findUuidsBySlackNames(slackNames);
         ArgumentCaptor<DeactivateTeamRequest> captor = ArgumentCaptor.forClass(DeactivateTeamRequest.class);
         verify(teamRepository).deactivateTeam(captor.capture());
         assertTrue(captor.getValue().getFrom().equals(userFrom.getUuid()));
         assertTrue(captor.getValue().getUuid().equals(user1.getUuid()));
-        verify(userService).findUsersByUuids(anyListOf(String.class));
+        verify(userService).findSlackNamesByUuids(anyListOf(String.class));
         verifyNoMoreInteractions(teamRepository, userService);
     }
 
@@ -286,4 +389,23 @@ public class TeamServiceTest {
 
         teamService.deactivateTeam(from, text);
     }
-}
\ No newline at end of file
+
+    private static UuidsBySlackNames uuidsBySlackNames(List<User> users) {
+        UuidsBySlackNames uuids = new UuidsBySlackNames();
+        users.forEach(user -> uuids.put(user.getSlack(), user.getUuid()));
+        return uuids;
+    }
+
+    private static SlackNamesByUuids slackNamesByUuids(List<User> users) {
+        SlackNamesByUuids slackNames = new SlackNamesByUuids();
+        users.forEach(user -> slackNames.put(user.getUuid(), user.getSlack()));
+        return slackNames;
+    }
+
+    private long metricValue(String name) {
+        return ((PublicMetrics) teamService).metrics().stream()
+                .filter(metric -> metric.getName().equals(name))
+                .mapToLong(metric -> metric.getValue().longValue())
+                .sum();
+    }
+}
@@ -4,8 +4,10 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 import ua.com.juja.microservices.teams.slackbot.model.users.User;
+import ua.com.juja.microservices.teams.slackbot.model.users.UuidsBySlackNames;
 import ua.com.juja.microservices.teams.slackbot.repository.UserRepository;
 
 import javax.inject.Inject;
@@ -24,6 +26,8 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
  */
 @RunWith(SpringRunner.class)
 @SpringBootTest
+@TestPropertySource(properties = {"teams.slackbot.userCache.maxEntries=0",
+        "teams.slackbot.userBatching.windowMicros=0"})
 public class UserServiceImplTest {
 
     @Inject
@@ -60,6 +64,21 @@ public class UserServiceImplTest {
         verifyNoMoreInteractions(userRepository);
     }
 
+    @Test
+    public void findUuidsBySlackNamesExecutedCorrectly() throws Exception {
+        List<String> slackNamesRequest = Arrays.asList("@user1", "@user2");
+        UuidsBySlackNames expected = new UuidsBySlackNames();
+        expected.put("@user1", "uuid1");
+        expected.put("@user2", "uuid2");
+        given(userRepository.findUuidsBySlackNames(slackNamesRequest)).willReturn(expected);
+
+        UuidsBySlackNames actual = userService.findUuidsBySlackNames(slackNamesRequest);
+
+        assertThat(actual, is(expected));
+        verify(userRepository).findUuidsBySlackNames(slackNamesRequest);
+        verifyNoMoreInteractions(userRepository);
+    }
+
     @Test
     public void replaceUuidsBySlackNamesInExceptionMessageExecutedCorrectly() throws Exception {
         String exceptionMessage = String.format("User(s) '#%s#' exist(s) in another teams",
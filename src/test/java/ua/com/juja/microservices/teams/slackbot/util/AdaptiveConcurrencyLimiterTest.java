@@ -0,0 +1,110 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ServiceBusyException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    public void executeWhenLimitIsReachedShouldFailFast() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("teams", 1, 1, 10, 2.0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> inFlight = CompletableFuture.supplyAsync(() -> limiter.execute(() -> {
+            started.countDown();
+            awaitQuietly(release);
+            return "first";
+        }));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        try {
+            limiter.execute(() -> "second");
+            fail();
+        } catch (ServiceBusyException ex) {
+            assertThat(ex.getMessage(), is("Sorry! Teams service is overloaded right now, please retry in a minute."));
+        }
+        release.countDown();
+
+        assertThat(inFlight.get(1, TimeUnit.SECONDS), is("first"));
+        assertThat(metricValue(limiter, "teams.slackbot.concurrency.teams.rejected"), is(1L));
+        assertThat(metricValue(limiter, "teams.slackbot.concurrency.teams.inFlight"), is(0L));
+    }
+
+    @Test
+    public void executeWhenServiceFailsOrTimesOutShouldDecreaseLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("users", 20, 2, 100, 2.0);
+
+        executeIgnoringFailure(limiter, new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE));
+        assertThat(limiter.getLimit(), is(18));
+        executeIgnoringFailure(limiter, new ResourceAccessException("Read timed out"));
+        assertThat(limiter.getLimit(), is(16));
+        executeIgnoringFailure(limiter, new HttpClientErrorException(HttpStatus.BAD_REQUEST));
+        assertThat(limiter.getLimit(), is(16));
+        assertThat(metricValue(limiter, "teams.slackbot.concurrency.users.decreases"), is(2L));
+    }
+
+    @Test
+    public void executeWhenCallsAreFastShouldIncreaseLimitAndWhenSlowShouldDecreaseIt() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("teams", 2, 1, 3, 2.0);
+
+        limiter.execute(() -> "fast");
+        limiter.execute(() -> "fast");
+        assertThat(limiter.getLimit(), is(3));
+
+        limiter.execute(() -> {
+            awaitQuietly(new CountDownLatch(1), 50);
+            return "slow";
+        });
+        assertThat(limiter.getLimit(), is(2));
+    }
+
+    private static void executeIgnoringFailure(AdaptiveConcurrencyLimiter limiter, RuntimeException failure) {
+        try {
+            limiter.execute(() -> {
+                throw failure;
+            });
+            fail();
+        } catch (RuntimeException ex) {
+            assertThat(ex, is(failure));
+        }
+    }
+
+    private static long metricValue(AdaptiveConcurrencyLimiter limiter, String name) {
+        List<Metric<?>> metrics = new ArrayList<>();
+        limiter.addMetrics(metrics, "teams.slackbot.concurrency.");
+        return metrics.stream()
+                .filter(metric -> metric.getName().equals(name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new)
+                .longValue();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        awaitQuietly(latch, 1000);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch, long millis) {
+        try {
+            latch.await(millis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
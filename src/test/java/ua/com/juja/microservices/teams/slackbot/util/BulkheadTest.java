@@ -0,0 +1,62 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ServiceBusyException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BulkheadTest {
+
+    @Test
+    public void executeWhenAllSlotsAreBusyShouldWaitAndReject() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("slack", 1, 10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> hung = CompletableFuture.supplyAsync(() -> bulkhead.execute(() -> {
+            started.countDown();
+            try {
+                release.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "hung";
+        }));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        assertThat(metricValue(bulkhead, "teams.slackbot.bulkhead.slack.saturation"), is(100));
+        try {
+            bulkhead.execute(() -> "second");
+            fail();
+        } catch (ServiceBusyException ex) {
+            assertThat(ex.getMessage(), is("Sorry! Slack service is overloaded right now, please retry in a minute."));
+        }
+        release.countDown();
+
+        assertThat(hung.get(1, TimeUnit.SECONDS), is("hung"));
+        assertThat(bulkhead.execute(() -> "third"), is("third"));
+        assertThat(metricValue(bulkhead, "teams.slackbot.bulkhead.slack.inUse"), is(0));
+        assertThat(metricValue(bulkhead, "teams.slackbot.bulkhead.slack.peak"), is(1));
+        assertThat(metricValue(bulkhead, "teams.slackbot.bulkhead.slack.rejected"), is(1));
+    }
+
+    private static int metricValue(Bulkhead bulkhead, String name) {
+        List<Metric<?>> metrics = new ArrayList<>();
+        bulkhead.addMetrics(metrics, "teams.slackbot.bulkhead.");
+        return metrics.stream()
+                .filter(metric -> metric.getName().equals(name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new)
+                .intValue();
+    }
+}
@@ -0,0 +1,88 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ServiceUnavailableException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void executeWhenFailureRateReachesThresholdShouldOpenAndFailFast() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("users", 4, 50, 100, 1000, 60);
+        AtomicInteger calls = new AtomicInteger();
+
+        executeIgnoringFailure(circuitBreaker, new HttpClientErrorException(HttpStatus.BAD_REQUEST));
+        circuitBreaker.execute(calls::incrementAndGet);
+        executeIgnoringFailure(circuitBreaker, new ResourceAccessException("Read timed out"));
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+        executeIgnoringFailure(circuitBreaker, new HttpServerErrorException(HttpStatus.BAD_GATEWAY));
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+
+        try {
+            circuitBreaker.execute(calls::incrementAndGet);
+            fail();
+        } catch (ServiceUnavailableException ex) {
+            assertThat(ex.getMessage(), is("Sorry! Users service is unavailable right now, please retry in a minute."));
+        }
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    public void executeWhenSlowCallRateReachesThresholdShouldOpen() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("teams", 2, 50, 50, 10, 60);
+
+        circuitBreaker.execute(() -> "fast");
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+        circuitBreaker.execute(() -> {
+            sleep(30);
+            return "slow";
+        });
+
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    public void executeAfterOpenPeriodShouldCloseOnSuccessfulProbesAndReopenOnFailedProbe() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("teams", 1, 100, 100, 1000, 0);
+
+        executeIgnoringFailure(circuitBreaker, new ResourceAccessException("Connection refused"));
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        circuitBreaker.execute(() -> "probe");
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        executeIgnoringFailure(circuitBreaker, new ResourceAccessException("Connection refused"));
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.execute(() -> "probe");
+        }
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    private static void executeIgnoringFailure(CircuitBreaker circuitBreaker, RuntimeException failure) {
+        try {
+            circuitBreaker.execute(() -> {
+                throw failure;
+            });
+            fail();
+        } catch (RuntimeException ex) {
+            assertThat(ex, is(failure));
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
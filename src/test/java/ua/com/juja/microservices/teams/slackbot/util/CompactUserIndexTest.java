@@ -0,0 +1,92 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class CompactUserIndexTest {
+
+    private static final int COMMUNITY_SIZE = 50_000;
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void indexOfCommunityShouldFitIntoBytesPerUserBudget() {
+        Map<String, String> users = new LinkedHashMap<>();
+        long nameBytes = 0;
+        for (int i = 0; i < COMMUNITY_SIZE; i++) {
+            String slackName = "@member." + i;
+            users.put(UUID.randomUUID().toString(), slackName);
+            nameBytes += slackName.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        CompactUserIndex index = CompactUserIndex.build(users);
+
+        assertThat(index.size(), is(COMMUNITY_SIZE));
+        assertTrue("Index takes " + index.sizeInBytes() + " bytes", index.sizeInBytes()
+                <= (long) COMMUNITY_SIZE * CompactUserIndex.MAX_BYTES_PER_USER + nameBytes);
+        users.forEach((uuid, slackName) -> {
+            assertThat(index.slackName(uuid), is(slackName));
+            assertThat(index.uuid(slackName), is(uuid));
+        });
+    }
+
+    @Test
+    public void lookupOfUnknownUserShouldReturnNull() {
+        CompactUserIndex index = CompactUserIndex.build(Collections.singletonMap(
+                "0b8e9f4c-2f3a-4e4b-9d43-5a0f4ad1c1e7", "@slack1"));
+
+        assertThat(index.slackName("1b8e9f4c-2f3a-4e4b-9d43-5a0f4ad1c1e7"), nullValue());
+        assertThat(index.slackName("uuid1"), nullValue());
+        assertThat(index.uuid("@slack2"), nullValue());
+        assertThat(index.uuid("@slack1"), is("0b8e9f4c-2f3a-4e4b-9d43-5a0f4ad1c1e7"));
+    }
+
+    @Test
+    public void buildShouldSkipNotCanonicalUuidsAndKeepFirstUserOfSlackName() {
+        Map<String, String> users = new LinkedHashMap<>();
+        users.put("uuid1", "@slack1");
+        users.put("0B8E9F4C-2F3A-4E4B-9D43-5A0F4AD1C1E7", "@slack2");
+        users.put("0b8e9f4c-2f3a-4e4b-9d43-5a0f4ad1c1e7", "@jürgen");
+        users.put("1b8e9f4c-2f3a-4e4b-9d43-5a0f4ad1c1e7", "@jürgen");
+
+        CompactUserIndex index = CompactUserIndex.build(users);
+
+        assertThat(index.size(), is(2));
+        assertThat(index.uuid("@slack2"), nullValue());
+        assertThat(index.uuid("@jürgen"), is("0b8e9f4c-2f3a-4e4b-9d43-5a0f4ad1c1e7"));
+        assertThat(index.slackName("1b8e9f4c-2f3a-4e4b-9d43-5a0f4ad1c1e7"), is("@jürgen"));
+    }
+
+    @Test
+    public void wrapOfCopiedBufferShouldAnswerLookups() {
+        CompactUserIndex index = CompactUserIndex.build(Collections.singletonMap(
+                "0b8e9f4c-2f3a-4e4b-9d43-5a0f4ad1c1e7", "@slack1"));
+        ByteBuffer copy = ByteBuffer.allocateDirect(index.sizeInBytes());
+        copy.put(index.buffer().array());
+
+        assertThat(new CompactUserIndex(copy).uuid("@slack1"), is("0b8e9f4c-2f3a-4e4b-9d43-5a0f4ad1c1e7"));
+    }
+
+    @Test
+    public void wrapOfTruncatedBufferShouldThrowException() {
+        CompactUserIndex index = CompactUserIndex.build(Collections.singletonMap(
+                "0b8e9f4c-2f3a-4e4b-9d43-5a0f4ad1c1e7", "@slack1"));
+        expectedException.expect(IllegalArgumentException.class);
+
+        new CompactUserIndex(ByteBuffer.wrap(index.buffer().array(), 0, index.sizeInBytes() - 1).slice());
+    }
+}
@@ -0,0 +1,52 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.junit.Test;
+import ua.com.juja.microservices.teams.slackbot.exceptions.DeadlineExceededException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DeadlineTest {
+
+    @Test
+    public void callWithinShouldBindDeadlineToCurrentThreadAndRestoreOuterOne() {
+        Deadline outer = Deadline.after(10000);
+        Deadline inner = Deadline.after(1000);
+
+        Deadline.callWithin(outer, () -> {
+            assertThat(Deadline.current(), is(outer));
+            Deadline.callWithin(inner, () -> {
+                assertThat(Deadline.current(), is(inner));
+                assertTrue(inner.remainingMillis() <= 1000);
+                return null;
+            });
+            assertThat(Deadline.current(), is(outer));
+            return null;
+        });
+
+        assertThat(Deadline.current(), is(nullValue()));
+    }
+
+    @Test
+    public void checkNotExpiredWhenDeadlineIsExpiredShouldThrowException() {
+        Deadline.checkNotExpired();
+        Deadline.callWithin(Deadline.after(10000), () -> {
+            Deadline.checkNotExpired();
+            return null;
+        });
+
+        try {
+            Deadline.callWithin(Deadline.after(0), () -> {
+                Deadline.checkNotExpired();
+                return null;
+            });
+            fail();
+        } catch (DeadlineExceededException ex) {
+            assertThat(ex.getMessage(), is("Sorry! Your command took too long and was cancelled, " +
+                    "please retry in a minute."));
+        }
+    }
+}
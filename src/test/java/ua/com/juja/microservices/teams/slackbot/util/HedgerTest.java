@@ -0,0 +1,128 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HedgerTest {
+
+    private static final int WARM_UP_CALLS = 20;
+
+    @Test
+    public void executeWhenCallIsSlowerThanPercentileShouldHedgeAndCancelSlowAttempt() throws Exception {
+        Hedger hedger = new Hedger("teams", true, 0.95, 10, 100, 4);
+        warmUp(hedger);
+        CountDownLatch primaryStarted = new CountDownLatch(1);
+        CountDownLatch hung = new CountDownLatch(1);
+        CountDownLatch aborted = new CountDownLatch(1);
+
+        String result = hedger.execute(() -> {
+            if (!Hedger.isHedge()) {
+                Hedger.onCancel(aborted::countDown);
+                primaryStarted.countDown();
+                await(hung);
+                return "slow";
+            }
+            await(primaryStarted);
+            return "hedge";
+        });
+
+        assertThat(result, is("hedge"));
+        assertTrue(aborted.await(1, TimeUnit.SECONDS));
+        hung.countDown();
+        assertThat(metricValue(hedger, "teams.slackbot.hedging.teams.hedges"), is(1L));
+        assertThat(metricValue(hedger, "teams.slackbot.hedging.teams.hedgeWins"), is(1L));
+    }
+
+    @Test
+    public void executeWhenBudgetIsSpentShouldWaitForTheOnlyAttempt() {
+        Hedger hedger = new Hedger("users", true, 0.5, 1, 0, 4);
+        warmUp(hedger);
+        for (int i = 0; i < 12; i++) {
+            CountDownLatch hedged = new CountDownLatch(1);
+            hedger.execute(() -> {
+                if (Hedger.isHedge()) {
+                    hedged.countDown();
+                    return "hedge";
+                }
+                await(hedged, 200);
+                return "slow";
+            });
+        }
+
+        assertThat(metricValue(hedger, "teams.slackbot.hedging.users.hedges"), is(10L));
+    }
+
+    @Test
+    public void executeWhenBothAttemptsFailShouldThrowFailureOfFirstAttempt() {
+        Hedger hedger = new Hedger("users", true, 0.5, 1, 100, 4);
+        warmUp(hedger);
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch hedgeFailed = new CountDownLatch(1);
+        ResourceAccessException firstFailure = new ResourceAccessException("Read timed out");
+
+        try {
+            hedger.execute(() -> {
+                attempts.incrementAndGet();
+                if (!Hedger.isHedge()) {
+                    await(hedgeFailed);
+                    throw firstFailure;
+                }
+                hedgeFailed.countDown();
+                throw new ResourceAccessException("Connection refused");
+            });
+            fail();
+        } catch (ResourceAccessException ex) {
+            assertThat(ex, is(firstFailure));
+        }
+        assertThat(attempts.get(), is(2));
+    }
+
+    @Test
+    public void executeWhenDisabledShouldRunCallInCallerThread() {
+        Hedger hedger = new Hedger("teams", false, 0.95, 10, 5, 4);
+
+        assertThat(hedger.execute(() -> Thread.currentThread().getName()), is(Thread.currentThread().getName()));
+        assertThat(metricValue(hedger, "teams.slackbot.hedging.teams.calls"), is(0L));
+    }
+
+    private static void warmUp(Hedger hedger) {
+        for (int i = 0; i < WARM_UP_CALLS; i++) {
+            hedger.execute(() -> "fast");
+        }
+    }
+
+    private static long metricValue(Hedger hedger, String name) {
+        List<Metric<?>> metrics = new ArrayList<>();
+        hedger.addMetrics(metrics, "teams.slackbot.hedging.");
+        return metrics.stream()
+                .filter(metric -> metric.getName().equals(name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new)
+                .longValue();
+    }
+
+    private static void await(CountDownLatch latch) {
+        await(latch, 1000);
+    }
+
+    private static void await(CountDownLatch latch, long millis) {
+        try {
+            latch.await(millis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
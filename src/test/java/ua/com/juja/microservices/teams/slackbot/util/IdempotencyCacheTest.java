@@ -0,0 +1,154 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class IdempotencyCacheTest {
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    public void executeWithinWindowShouldReturnResultOfTheFirstCall() {
+        IdempotencyCache<String, Integer> cache = new IdempotencyCache<>("test", 60_000, 100);
+
+        assertThat(cache.execute("key", calls::incrementAndGet), is(1));
+        assertThat(cache.execute("key", calls::incrementAndGet), is(1));
+        assertThat(cache.execute("other", calls::incrementAndGet), is(2));
+
+        assertThat(calls.get(), is(2));
+        assertThat(metricValue(cache, "hits"), is(1L));
+        assertThat(metricValue(cache, "misses"), is(2L));
+    }
+
+    @Test
+    public void executeAfterWindowShouldRunActionAgain() throws Exception {
+        IdempotencyCache<String, Integer> cache = new IdempotencyCache<>("test", 1, 100);
+
+        cache.execute("key", calls::incrementAndGet);
+        Thread.sleep(5);
+
+        assertThat(cache.execute("key", calls::incrementAndGet), is(2));
+    }
+
+    @Test
+    public void executeWhenDuplicateIsInFlightShouldWaitForItsResult() throws Exception {
+        IdempotencyCache<String, Integer> cache = new IdempotencyCache<>("test", 0, 100);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Integer> first = CompletableFuture.supplyAsync(() -> cache.execute("key", () -> {
+            started.countDown();
+            awaitQuietly(release);
+            return calls.incrementAndGet();
+        }));
+        started.await(1, TimeUnit.SECONDS);
+
+        CompletableFuture<Integer> duplicate = CompletableFuture.supplyAsync(
+                () -> cache.execute("key", calls::incrementAndGet));
+        while (metricValue(cache, "hits") == 0) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertThat(first.get(1, TimeUnit.SECONDS), is(1));
+        assertThat(duplicate.get(1, TimeUnit.SECONDS), is(1));
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    public void executeWhenActionFailedShouldNotCacheFailure() {
+        IdempotencyCache<String, Integer> cache = new IdempotencyCache<>("test", 60_000, 100);
+        try {
+            cache.execute("key", () -> {
+                throw new IllegalStateException("failed");
+            });
+        } catch (IllegalStateException ignored) {
+        }
+
+        assertThat(cache.execute("key", calls::incrementAndGet), is(1));
+    }
+
+    @Test
+    public void executeWhenCacheIsFullShouldEvictEntries() {
+        IdempotencyCache<String, Integer> cache = new IdempotencyCache<>("test", 60_000, 10);
+
+        for (int i = 0; i < 100; i++) {
+            cache.execute("key" + i, calls::incrementAndGet);
+        }
+
+        assertThat(metricValue(cache, "size"), is(10L));
+        assertThat(metricValue(cache, "evictions"), is(90L));
+    }
+
+    @Test
+    public void executeWhenCallsInFlightFillCacheShouldKeepThemAndNotCacheNewResult() throws Exception {
+        IdempotencyCache<String, Integer> cache = new IdempotencyCache<>("test", 60_000, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Integer> inFlight = CompletableFuture.supplyAsync(() -> cache.execute("key", () -> {
+            started.countDown();
+            awaitQuietly(release);
+            return calls.incrementAndGet();
+        }));
+        started.await(1, TimeUnit.SECONDS);
+
+        assertThat(cache.execute("other", () -> 10), is(10));
+        assertThat(cache.execute("other", () -> 20), is(20));
+        CompletableFuture<Integer> duplicate = CompletableFuture.supplyAsync(
+                () -> cache.execute("key", calls::incrementAndGet));
+        while (metricValue(cache, "hits") == 0) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertThat(inFlight.get(1, TimeUnit.SECONDS), is(1));
+        assertThat(duplicate.get(1, TimeUnit.SECONDS), is(1));
+        assertThat(metricValue(cache, "evictions"), is(0L));
+        assertThat(metricValue(cache, "bypasses"), is(2L));
+    }
+
+    @Test
+    public void executeAfterInvalidateShouldRunActionAgain() {
+        IdempotencyCache<String, Integer> cache = new IdempotencyCache<>("test", 60_000, 100);
+        cache.execute("key", calls::incrementAndGet);
+        cache.execute("other", calls::incrementAndGet);
+
+        cache.invalidate("key"::equals);
+
+        assertThat(cache.execute("key", calls::incrementAndGet), is(3));
+        assertThat(cache.execute("other", calls::incrementAndGet), is(2));
+    }
+
+    private static long metricValue(IdempotencyCache<?, ?> cache, String name) {
+        List<Metric<?>> metrics = new ArrayList<>();
+        cache.addMetrics(metrics, "");
+        return metrics.stream()
+                .filter(metric -> metric.getName().equals("test." + name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new)
+                .longValue();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
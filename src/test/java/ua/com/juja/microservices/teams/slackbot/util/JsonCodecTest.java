@@ -0,0 +1,65 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.web.client.HttpClientErrorException;
+import ua.com.juja.microservices.teams.slackbot.exceptions.ApiError;
+import ua.com.juja.microservices.teams.slackbot.model.teams.DeactivateTeamRequest;
+import ua.com.juja.microservices.teams.slackbot.model.teams.Team;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class JsonCodecTest {
+
+    private static final String TEAM = "{\"members\":[\"uuid1\",\"uuid2\",\"uuid3\",\"uuid4\"],\"from\":\"uuid1\"," +
+            "\"id\":\"team-id\",\"activateDate\":\"2017-09-01T10:15:30+0300\",\"deactivateDate\":null}";
+
+    private final JsonCodec jsonCodec = new JsonCodec(true);
+
+    @Test
+    public void teamDatesShouldBeReadWithOffsetAndWrittenInUtc() throws Exception {
+        Team team = jsonCodec.readerFor(Team.class).readValue(TEAM);
+
+        String json = jsonCodec.writerFor(Team.class).writeValueAsString(team);
+
+        assertThat(team.getId(), is("team-id"));
+        assertThat(json, containsString("\"activateDate\":\"2017-09-01T07:15:30+0000\""));
+        assertThat(json, containsString("\"deactivateDate\":null"));
+    }
+
+    @Test
+    public void httpMessageConverterShouldReadAndWriteModels() throws Exception {
+        HttpMessageConverter<Object> converter = jsonCodec.httpMessageConverter();
+        MockHttpInputMessage input = new MockHttpInputMessage(TEAM.getBytes(StandardCharsets.UTF_8));
+        input.getHeaders().setContentType(MediaType.APPLICATION_JSON_UTF8);
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+
+        Team team = (Team) converter.read(Team.class, input);
+        converter.write(new DeactivateTeamRequest("uuid-from", "uuid1"), MediaType.APPLICATION_JSON_UTF8, output);
+
+        assertThat(team.getMembers().size(), is(4));
+        assertThat(output.getBodyAsString(), is("{\"from\":\"uuid-from\",\"uuid\":\"uuid1\"}"));
+    }
+
+    @Test
+    public void convertToApiErrorIfBodyIsNotApiErrorShouldReturnBotInternalError() {
+        HttpClientErrorException exception = new HttpClientErrorException(HttpStatus.BAD_REQUEST, "Bad Request",
+                new HttpHeaders(), "<html>Bad Request</html>".getBytes(StandardCharsets.UTF_8),
+                StandardCharsets.UTF_8);
+
+        ApiError error = jsonCodec.convertToApiError(exception);
+
+        assertThat(error.getInternalErrorCode(), is("BotInternalError"));
+        assertThat(error.getDetailErrors(), is(Collections.singletonList("400 Bad Request")));
+    }
+}
@@ -0,0 +1,65 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class LatencyHistogramTest {
+
+    private final LatencyHistogram histogram = new LatencyHistogram("stage");
+
+    @Test
+    public void percentileShouldBeWithinBucketError() {
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+
+        assertThat(histogram.count(), is(10_000L));
+        assertThat(histogram.percentileMicros(0.5), greaterThanOrEqualTo(5_000L));
+        assertThat(histogram.percentileMicros(0.5), lessThanOrEqualTo(5_625L));
+        assertThat(histogram.percentileMicros(0.99), greaterThanOrEqualTo(9_900L));
+        assertThat(histogram.percentileMicros(1), is(10_000L));
+    }
+
+    @Test
+    public void bucketsShouldCoverAllValuesWithoutGaps() {
+        for (int bucket = 1; bucket < 300; bucket++) {
+            assertThat(LatencyHistogram.bucketOf(LatencyHistogram.upperBoundOf(bucket - 1) + 1), is(bucket));
+            assertThat(LatencyHistogram.bucketOf(LatencyHistogram.upperBoundOf(bucket)), is(bucket));
+        }
+        assertThat(LatencyHistogram.bucketOf(Long.MAX_VALUE), is(LatencyHistogram.bucketOf(1L << 62)));
+    }
+
+    @Test
+    public void addMetricsWhenNothingRecordedShouldReportZeros() {
+        List<Metric<?>> metrics = new ArrayList<>();
+
+        histogram.addMetrics(metrics, "prefix.");
+
+        assertThat(metrics.size(), is(5));
+        metrics.forEach(metric -> assertThat(metric.getValue().longValue(), is(0L)));
+    }
+
+    @Test
+    public void recordValueShouldReportValuesInTheirUnit() {
+        LatencyHistogram sizes = new LatencyHistogram("batchSize", "");
+        sizes.recordValue(3);
+        sizes.recordValue(5);
+        List<Metric<?>> metrics = new ArrayList<>();
+
+        sizes.addMetrics(metrics, "prefix.");
+
+        assertThat(metrics.get(1).getName(), is("prefix.batchSize.avg"));
+        assertThat(metrics.get(1).getValue().longValue(), is(4L));
+        assertThat(metrics.get(4).getName(), is("prefix.batchSize.max"));
+        assertThat(metrics.get(4).getValue().longValue(), is(5L));
+    }
+}
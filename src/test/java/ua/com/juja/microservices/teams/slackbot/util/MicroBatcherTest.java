@@ -0,0 +1,177 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MicroBatcherTest {
+
+    private static final long LONG_WINDOW_MICROS = TimeUnit.SECONDS.toMicros(5);
+
+    private final List<List<String>> calls = new CopyOnWriteArrayList<>();
+    private final IllegalStateException rejected = new IllegalStateException("rejected");
+    private final CountDownLatch slowCalled = new CountDownLatch(1);
+    private final CountDownLatch slowReleased = new CountDownLatch(1);
+    private final ExecutorService lookups = Executors.newFixedThreadPool(3);
+
+    @After
+    public void tearDown() {
+        slowReleased.countDown();
+        lookups.shutdownNow();
+    }
+
+    @Test
+    public void executeWhenBatchingIsOffShouldCallWithTheKeys() {
+        MicroBatcher<String, String> batcher = new MicroBatcher<>("test", 0, 100, this::upperCase);
+
+        assertThat(batcher.execute(Arrays.asList("a", "b")), is(values("a", "b")));
+        assertThat(batcher.execute(Collections.singletonList("c")), is(values("c")));
+
+        assertThat(calls.size(), is(2));
+        assertThat(metricValue(batcher, "calls"), is(0L));
+    }
+
+    @Test
+    public void executeOfSingleLookupShouldCallAtOnce() {
+        MicroBatcher<String, String> batcher = new MicroBatcher<>("test", LONG_WINDOW_MICROS, 100, this::upperCase);
+
+        long start = System.nanoTime();
+        assertThat(batcher.execute(Arrays.asList("a", "unknown", "b")), is(values("a", "b")));
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+        assertThat(calls, is(Collections.singletonList(Arrays.asList("a", "unknown", "b"))));
+        assertThat(metricValue(batcher, "lookups"), is(1L));
+        assertThat(metricValue(batcher, "batchSize.max"), is(3L));
+    }
+
+    @Test
+    public void executeOfConcurrentLookupsShouldMergeThemIntoOneCallWhenBatchIsFull() throws Exception {
+        MicroBatcher<String, String> batcher = new MicroBatcher<>("test", LONG_WINDOW_MICROS, 4, this::upperCase);
+        CompletableFuture<Map<String, String>> slow = startSlowLookup(batcher);
+
+        CompletableFuture<Map<String, String>> first = CompletableFuture.supplyAsync(
+                () -> batcher.execute(Arrays.asList("a", "b")), lookups);
+        CompletableFuture<Map<String, String>> second = CompletableFuture.supplyAsync(
+                () -> batcher.execute(Arrays.asList("b", "c", "d")), lookups);
+
+        assertThat(first.get(1, TimeUnit.SECONDS), is(values("a", "b")));
+        assertThat(second.get(1, TimeUnit.SECONDS), is(values("b", "c", "d")));
+        slowReleased.countDown();
+        assertThat(slow.get(1, TimeUnit.SECONDS), is(Collections.emptyMap()));
+        assertThat(calls.size(), is(2));
+        assertThat(calls.get(1), containsInAnyOrder("a", "b", "c", "d"));
+        assertThat(metricValue(batcher, "lookups"), is(3L));
+        assertThat(metricValue(batcher, "calls"), is(2L));
+        assertThat(metricValue(batcher, "wait.count"), is(3L));
+    }
+
+    @Test
+    public void executeWhenMergedCallFailsShouldFailEveryLookupOfTheBatch() throws Exception {
+        MicroBatcher<String, String> batcher = new MicroBatcher<>("test", LONG_WINDOW_MICROS, 3, this::upperCase);
+        startSlowLookup(batcher);
+
+        CompletableFuture<Map<String, String>> valid = CompletableFuture.supplyAsync(
+                () -> batcher.execute(Arrays.asList("a", "b")), lookups);
+        CompletableFuture<Map<String, String>> invalid = CompletableFuture.supplyAsync(
+                () -> batcher.execute(Collections.singletonList("bad")), lookups);
+
+        assertFailedWith(valid, rejected);
+        assertFailedWith(invalid, rejected);
+        assertThat(calls.size(), is(2));
+    }
+
+    @Test
+    public void executeWhenCallOfSingleLookupFailsShouldThrowItsException() {
+        MicroBatcher<String, String> batcher = new MicroBatcher<>("test", 1000, 100, this::upperCase);
+
+        try {
+            batcher.execute(Collections.singletonList("bad"));
+            fail("Exception expected");
+        } catch (IllegalStateException ex) {
+            assertThat(ex, sameInstance(rejected));
+        }
+        assertThat(calls.size(), is(1));
+    }
+
+    /**
+     * Starts a lookup alone, which calls at once and stays in progress until slowReleased
+     */
+    private CompletableFuture<Map<String, String>> startSlowLookup(MicroBatcher<String, String> batcher)
+            throws InterruptedException {
+        CompletableFuture<Map<String, String>> slow = CompletableFuture.supplyAsync(
+                () -> batcher.execute(Collections.singletonList("slow")), lookups);
+        assertTrue(slowCalled.await(1, TimeUnit.SECONDS));
+        return slow;
+    }
+
+    private Map<String, String> upperCase(List<String> keys) {
+        calls.add(keys);
+        if (keys.contains("slow")) {
+            slowCalled.countDown();
+            awaitQuietly(slowReleased);
+            return Collections.emptyMap();
+        }
+        if (keys.contains("bad")) {
+            throw rejected;
+        }
+        Map<String, String> found = new LinkedHashMap<>();
+        keys.stream().filter(key -> !key.equals("unknown")).forEach(key -> found.put(key, key.toUpperCase()));
+        return found;
+    }
+
+    private static Map<String, String> values(String... keys) {
+        Map<String, String> values = new LinkedHashMap<>();
+        Arrays.stream(keys).forEach(key -> values.put(key, key.toUpperCase()));
+        return values;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void assertFailedWith(CompletableFuture<?> future, Exception exception) throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("Exception expected");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), sameInstance(exception));
+        }
+    }
+
+    private static long metricValue(MicroBatcher<?, ?> batcher, String name) {
+        List<Metric<?>> metrics = new ArrayList<>();
+        batcher.addMetrics(metrics, "");
+        return metrics.stream()
+                .filter(metric -> metric.getName().equals("test." + name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new)
+                .longValue();
+    }
+}
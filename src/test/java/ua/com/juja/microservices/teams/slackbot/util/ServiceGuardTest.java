@@ -0,0 +1,117 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ServiceGuardTest {
+
+    private static final int WARM_UP_CALLS = 20;
+
+    private final Bulkhead bulkhead = new Bulkhead("users", 1, 0);
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter =
+            new AdaptiveConcurrencyLimiter("users", 20, 2, 100, 1000.0);
+    private final ServiceGuard serviceGuard = new ServiceGuard(new CircuitBreaker("users", 10, 50, 100, 10_000, 60),
+            bulkhead, concurrencyLimiter, new Hedger("users", true, 0.5, 1, 100, 4));
+
+    @Test
+    public void hedgedCallWhenBulkheadIsFullShouldNotHedgeWithoutPermit() {
+        warmUp();
+
+        String result = serviceGuard.hedgedCall(() -> {
+            if (!Hedger.isHedge()) {
+                awaitMetric(bulkhead, "teams.slackbot.bulkhead.users.rejected");
+                return "primary";
+            }
+            return "hedge";
+        });
+
+        assertThat(result, is("primary"));
+        assertThat(metricValue(bulkhead, "teams.slackbot.bulkhead.users.rejected"), is(1L));
+        assertThat(metricValue(bulkhead, "teams.slackbot.bulkhead.users.peak"), is(1L));
+    }
+
+    @Test
+    public void hedgedCallWhenHedgeWinsShouldNotDecreaseLimitForCancelledAttempt() throws Exception {
+        Bulkhead wideBulkhead = new Bulkhead("users", 10, 0);
+        ServiceGuard guard = new ServiceGuard(new CircuitBreaker("users", 10, 50, 100, 10_000, 60), wideBulkhead,
+                concurrencyLimiter, new Hedger("users", true, 0.5, 1, 100, 4));
+        for (int i = 0; i < WARM_UP_CALLS; i++) {
+            guard.hedgedCall(() -> "fast");
+        }
+        int limit = concurrencyLimiter.getLimit();
+        CountDownLatch aborted = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+
+        String result = guard.hedgedCall(() -> {
+            if (Hedger.isHedge()) {
+                return "hedge";
+            }
+            Hedger.onCancel(aborted::countDown);
+            try {
+                aborted.await(1, TimeUnit.SECONDS);
+                throw new ResourceAccessException("Request aborted");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                released.countDown();
+            }
+        });
+
+        assertThat(result, is("hedge"));
+        released.await(1, TimeUnit.SECONDS);
+        awaitMetricZero(concurrencyLimiter, "teams.slackbot.concurrency.users.inFlight");
+        assertThat(metricValue(concurrencyLimiter, "teams.slackbot.concurrency.users.decreases"), is(0L));
+        assertThat(concurrencyLimiter.getLimit() >= limit, is(true));
+    }
+
+    private void warmUp() {
+        for (int i = 0; i < WARM_UP_CALLS; i++) {
+            serviceGuard.hedgedCall(() -> "fast");
+        }
+    }
+
+    private static void awaitMetric(Bulkhead bulkhead, String name) {
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (metricValue(bulkhead, name) == 0 && System.nanoTime() < until) {
+            Thread.yield();
+        }
+    }
+
+    private static void awaitMetricZero(AdaptiveConcurrencyLimiter limiter, String name) {
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (metricValue(limiter, name) != 0 && System.nanoTime() < until) {
+            Thread.yield();
+        }
+    }
+
+    private static long metricValue(Bulkhead bulkhead, String name) {
+        List<Metric<?>> metrics = new ArrayList<>();
+        bulkhead.addMetrics(metrics, "teams.slackbot.bulkhead.");
+        return valueOf(metrics, name);
+    }
+
+    private static long metricValue(AdaptiveConcurrencyLimiter limiter, String name) {
+        List<Metric<?>> metrics = new ArrayList<>();
+        limiter.addMetrics(metrics, "teams.slackbot.concurrency.");
+        return valueOf(metrics, name);
+    }
+
+    private static long valueOf(List<Metric<?>> metrics, String name) {
+        return metrics.stream()
+                .filter(metric -> metric.getName().equals(name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new)
+                .longValue();
+    }
+}
@@ -0,0 +1,113 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import ua.com.juja.microservices.teams.slackbot.exceptions.DeadlineExceededException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    public void executeAfterCallCompletedShouldCallAgain() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>("test");
+
+        assertThat(singleFlight.execute("key", calls::incrementAndGet), is(1));
+        assertThat(singleFlight.execute("key", calls::incrementAndGet), is(2));
+
+        assertThat(metricValue(singleFlight, "calls"), is(2L));
+        assertThat(metricValue(singleFlight, "saved"), is(0L));
+        assertThat(metricValue(singleFlight, "inFlight"), is(0L));
+    }
+
+    @Test
+    public void executeWhileCallIsInFlightShouldShareItsException() throws Exception {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>("test");
+        IllegalStateException exception = new IllegalStateException("failed");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Integer> first = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+            started.countDown();
+            awaitQuietly(release);
+            throw exception;
+        }));
+        started.await(1, TimeUnit.SECONDS);
+        CompletableFuture<Integer> duplicate = CompletableFuture.supplyAsync(
+                () -> singleFlight.execute("key", calls::incrementAndGet));
+        while (metricValue(singleFlight, "saved") == 0) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertFailedWith(first, exception);
+        assertFailedWith(duplicate, exception);
+        assertThat(calls.get(), is(0));
+    }
+
+    @Test
+    public void executeWhileCallIsInFlightShouldWaitNoLongerThanDeadline() throws Exception {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>("test");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Integer> first = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+            started.countDown();
+            awaitQuietly(release);
+            return 1;
+        }));
+        started.await(1, TimeUnit.SECONDS);
+        CompletableFuture<Integer> duplicate = CompletableFuture.supplyAsync(() -> Deadline.callWithin(
+                Deadline.after(50), () -> singleFlight.execute("key", calls::incrementAndGet)));
+
+        try {
+            duplicate.get(500, TimeUnit.MILLISECONDS);
+            fail("Exception expected");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(DeadlineExceededException.class));
+        }
+        release.countDown();
+        assertThat(first.get(1, TimeUnit.SECONDS), is(1));
+        assertThat(calls.get(), is(0));
+    }
+
+    private static void assertFailedWith(CompletableFuture<Integer> future, Exception exception) throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("Exception expected");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), sameInstance(exception));
+        }
+    }
+
+    private static long metricValue(SingleFlight<?, ?> singleFlight, String name) {
+        List<Metric<?>> metrics = new ArrayList<>();
+        singleFlight.addMetrics(metrics, "");
+        return metrics.stream()
+                .filter(metric -> metric.getName().equals("test." + name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new)
+                .longValue();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
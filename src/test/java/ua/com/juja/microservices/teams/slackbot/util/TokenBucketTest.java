@@ -0,0 +1,44 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void tryAcquireShouldAllowBurstAndThenSustainedRate() {
+        long now = 1000 * SECOND;
+        TokenBucket bucket = new TokenBucket(3, 60, now);
+
+        assertTrue(bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now));
+        assertFalse(bucket.tryAcquire(now));
+        assertFalse(bucket.tryAcquire(now + SECOND / 2));
+        assertTrue(bucket.tryAcquire(now + SECOND));
+        assertFalse(bucket.tryAcquire(now + SECOND));
+    }
+
+    @Test
+    public void isFullShouldBeTrueOnceAllTokensAreRefilled() {
+        long now = -5 * SECOND;
+        TokenBucket bucket = new TokenBucket(2, 60, now);
+
+        assertTrue(bucket.isFull(now));
+        assertTrue(bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now));
+        assertFalse(bucket.isFull(now + SECOND));
+        assertTrue(bucket.isFull(now + 2 * SECOND));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createWhenTokensPerMinuteIsZeroShouldThrowException() {
+        new TokenBucket(3, 0, 0);
+    }
+}
@@ -0,0 +1,97 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class UserDirectorySnapshotTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    private final Map<String, String> users = new LinkedHashMap<>();
+    private Path file;
+    private UserDirectorySnapshot snapshot;
+
+    @Before
+    public void setup() {
+        for (int i = 0; i < 1000; i++) {
+            users.put(UUID.randomUUID().toString(), "@slack" + i);
+        }
+        file = folder.getRoot().toPath().resolve("users.directory");
+        snapshot = new UserDirectorySnapshot(file);
+    }
+
+    @Test
+    public void mappedSnapshotShouldAnswerLookupsOfWrittenUsers() throws IOException {
+        snapshot.write(CompactUserIndex.build(users));
+
+        CompactUserIndex mapped = snapshot.map();
+
+        assertThat(mapped.size(), is(users.size()));
+        users.forEach((uuid, slackName) -> {
+            assertThat(mapped.slackName(uuid), is(slackName));
+            assertThat(mapped.uuid(slackName), is(uuid));
+        });
+    }
+
+    @Test
+    public void mapWithoutSnapshotShouldReturnNull() throws IOException {
+        assertThat(snapshot.map(), nullValue());
+    }
+
+    @Test
+    public void mapOfCorruptedSnapshotShouldThrowException() throws IOException {
+        snapshot.write(CompactUserIndex.build(users));
+        try (RandomAccessFile corrupted = new RandomAccessFile(file.toFile(), "rw")) {
+            corrupted.seek(UserDirectorySnapshot.HEADER_BYTES + 100);
+            int value = corrupted.read();
+            corrupted.seek(UserDirectorySnapshot.HEADER_BYTES + 100);
+            corrupted.write(value ^ 0xFF);
+        }
+        expectedException.expect(IOException.class);
+        expectedException.expectMessage("corrupted");
+
+        snapshot.map();
+    }
+
+    @Test
+    public void mapOfSnapshotOfAnotherVersionShouldThrowException() throws IOException {
+        snapshot.write(CompactUserIndex.build(users));
+        try (RandomAccessFile other = new RandomAccessFile(file.toFile(), "rw")) {
+            other.seek(4);
+            other.writeInt(UserDirectorySnapshot.FORMAT_VERSION + 1);
+        }
+        expectedException.expect(IOException.class);
+        expectedException.expectMessage("unknown version");
+
+        snapshot.map();
+    }
+
+    @Test
+    public void mapOfTruncatedSnapshotShouldThrowException() throws IOException {
+        snapshot.write(CompactUserIndex.build(users));
+        try (RandomAccessFile truncated = new RandomAccessFile(file.toFile(), "rw")) {
+            truncated.setLength(truncated.length() - 1);
+        }
+        expectedException.expect(IOException.class);
+        expectedException.expectMessage("truncated");
+
+        snapshot.map();
+    }
+}
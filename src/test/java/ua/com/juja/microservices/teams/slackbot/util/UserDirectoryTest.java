@@ -0,0 +1,130 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class UserDirectoryTest {
+
+    private static final String UUID1 = "0b8e9f4c-2f3a-4e4b-9d43-5a0f4ad1c1e7";
+    private static final String UUID2 = "1b8e9f4c-2f3a-4e4b-9d43-5a0f4ad1c1e7";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<List<String>> lookups = new ArrayList<>();
+
+    @Test
+    public void lookupShouldPassOnlyKeysMissingInDirectory() {
+        UserDirectory directory = new UserDirectory(false, 0, null, 0,
+                () -> Collections.singletonMap(UUID1, "@slack1"));
+        directory.refresh();
+
+        Map<String, String> uuids = directory.uuidsBySlackNames(Arrays.asList("@slack2", "@slack1"),
+                new LinkedHashMap<>(), next(Collections.singletonMap("@slack2", UUID2)));
+        Map<String, String> slackNames = directory.slackNamesByUuids(Collections.singletonList(UUID1),
+                new LinkedHashMap<>(), next(Collections.emptyMap()));
+
+        assertThat(uuids.toString(), is("{@slack2=" + UUID2 + ", @slack1=" + UUID1 + "}"));
+        assertThat(slackNames.get(UUID1), is("@slack1"));
+        assertThat(lookups, is(Collections.singletonList(Collections.singletonList("@slack2"))));
+        assertThat(metricValue(directory, "hits"), is(2L));
+        assertThat(metricValue(directory, "misses"), is(1L));
+        assertThat(metricValue(directory, "users"), is(1L));
+    }
+
+    @Test
+    public void failedRefreshShouldKeepLoadedUsers() {
+        AtomicInteger loads = new AtomicInteger();
+        UserDirectory directory = new UserDirectory(false, 0, null, 0, () -> {
+            if (loads.incrementAndGet() > 1) {
+                throw new IllegalStateException("Users service is unavailable");
+            }
+            return Collections.singletonMap(UUID1, "@slack1");
+        });
+
+        directory.refresh();
+        directory.refresh();
+
+        Map<String, String> uuids = directory.uuidsBySlackNames(Collections.singletonList("@slack1"),
+                new LinkedHashMap<>(), next(Collections.emptyMap()));
+        assertThat(uuids.get("@slack1"), is(UUID1));
+        assertThat(lookups.isEmpty(), is(true));
+        assertThat(metricValue(directory, "refreshes"), is(1L));
+        assertThat(metricValue(directory, "refreshFailures"), is(1L));
+    }
+
+    @Test
+    public void closedDirectoryShouldAnswerFromSnapshotAfterRestartUntilUsersAreLoaded() throws Exception {
+        UserDirectorySnapshot snapshot = new UserDirectorySnapshot(folder.getRoot().toPath().resolve("users"));
+        UserDirectory directory = new UserDirectory(false, 0, snapshot, 0,
+                () -> Collections.singletonMap(UUID1, "@slack1"));
+        directory.refresh();
+        directory.writeSnapshot();
+        directory.writeSnapshot();
+
+        UserDirectory restarted = new UserDirectory(true, 60_000, snapshot, 0, () -> {
+            throw new IllegalStateException("Users service is unavailable");
+        });
+        try {
+            Map<String, String> slackNames = restarted.slackNamesByUuids(Collections.singletonList(UUID1),
+                    new LinkedHashMap<>(), next(Collections.emptyMap()));
+
+            assertThat(slackNames.get(UUID1), is("@slack1"));
+            assertThat(lookups.isEmpty(), is(true));
+            assertThat(metricValue(directory, "snapshot.writes"), is(1L));
+            assertThat(metricValue(restarted, "snapshot.serving"), is(1L));
+        } finally {
+            restarted.close();
+        }
+    }
+
+    @Test
+    public void corruptedSnapshotShouldBeSkipped() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("users");
+        Files.write(file, new byte[]{1, 2, 3});
+
+        UserDirectory directory = new UserDirectory(true, 60_000, new UserDirectorySnapshot(file), 0,
+                () -> {
+                    throw new IllegalStateException("Users service is unavailable");
+                });
+        directory.close();
+
+        assertThat(metricValue(directory, "snapshot.failures"), is(1L));
+        assertThat(metricValue(directory, "users"), is(0L));
+    }
+
+    private Function<List<String>, Map<String, String>> next(Map<String, String> found) {
+        return keys -> {
+            lookups.add(keys);
+            return found;
+        };
+    }
+
+    private static long metricValue(UserDirectory directory, String name) {
+        List<Metric<?>> metrics = new ArrayList<>();
+        directory.addMetrics(metrics, "");
+        return metrics.stream()
+                .filter(metric -> metric.getName().equals(name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new)
+                .longValue();
+    }
+}
@@ -0,0 +1,137 @@
+package ua.com.juja.microservices.teams.slackbot.util;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class UserLookupCacheTest {
+
+    private final Map<String, String> uuids = new LinkedHashMap<>();
+    private final List<List<String>> loads = new ArrayList<>();
+
+    {
+        uuids.put("@slack1", "uuid1");
+        uuids.put("@slack2", "uuid2");
+        uuids.put("@slack3", "uuid3");
+    }
+
+    @Test
+    public void lookupShouldLoadOnlyMissingKeysAndFillBothDirections() {
+        UserLookupCache cache = new UserLookupCache(60_000, 100);
+
+        Map<String, String> first = cache.uuidsBySlackNames(Arrays.asList("@slack1", "@slack2"),
+                new LinkedHashMap<>(), uuidsLoader());
+        Map<String, String> second = cache.uuidsBySlackNames(Arrays.asList("@slack3", "@slack1"),
+                new LinkedHashMap<>(), uuidsLoader());
+        Map<String, String> slackNames = cache.slackNamesByUuids(Arrays.asList("uuid2", "uuid3", "uuid1"),
+                new LinkedHashMap<>(), slackNamesLoader());
+
+        assertThat(first.toString(), is("{@slack1=uuid1, @slack2=uuid2}"));
+        assertThat(second.toString(), is("{@slack3=uuid3, @slack1=uuid1}"));
+        assertThat(slackNames.toString(), is("{uuid2=@slack2, uuid3=@slack3, uuid1=@slack1}"));
+        assertThat(loads, is(Arrays.asList(Arrays.asList("@slack1", "@slack2"),
+                Collections.singletonList("@slack3"))));
+        assertThat(metricValue(cache, "hits"), is(4.0));
+        assertThat(metricValue(cache, "misses"), is(3.0));
+        assertThat(metricValue(cache, "hitRatio"), is(4.0 / 7));
+        assertThat(metricValue(cache, "load.count"), is(2.0));
+    }
+
+    @Test
+    public void lookupAfterTtlShouldLoadAgain() throws Exception {
+        UserLookupCache cache = new UserLookupCache(1, 100);
+
+        cache.uuidsBySlackNames(Collections.singletonList("@slack1"), new LinkedHashMap<>(), uuidsLoader());
+        Thread.sleep(5);
+        cache.slackNamesByUuids(Collections.singletonList("uuid1"), new LinkedHashMap<>(), slackNamesLoader());
+
+        assertThat(loads.size(), is(2));
+        assertThat(metricValue(cache, "hits"), is(0.0));
+    }
+
+    @Test
+    public void renamedUserShouldNotBeFoundByTheOldSlackName() {
+        UserLookupCache cache = new UserLookupCache(60_000, 100);
+        cache.uuidsBySlackNames(Collections.singletonList("@slack1"), new LinkedHashMap<>(), uuidsLoader());
+        uuids.remove("@slack1");
+        uuids.put("@renamed", "uuid1");
+
+        cache.uuidsBySlackNames(Collections.singletonList("@renamed"), new LinkedHashMap<>(), uuidsLoader());
+        Map<String, String> old = cache.uuidsBySlackNames(Collections.singletonList("@slack1"),
+                new LinkedHashMap<>(), uuidsLoader());
+        Map<String, String> slackNames = cache.slackNamesByUuids(Collections.singletonList("uuid1"),
+                new LinkedHashMap<>(), slackNamesLoader());
+
+        assertThat(old.isEmpty(), is(true));
+        assertThat(slackNames.get("uuid1"), is("@renamed"));
+        assertThat(loads.size(), is(3));
+    }
+
+    @Test
+    public void fullCacheShouldEvictUsers() {
+        UserLookupCache cache = new UserLookupCache(60_000, 2);
+
+        cache.uuidsBySlackNames(Arrays.asList("@slack1", "@slack2", "@slack3"), new LinkedHashMap<>(),
+                uuidsLoader());
+
+        assertThat(metricValue(cache, "evictions"), is(1.0));
+        assertThat(metricValue(cache, "size"), is(2.0));
+    }
+
+    @Test
+    public void disabledCacheShouldLoadEveryKey() {
+        UserLookupCache cache = new UserLookupCache(60_000, 0);
+
+        cache.uuidsBySlackNames(Collections.singletonList("@slack1"), new LinkedHashMap<>(), uuidsLoader());
+        Map<String, String> found = cache.uuidsBySlackNames(Collections.singletonList("@slack1"),
+                new LinkedHashMap<>(), uuidsLoader());
+
+        assertThat(found.get("@slack1"), is("uuid1"));
+        assertThat(loads.size(), is(2));
+        assertThat(metricValue(cache, "size"), is(0.0));
+    }
+
+    private Function<List<String>, Map<String, String>> uuidsLoader() {
+        return slackNames -> {
+            loads.add(slackNames);
+            Map<String, String> found = new LinkedHashMap<>();
+            slackNames.stream().filter(uuids::containsKey).forEach(slackName -> found.put(slackName,
+                    uuids.get(slackName)));
+            return found;
+        };
+    }
+
+    private Function<List<String>, Map<String, String>> slackNamesLoader() {
+        return requested -> {
+            loads.add(requested);
+            Map<String, String> found = new LinkedHashMap<>();
+            uuids.forEach((slackName, uuid) -> {
+                if (requested.contains(uuid)) {
+                    found.put(uuid, slackName);
+                }
+            });
+            return found;
+        };
+    }
+
+    private static double metricValue(UserLookupCache cache, String name) {
+        List<Metric<?>> metrics = new ArrayList<>();
+        cache.addMetrics(metrics, "");
+        return metrics.stream()
+                .filter(metric -> metric.getName().equals(name))
+                .map(Metric::getValue)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new)
+                .doubleValue();
+    }
+}
@@ -0,0 +1,113 @@
+package ua.com.juja.microservices.utils;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.HttpConversionUtil.ExtensionHeaderNames;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapterBuilder;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local HTTP server which answers every request with the same body, JSON by default, after a fixed delay.
+ * It speaks either cleartext HTTP/2 with prior knowledge or HTTP/1.1 only and counts accepted connections.
+ */
+public class HttpStubServer implements AutoCloseable {
+
+    private static final int MAX_CONTENT_LENGTH = 1024 * 1024;
+
+    private final EventLoopGroup eventLoopGroup = new NioEventLoopGroup(2);
+    private final AtomicInteger connections = new AtomicInteger();
+    private final Channel serverChannel;
+
+    public HttpStubServer(boolean http2, String body, long delayMillis) {
+        this(http2, body.getBytes(StandardCharsets.UTF_8), "application/json", delayMillis);
+    }
+
+    public HttpStubServer(boolean http2, byte[] content, String contentType, long delayMillis) {
+        this.serverChannel = new ServerBootstrap()
+                .group(eventLoopGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        connections.incrementAndGet();
+                        if (http2) {
+                            Http2Connection connection = new DefaultHttp2Connection(true);
+                            channel.pipeline().addLast(new HttpToHttp2ConnectionHandlerBuilder()
+                                    .connection(connection)
+                                    .frameListener(new InboundHttp2ToHttpAdapterBuilder(connection)
+                                            .maxContentLength(MAX_CONTENT_LENGTH)
+                                            .build())
+                                    .build());
+                        } else {
+                            channel.pipeline().addLast(new HttpServerCodec(),
+                                    new HttpObjectAggregator(MAX_CONTENT_LENGTH));
+                        }
+                        channel.pipeline().addLast(responder(content, contentType, delayMillis));
+                    }
+                })
+                .bind("127.0.0.1", 0)
+                .syncUninterruptibly()
+                .channel();
+    }
+
+    private static ChannelHandler responder(byte[] content, String contentType, long delayMillis) {
+        return new SimpleChannelInboundHandler<FullHttpRequest>() {
+            @Override
+            protected void channelRead0(ChannelHandlerContext context, FullHttpRequest request) {
+                FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+                        Unpooled.wrappedBuffer(content));
+                response.headers().set(HttpHeaderNames.CONTENT_TYPE, contentType);
+                response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, content.length);
+                String streamId = request.headers().get(ExtensionHeaderNames.STREAM_ID.text());
+                if (streamId != null) {
+                    response.headers().set(ExtensionHeaderNames.STREAM_ID.text(), streamId);
+                }
+                context.executor().schedule(() -> context.writeAndFlush(response), delayMillis,
+                        TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext context, Throwable cause) {
+                context.close();
+            }
+        };
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + ((InetSocketAddress) serverChannel.localAddress()).getPort();
+    }
+
+    public int connections() {
+        return connections.get();
+    }
+
+    @Override
+    public void close() {
+        serverChannel.close().syncUninterruptibly();
+        eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+}